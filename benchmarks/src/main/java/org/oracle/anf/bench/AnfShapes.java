@@ -0,0 +1,95 @@
+/*
+ * Copyright (c) 2024, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Oracle designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+
+package org.oracle.anf.bench;
+
+import org.oracle.anf.ANF;
+import org.oracle.anf.FunKind;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.oracle.anf.ANF.*;
+
+/**
+ * Synthetic ANF programs of a given size, used as benchmark inputs.
+ */
+final class AnfShapes {
+
+    private AnfShapes() {
+    }
+
+    static ANF.Expression of(String shape, int size) {
+        return switch (shape) {
+            case "chain" -> letChain(size);
+            case "letrec" -> letRecFan(size);
+            case "branches" -> branches(size);
+            default -> throw new IllegalArgumentException("Unknown shape " + shape);
+        };
+    }
+
+    /**
+     * A straight line of {@code size} primitive lets.
+     */
+    static ANF.Expression letChain(int size) {
+        ANF.Expression body = variable("x" + size);
+        for (int i = size; i > 0; i--) {
+            body = let(variable("x" + i), add(variable("x" + (i - 1)), constant(i)), body);
+        }
+        return body;
+    }
+
+    /**
+     * One LetRec with {@code size} functions, each tail-calling the next.
+     */
+    static ANF.Expression letRecFan(int size) {
+        List<ANF.Function> funs = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            var p = variable("p" + i);
+            ANF.Expression tail = i + 1 < size
+                    ? funApply(variable("f" + (i + 1)), List.of(variable("t" + i)), FunKind.FC)
+                    : variable("t" + i);
+            funs.add(function(variable("f" + i), List.of(p), let(variable("t" + i), add(p, constant(1)), tail)));
+        }
+        return letRec(funs, funApply(variable("f0"), List.of(constant(0)), FunKind.FC));
+    }
+
+    /**
+     * {@code size} nested conditionals, each arm binding a primitive.
+     */
+    static ANF.Expression branches(int size) {
+        ANF.Expression body = variable("c0");
+        for (int i = size; i > 0; i--) {
+            var c = variable("c" + i);
+            body = let(c, funApply(variable("lt"), List.of(variable("c" + (i - 1)), constant(i)), FunKind.PRIMITIVE),
+                    ifThen(c, body, let(variable("e" + i), add(c, constant(i)), variable("e" + i))));
+        }
+        return let(variable("c0"), constant(0), body);
+    }
+
+    private static ANF.FunApply add(ANF.Term a, ANF.Term b) {
+        return funApply(variable("add"), List.of(a, b), FunKind.PRIMITIVE);
+    }
+}
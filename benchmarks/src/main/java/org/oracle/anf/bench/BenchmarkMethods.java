@@ -0,0 +1,107 @@
+/*
+ * Copyright (c) 2024, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Oracle designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+
+package org.oracle.anf.bench;
+
+import java.lang.reflect.Method;
+import java.lang.reflect.code.OpTransformer;
+import java.lang.reflect.code.analysis.SSA;
+import java.lang.reflect.code.op.CoreOp;
+import java.lang.runtime.CodeReflection;
+
+/**
+ * Reflectable methods used as {@code Transform} inputs, mirroring the ones in {@code TestTransform}.
+ */
+public class BenchmarkMethods {
+
+    @CodeReflection
+    public static int test1(int arg1, int arg2) {
+        return arg1 + arg2 - 52;
+    }
+
+    @CodeReflection
+    public static int test2(int arg1, int arg2) {
+        if (arg1 > arg2) {
+            return arg1 + 21;
+        } else {
+            return arg2 + 42;
+        }
+    }
+
+    @CodeReflection
+    public static int fibonacci(int v) {
+        if (v == 0) {
+            return 0;
+        } else if (v == 1) {
+            return 1;
+        }
+
+        v = v - 2;
+        int s1, s2, t;
+        s1 = 0;
+        s2 = 1;
+
+        while (v > 0) {
+            t = s1 + s2;
+            s1 = s2;
+            s2 = t;
+            v--;
+        }
+
+        return s1 + s2;
+    }
+
+    @CodeReflection
+    public static int nested(int a, int b) {
+        int r = 0;
+        for (int i = 0; i < a; i++) {
+            for (int j = 0; j < b; j++) {
+                if ((i + j) % 3 == 0) {
+                    r += i;
+                } else if ((i + j) % 3 == 1) {
+                    r -= j;
+                } else {
+                    r += i * j;
+                }
+            }
+        }
+        return r;
+    }
+
+    static CoreOp.FuncOp codeModel(String name, String form) {
+        for (Method m : BenchmarkMethods.class.getDeclaredMethods()) {
+            if (m.getName().equals(name)) {
+                CoreOp.FuncOp f = m.getCodeModel().orElseThrow();
+                var lowered = f.transform(OpTransformer.LOWERING_TRANSFORMER);
+                return switch (form) {
+                    case "lowered" -> lowered;
+                    case "ssa" -> SSA.transform(lowered);
+                    default -> throw new IllegalArgumentException("Unknown form " + form);
+                };
+            }
+        }
+        throw new IllegalArgumentException("No reflectable method " + name);
+    }
+}
@@ -0,0 +1,66 @@
+/*
+ * Copyright (c) 2024, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Oracle designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+
+package org.oracle.anf.bench;
+
+import org.openjdk.jmh.annotations.*;
+import org.oracle.anf.ANF;
+import org.oracle.anf.util.Traverse;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.oracle.anf.ANF.variable;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "--enable-preview")
+public class TraverseBenchmark {
+
+    @Param({"chain", "letrec", "branches"})
+    String shape;
+
+    @Param({"10", "100", "1000"})
+    int size;
+
+    ANF.Expression expr;
+
+    @Setup
+    public void setup() {
+        expr = AnfShapes.of(shape, size);
+    }
+
+    @Benchmark
+    public ANF.Expression identity() {
+        return Traverse.traverse(e -> e, expr);
+    }
+
+    @Benchmark
+    public ANF.Expression rename() {
+        return Traverse.traverse(e -> e instanceof ANF.Var(var id) ? variable("r_" + id) : e, expr);
+    }
+}
@@ -12,7 +12,27 @@ public class ANF {
 
     public sealed interface Expression permits Const, Var, FunApply, Let, LetRec, IfThen {}
 
-    public record FunApply(Term name, List<Term> arguments, FunKind fc) implements Expression, Term {}
+    public record FunApply(Term name, List<Term> arguments, FunKind fc) implements Expression, Term {
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof FunApply f)) {
+                return false;
+            }
+            //Distinct canonical instances are never equal.
+            if (Interner.isCanonical(this) && Interner.isCanonical(f)) {
+                return false;
+            }
+            return name.equals(f.name) && arguments.equals(f.arguments) && fc.equals(f.fc);
+        }
+
+        @Override
+        public int hashCode() {
+            return (31 * name.hashCode() + arguments.hashCode()) * 31 + fc.hashCode();
+        }
+    }
 
     public record Let(Var name, Term term, Expression expBody) implements Expression {}
 
@@ -23,16 +43,28 @@ public class ANF {
     public record IfThen(Term cond, Expression trueExp, Expression falseExp) implements Expression {}
 
 
+    /**
+     * Turns interning of the terms built by {@link #constant}, {@link #variable} and {@link #funApply} on or off.
+     * While on, structurally equal terms built by these factories are the same instance.
+     */
+    public static void setInterning(boolean enabled) {
+        Interner.enabled = enabled;
+    }
+
+    public static boolean isInterning() {
+        return Interner.enabled;
+    }
+
     public static Const constant(Object value) {
-        return new Const(value);
+        return Interner.enabled ? Interner.constant(value) : new Const(value);
     }
 
     public static Var variable(Object varId) {
-        return new Var(varId);
+        return Interner.enabled ? Interner.variable(varId) : new Var(varId);
     }
 
     public static FunApply funApply(Term term, List<Term> arguments, FunKind fc) {
-        return new FunApply(term, arguments, fc);
+        return Interner.enabled ? Interner.funApply(term, arguments, fc) : new FunApply(term, arguments, fc);
     }
 
     public static Let let(Var name, Term term, Expression expBody) {
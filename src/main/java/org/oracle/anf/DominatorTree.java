@@ -0,0 +1,112 @@
+/*
+ * Copyright (c) 2024, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Oracle designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+
+package org.oracle.anf;
+
+import java.lang.reflect.code.Block;
+import java.lang.reflect.code.Body;
+import java.util.*;
+
+/**
+ * Dominator tree of a {@link Body} with explicit child lists.
+ * <p>
+ * Built once per body from {@link Body#immediateDominators()} so that the
+ * LetRec nesting can be derived without rescanning the block list for every block.
+ */
+final class DominatorTree {
+
+    private final Block root;
+    private final Map<Block, List<Block>> children;
+    private final List<Block> postOrder;
+
+    private DominatorTree(Block root, Map<Block, List<Block>> children, List<Block> postOrder) {
+        this.root = root;
+        this.children = children;
+        this.postOrder = postOrder;
+    }
+
+    static DominatorTree of(Body b) {
+        var idoms = b.immediateDominators();
+        HashMap<Block, List<Block>> children = new HashMap<>();
+        for (Block block : b.blocks()) {
+            var dom = idoms.get(block);
+            //The entry block is its own dominator, unreachable blocks have none.
+            if (dom != null && dom != block) {
+                children.computeIfAbsent(dom, k -> new ArrayList<>()).add(block);
+            }
+        }
+        var root = b.entryBlock();
+        return new DominatorTree(root, children, postOrder(root, children));
+    }
+
+    private static List<Block> postOrder(Block root, Map<Block, List<Block>> children) {
+        ArrayList<Block> order = new ArrayList<>();
+        ArrayDeque<Block> blocks = new ArrayDeque<>();
+        ArrayDeque<Iterator<Block>> pending = new ArrayDeque<>();
+        blocks.push(root);
+        pending.push(children.getOrDefault(root, List.of()).iterator());
+        while (!blocks.isEmpty()) {
+            var it = pending.peek();
+            if (it.hasNext()) {
+                var child = it.next();
+                blocks.push(child);
+                pending.push(children.getOrDefault(child, List.of()).iterator());
+            } else {
+                pending.pop();
+                order.add(blocks.pop());
+            }
+        }
+        return order;
+    }
+
+    Block root() {
+        return root;
+    }
+
+    /**
+     * {@return the blocks immediately dominated by {@code b}}
+     */
+    List<Block> children(Block b) {
+        return children.getOrDefault(b, List.of());
+    }
+
+    boolean isLeaf(Block b) {
+        return !children.containsKey(b);
+    }
+
+    /**
+     * {@return all reachable blocks, every block appearing after the blocks it dominates}
+     */
+    List<Block> postOrder() {
+        return postOrder;
+    }
+
+    /**
+     * {@return the blocks, other than the root, that dominate no other block}
+     */
+    List<Block> leaves() {
+        return postOrder.stream().filter(block -> block != root && isLeaf(block)).toList();
+    }
+}
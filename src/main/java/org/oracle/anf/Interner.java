@@ -0,0 +1,195 @@
+/*
+ * Copyright (c) 2024, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Oracle designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+
+package org.oracle.anf;
+
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
+import java.util.RandomAccess;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Hash-consing of {@link ANF.Term}s, used by the factories of {@link ANF} while
+ * {@link ANF#setInterning interning} is enabled.
+ * <p>
+ * Canonical terms are kept in a concurrent table holding them weakly, and are built from
+ * canonical parts only. Structurally equal canonical terms are therefore the same instance, and
+ * comparing or hashing one only looks at its immediate parts: an application's arguments are a
+ * list caching its hash code.
+ */
+final class Interner {
+
+    private Interner() {
+    }
+
+    static volatile boolean enabled;
+
+    private static final ReferenceQueue<ANF.Term> QUEUE = new ReferenceQueue<>();
+    private static final ConcurrentHashMap<Entry, Entry> TABLE = new ConcurrentHashMap<>();
+
+    /**
+     * Table key referring weakly to a canonical term. Live entries are equal when their terms are
+     * equal part by part, the parts being canonical.
+     */
+    private static final class Entry extends WeakReference<ANF.Term> {
+        final int hash;
+
+        Entry(ANF.Term t) {
+            super(t, QUEUE);
+            this.hash = t.hashCode();
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (o == this) {
+                return true;
+            }
+            if (!(o instanceof Entry e) || e.hash != hash) {
+                return false;
+            }
+            var a = get();
+            var b = e.get();
+            return a != null && b != null && partsEqual(a, b);
+        }
+    }
+
+    /**
+     * Arguments of a canonical application.
+     */
+    static final class Terms extends AbstractList<ANF.Term> implements RandomAccess {
+        private final ANF.Term[] terms;
+        private final int hash;
+        ANF.FunApply owner;
+
+        Terms(ANF.Term[] terms) {
+            this.terms = terms;
+            this.hash = Arrays.hashCode(terms);
+        }
+
+        @Override
+        public ANF.Term get(int index) {
+            return terms[index];
+        }
+
+        @Override
+        public int size() {
+            return terms.length;
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (o instanceof Terms t) {
+                if (t.hash != hash || t.terms.length != terms.length) {
+                    return false;
+                }
+                for (int i = 0; i < terms.length; i++) {
+                    if (terms[i] != t.terms[i] && !terms[i].equals(t.terms[i])) {
+                        return false;
+                    }
+                }
+                return true;
+            }
+            return super.equals(o);
+        }
+    }
+
+    static boolean isCanonical(ANF.FunApply fa) {
+        return fa.arguments() instanceof Terms t && t.owner == fa;
+    }
+
+    static ANF.Const constant(Object value) {
+        return intern(new ANF.Const(value));
+    }
+
+    static ANF.Var variable(Object varId) {
+        return intern(new ANF.Var(varId));
+    }
+
+    static ANF.FunApply funApply(ANF.Term name, List<ANF.Term> arguments, FunKind fc) {
+        var terms = new ANF.Term[arguments.size()];
+        for (int i = 0; i < terms.length; i++) {
+            terms[i] = canonical(arguments.get(i));
+        }
+        var args = new Terms(terms);
+        var fa = new ANF.FunApply(canonical(name), args, fc);
+        args.owner = fa;
+        return intern(fa);
+    }
+
+    private static ANF.Term canonical(ANF.Term t) {
+        return switch (t) {
+            case ANF.Const(var value) -> constant(value);
+            case ANF.Var(var varId) -> variable(varId);
+            case ANF.FunApply fa -> isCanonical(fa) ? fa : funApply(fa.name(), fa.arguments(), fa.fc());
+        };
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T extends ANF.Term> T intern(T t) {
+        expunge();
+        var entry = new Entry(t);
+        while (true) {
+            var existing = TABLE.putIfAbsent(entry, entry);
+            if (existing == null) {
+                return t;
+            }
+            var canonical = existing.get();
+            if (canonical != null) {
+                return (T) canonical;
+            }
+            // Collected after the lookup matched it.
+            TABLE.remove(existing, existing);
+        }
+    }
+
+    private static void expunge() {
+        for (var r = QUEUE.poll(); r != null; r = QUEUE.poll()) {
+            TABLE.remove(r, r);
+        }
+    }
+
+    private static boolean partsEqual(ANF.Term a, ANF.Term b) {
+        return switch (a) {
+            case ANF.Const(var value) -> b instanceof ANF.Const(var other) && Objects.equals(value, other);
+            case ANF.Var(var varId) -> b instanceof ANF.Var(var other) && Objects.equals(varId, other);
+            case ANF.FunApply(var name, var args, var fc) -> b instanceof ANF.FunApply(var otherName, var otherArgs, var otherFc)
+                    && name == otherName && fc.equals(otherFc) && args.equals(otherArgs);
+        };
+    }
+}
@@ -0,0 +1,284 @@
+/*
+ * Copyright (c) 2024, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Oracle designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+
+package org.oracle.anf;
+
+import org.oracle.anf.analysis.TypeInference;
+import org.oracle.anf.eval.JavaMethods;
+import org.oracle.anf.eval.PrimitiveOp;
+import org.oracle.anf.util.Fold;
+
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.lang.reflect.code.Block;
+import java.lang.reflect.code.Op;
+import java.lang.reflect.code.TypeElement;
+import java.lang.reflect.code.Value;
+import java.lang.reflect.code.op.CoreOp;
+import java.lang.reflect.code.type.FunctionType;
+import java.lang.reflect.code.type.JavaType;
+import java.lang.reflect.code.type.MethodRef;
+import java.util.*;
+
+/**
+ * The reverse of {@link Transform}: lowers an ANF program back into a flat, multi-block
+ * {@link CoreOp.FuncOp} in SSA form, ready for Babylon's interpreter and bytecode generation.
+ * <p>
+ * Every LetRec function becomes a block whose parameters are the function's parameters,
+ * {@code FC} tail calls become {@link CoreOp.BranchOp}s and {@code IfThen} becomes a
+ * {@link CoreOp.ConditionalBranchOp} to two new blocks. Arguments of branches, primitives and
+ * Java invocations are converted to the types they are passed as, boxing and unboxing as needed. Variables a function captures from
+ * the functions enclosing it are used directly, since the blocks defining them dominate
+ * the function's block. An entry function that is itself called is lowered into a header block
+ * the entry block branches to, since no branch may target a body's entry block.
+ * <p>
+ * Types come from {@link TypeInference}. {@code FC} calls in non-tail position have no
+ * block equivalent and are rejected with an {@link UnsupportedOperationException}.
+ */
+public class ReverseTransform {
+
+    public CoreOp.FuncOp reverse(String name, ANF.Function entry, List<Class<?>> paramTypes) {
+        var types = TypeInference.infer(entry, paramTypes);
+        var ftype = FunctionType.functionType(type(types.returnType(entry)),
+                paramTypes.stream().map(ReverseTransform::type).toList());
+        return CoreOp.func(name, ftype).body(entryBlock -> new BlockLowering(types, entryBlock).lower(entry, paramTypes));
+    }
+
+    private record Pending(Block.Builder block, ANF.Expression expr) {}
+
+    private static final class BlockLowering {
+        final TypeInference types;
+        final Block.Builder entryBlock;
+        final Map<Object, Value> values = new HashMap<>();
+        final IdentityHashMap<ANF.Function, Block.Builder> blocks = new IdentityHashMap<>();
+        final ArrayDeque<Pending> pending = new ArrayDeque<>();
+
+        BlockLowering(TypeInference types, Block.Builder entryBlock) {
+            this.types = types;
+            this.entryBlock = entryBlock;
+        }
+
+        void lower(ANF.Function entry, List<Class<?>> paramTypes) {
+            // Nothing may branch to the entry block, so an entry function that is called gets a header block.
+            boolean called = isCalled(entry);
+            for (ANF.Function f : types.functions()) {
+                if (!types.isTyped(f)) {
+                    continue;
+                }
+                var block = f == entry && !called
+                        ? entryBlock
+                        : entryBlock.block(types.parameterTypes(f).stream().map(ReverseTransform::type).toList());
+                blocks.put(f, block);
+                for (int i = 0; i < f.parameters().size(); i++) {
+                    values.put(f.parameters().get(i).varId(), block.parameters().get(i));
+                }
+            }
+            var header = blocks.get(entry);
+            if (called) {
+                var params = types.parameterTypes(entry);
+                List<Value> args = new ArrayList<>();
+                for (int i = 0; i < params.size(); i++) {
+                    args.add(convert(entryBlock, entryBlock.parameters().get(i), paramTypes.get(i), params.get(i)));
+                }
+                entryBlock.op(CoreOp.branch(header.successor(args)));
+            }
+
+            // A function's body is lowered once its LetRec is reached, after the values it captures.
+            pending.push(new Pending(header, entry.expBody()));
+            while (!pending.isEmpty()) {
+                var p = pending.pop();
+                lower(p.block(), p.expr());
+            }
+        }
+
+        boolean isCalled(ANF.Function entry) {
+            return Fold.fold(entry, new Fold.Visitor<boolean[]>() {
+                @Override
+                public Fold.Step preExpression(ANF.Expression expr, boolean[] called) {
+                    if (expr instanceof ANF.FunApply fa && fa.fc() instanceof FunKind.FC && types.callee(fa) == entry) {
+                        called[0] = true;
+                        return Fold.Step.STOP;
+                    }
+                    return Fold.Step.CONTINUE;
+                }
+            }, new boolean[1])[0];
+        }
+
+        void lower(Block.Builder block, ANF.Expression expr) {
+            while (true) {
+                switch (expr) {
+                    case ANF.Let(var name, var term, var body) -> {
+                        values.put(name.varId(), value(block, term));
+                        expr = body;
+                    }
+                    case ANF.LetRec(var funs, var body) -> {
+                        for (ANF.Function f : funs) {
+                            var fblock = blocks.get(f);
+                            if (fblock != null) {
+                                pending.push(new Pending(fblock, f.expBody()));
+                            }
+                        }
+                        expr = body;
+                    }
+                    case ANF.IfThen(var cond, var t, var f) -> {
+                        var tblock = block.block();
+                        var fblock = block.block();
+                        block.op(CoreOp.conditionalBranch(value(block, cond), tblock.successor(), fblock.successor()));
+                        pending.push(new Pending(fblock, f));
+                        block = tblock;
+                        expr = t;
+                    }
+                    case ANF.FunApply fa when fa.fc() instanceof FunKind.FC -> {
+                        var callee = types.callee(fa);
+                        var params = types.parameterTypes(callee);
+                        List<Value> args = new ArrayList<>();
+                        for (int i = 0; i < params.size(); i++) {
+                            args.add(convert(block, fa.arguments().get(i), params.get(i)));
+                        }
+                        block.op(CoreOp.branch(blocks.get(callee).successor(args)));
+                        return;
+                    }
+                    case ANF.Term term -> {
+                        block.op(CoreOp._return(value(block, term)));
+                        return;
+                    }
+                }
+            }
+        }
+
+        Value value(Block.Builder block, ANF.Term term) {
+            return switch (term) {
+                case ANF.Const(var value) -> block.op(CoreOp.constant(type(TypeInference.constantType(value)), value));
+                case ANF.Var(var id) -> {
+                    var v = values.get(id);
+                    if (v == null) {
+                        throw new IllegalStateException("Variable " + id + " is not in scope");
+                    }
+                    yield v;
+                }
+                case ANF.FunApply fa -> switch (fa.fc()) {
+                    case FunKind.FC _ -> throw new UnsupportedOperationException(
+                            "Call to " + fa.name() + " in non-tail position cannot be lowered to a branch");
+                    case FunKind.Primitive _ -> primitive(block, fa);
+                    case FunKind.Java _ -> {
+                        Method m = types.javaTarget(fa);
+                        var terms = fa.arguments();
+                        var params = m.getParameterTypes();
+                        int offset = Modifier.isStatic(m.getModifiers()) ? 0 : 1;
+                        List<Value> args = new ArrayList<>();
+                        if (offset == 1) {
+                            args.add(convert(block, terms.getFirst(), m.getDeclaringClass()));
+                        }
+                        for (int i = 0; i < params.length; i++) {
+                            args.add(convert(block, terms.get(i + offset), params[i]));
+                        }
+                        yield block.op(CoreOp.invoke(MethodRef.method(m), args));
+                    }
+                };
+            };
+        }
+
+        Value primitive(Block.Builder block, ANF.FunApply fa) {
+            var op = PrimitiveOp.of(fa);
+            var args = fa.arguments();
+            if (op.arity() == 1) {
+                var a = value(block, args.getFirst());
+                return block.op(switch (op) {
+                    case NEG -> CoreOp.neg(a);
+                    case NOT -> CoreOp.not(a);
+                    default -> CoreOp.compl(a);
+                });
+            }
+            var at = types.typeOf(args.get(0));
+            var bt = types.typeOf(args.get(1));
+            Value a, b;
+            if (op == PrimitiveOp.LSHL || op == PrimitiveOp.ASHR || op == PrimitiveOp.LSHR) {
+                a = value(block, args.get(0));
+                b = convert(block, args.get(1), at == long.class ? long.class : int.class);
+            } else if (PrimitiveOp.isNumeric(at) && PrimitiveOp.isNumeric(bt)) {
+                // Binary numeric promotion, code model operations take operands of the same type.
+                var t = PrimitiveOp.promote(at, bt);
+                a = convert(block, args.get(0), t);
+                b = convert(block, args.get(1), t);
+            } else {
+                a = value(block, args.get(0));
+                b = value(block, args.get(1));
+            }
+            Op result = switch (op) {
+                case ADD -> CoreOp.add(a, b);
+                case SUB -> CoreOp.sub(a, b);
+                case MUL -> CoreOp.mul(a, b);
+                case DIV -> CoreOp.div(a, b);
+                case MOD -> CoreOp.mod(a, b);
+                case AND -> CoreOp.and(a, b);
+                case OR -> CoreOp.or(a, b);
+                case XOR -> CoreOp.xor(a, b);
+                case LSHL -> CoreOp.lshl(a, b);
+                case ASHR -> CoreOp.ashr(a, b);
+                case LSHR -> CoreOp.lshr(a, b);
+                case EQ -> CoreOp.eq(a, b);
+                case NEQ -> CoreOp.neq(a, b);
+                case GT -> CoreOp.gt(a, b);
+                case GE -> CoreOp.ge(a, b);
+                case LT -> CoreOp.lt(a, b);
+                case LE -> CoreOp.le(a, b);
+                default -> throw new IllegalStateException(op.opName() + " is not binary");
+            };
+            return block.op(result);
+        }
+
+        Value convert(Block.Builder block, ANF.Term term, Class<?> to) {
+            return convert(block, value(block, term), types.typeOf(term), to);
+        }
+
+        /**
+         * Converts {@code v} from {@code from} to {@code to}: primitive widening, boxing,
+         * unboxing or a reference cast, as the {@code ANFCompiler} does.
+         */
+        Value convert(Block.Builder block, Value v, Class<?> from, Class<?> to) {
+            if (from == to) {
+                return v;
+            }
+            if (from.isPrimitive() && to.isPrimitive()) {
+                return block.op(CoreOp.conv(type(to), v));
+            } else if (from.isPrimitive()) {
+                var box = JavaMethods.box(from);
+                var boxed = block.op(CoreOp.invoke(MethodRef.method(box, "valueOf", box, from), v));
+                return convert(block, boxed, box, to);
+            } else if (to.isPrimitive()) {
+                var box = JavaMethods.box(to);
+                var boxed = convert(block, v, from, box);
+                return block.op(CoreOp.invoke(MethodRef.method(box, to.getName() + "Value", to), boxed));
+            } else if (to.isAssignableFrom(from)) {
+                return v;
+            }
+            return block.op(CoreOp.cast(type(to), v));
+        }
+    }
+
+    static TypeElement type(Class<?> c) {
+        return JavaType.type(c);
+    }
+}
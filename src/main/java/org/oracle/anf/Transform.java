@@ -61,11 +61,12 @@ public class Transform {
     //Outer body corresponds to outermost letrec
     //F_p
     public AnfDialect.AnfLetRecOp transformOuterBody(Body b) {
+        var domTree = DominatorTree.of(b);
         var entry = b.entryBlock();
         CoreOp.FuncOp entry_f = transformBlock(entry);
 
-        var funmap = letRecConstruction(b);
-        var childfuns = funmap.keySet().stream().filter((block) -> block.immediateDominator() == b.entryBlock()).map(funmap::get).toList();
+        var funmap = letRecConstruction(domTree);
+        var childfuns = domTree.children(entry).stream().map(funmap::get).toList();
 
         ArrayList<CoreOp.FuncOp> afunctions = new ArrayList<>(childfuns);
         afunctions.addFirst(entry_f);
@@ -150,33 +151,16 @@ public class Transform {
 
  */
 
-    private Map<Block, AnfDialect.AnfFuncOp> letRecConstruction(Body b) {
-        var processedFunctions = leafFunctions(b);
-        List<Block> workQueue = new LinkedList<>(processedFunctions.keySet().stream().map(Block::immediateDominator).toList());
-        Set<Block> processed = new HashSet<>(processedFunctions.keySet());
-        processed.add(b.entryBlock());
+    private Map<Block, AnfDialect.AnfFuncOp> letRecConstruction(DominatorTree domTree) {
+        var processedFunctions = leafFunctions(domTree);
 
-        while (!workQueue.isEmpty()) {
-            Block workBlock = workQueue.removeFirst();
-
-            if (workBlock == null || processed.contains(workBlock)) {
-                continue;
-            }
-
-            //Ugly slow. Blocks dominated by this one.
-            var domBlocks = b.blocks().stream().filter((block) -> block.immediateDominator() != null && block.immediateDominator().equals(workBlock)).toList();
-
-            var unProcessedDomBlocks = domBlocks.stream().filter((block) -> !processedFunctions.containsKey(block)).toList();
-
-            //If all dependencies aren't processed, queue them in front, requeue, and continue
-            if (!unProcessedDomBlocks.isEmpty()) {
-                unProcessedDomBlocks.forEach(workQueue::addLast);
-                workQueue.addLast(workBlock);
+        //Post order visits every block after the blocks it dominates, so their functions are already built.
+        for (Block workBlock : domTree.postOrder()) {
+            if (workBlock == domTree.root() || processedFunctions.containsKey(workBlock)) {
                 continue;
             }
 
-            var domFuns = domBlocks.stream().map(processedFunctions::get).toList();
-
+            var domFuns = domTree.children(workBlock).stream().map(processedFunctions::get).toList();
 
             var bodyExpr = transformOps(workBlock);
             var lr = AnfDialect.letrec();
@@ -191,8 +175,8 @@ public class Transform {
         return processedFunctions;
     }
 
-    private Map<Block, AnfDialect.AnfFuncOp.Builder> leafFunctions(Body b) {
-        List<Block> leafBlocks = leafBlocks(b);
+    private Map<Block, AnfDialect.AnfFuncOp.Builder> leafFunctions(DominatorTree domTree) {
+        List<Block> leafBlocks = leafBlocks(domTree);
         HashMap<Block, AnfDialect.AnfFuncOp.Builder> functions = new HashMap<>();
 
         for (Block leafBlock : leafBlocks) {
@@ -202,18 +186,8 @@ public class Transform {
         return functions;
     }
 
-    private static List<Block> leafBlocks(Body b) {
-        var idoms = b.immediateDominators();
-        HashSet<Block> leafBlocks = new HashSet<>(b.blocks());
-        leafBlocks.remove(b.entryBlock());
-        b.blocks().forEach((block) -> {
-            var dom = idoms.get(block);
-            //Remove all blocks that dominate other blocks.
-            if (dom != null) {
-                leafBlocks.remove(dom);
-            }
-        });
+    private static List<Block> leafBlocks(DominatorTree domTree) {
         //Return blocks that dominate nothing. These are leaves.
-        return leafBlocks.stream().toList();
+        return domTree.leaves();
     }
 }
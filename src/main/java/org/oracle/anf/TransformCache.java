@@ -0,0 +1,115 @@
+/*
+ * Copyright (c) 2024, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Oracle designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+
+package org.oracle.anf;
+
+import org.oracle.anf.util.BoundedCache;
+
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Method;
+import java.lang.reflect.code.OpTransformer;
+import java.lang.reflect.code.analysis.SSA;
+import java.lang.reflect.code.op.AnfDialect;
+import java.lang.reflect.code.op.CoreOp;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.function.ToLongFunction;
+
+/**
+ * Thread-safe front end to {@link Transform} caching its results.
+ * <p>
+ * Methods are keyed by their declaring class, held weakly, and their name and descriptor.
+ * Code models are keyed by a SHA-256 hash of their text, so equal models built separately
+ * share a result. See {@link BoundedCache} for coalescing and eviction.
+ */
+public final class TransformCache {
+
+    private final BoundedCache<AnfDialect.AnfLetRecOp> cache;
+    // Content hashes by model identity; models are held weakly.
+    private final Map<CoreOp.FuncOp, String> hashes = new WeakHashMap<>();
+
+    /**
+     * A cache of at most {@code maxEntries} transformed models.
+     */
+    public TransformCache(long maxEntries) {
+        this.cache = new BoundedCache<>(maxEntries);
+    }
+
+    public TransformCache(long maxWeight, ToLongFunction<AnfDialect.AnfLetRecOp> weigher) {
+        this.cache = new BoundedCache<>(maxWeight, weigher);
+    }
+
+    /**
+     * {@return the transform of the code model of {@code m}, lowered and in SSA form}
+     */
+    public AnfDialect.AnfLetRecOp transform(Method m) {
+        var descriptor = MethodType.methodType(m.getReturnType(), m.getParameterTypes()).toMethodDescriptorString();
+        return cache.get(m.getDeclaringClass(), m.getName() + descriptor, () -> {
+            CoreOp.FuncOp f = m.getCodeModel()
+                    .orElseThrow(() -> new IllegalArgumentException("Method " + m + " has no code model"));
+            var lowered = SSA.transform(f.transform(OpTransformer.LOWERING_TRANSFORMER));
+            return new Transform().transform(lowered);
+        });
+    }
+
+    /**
+     * {@return the transform of {@code f}, which must be lowered and in SSA form}
+     * <p>
+     * The first lookup of a model prints and hashes it, which is linear in its size. Later
+     * lookups of the same {@code FuncOp} instance reuse the hash and cost a map lookup.
+     */
+    public AnfDialect.AnfLetRecOp transform(CoreOp.FuncOp f) {
+        return cache.get(null, contentHash(f), () -> new Transform().transform(f));
+    }
+
+    public BoundedCache.Statistics statistics() {
+        return cache.statistics();
+    }
+
+    private String contentHash(CoreOp.FuncOp f) {
+        String hash;
+        synchronized (hashes) {
+            hash = hashes.get(f);
+        }
+        if (hash != null) {
+            return hash;
+        }
+        // Hash outside the lock; a model hashed twice concurrently gets the same hash.
+        try {
+            var digest = MessageDigest.getInstance("SHA-256").digest(f.toText().getBytes(StandardCharsets.UTF_8));
+            hash = HexFormat.of().formatHex(digest);
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException(e);
+        }
+        synchronized (hashes) {
+            hashes.put(f, hash);
+        }
+        return hash;
+    }
+}
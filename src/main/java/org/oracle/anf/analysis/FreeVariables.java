@@ -0,0 +1,240 @@
+/*
+ * Copyright (c) 2024, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Oracle designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+
+package org.oracle.anf.analysis;
+
+import org.oracle.anf.ANF;
+import org.oracle.anf.FunKind;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+
+/**
+ * Free variables of every {@link ANF.Function} of a program.
+ * <p>
+ * Every variable id of the program gets a dense index, and the free variables of each function,
+ * those occurring in its body without being bound there or being its parameters, are cached as
+ * a {@link BitSet} of those indices. Functions of enclosing LetRecs, the function's own name
+ * included, are free variables like any other. The names of primitive and Java applications are
+ * not variables.
+ * <p>
+ * All sets are computed in one bottom-up walk with an explicit stack. Along Let chains a set is
+ * updated in place, so the walk is linear in the size of the program apart from joining the sets
+ * of branches and copying the set cached for each function.
+ */
+public final class FreeVariables {
+
+    private final HashMap<Object, Integer> indices = new HashMap<>();
+    private final List<ANF.Var> variables = new ArrayList<>();
+    private final IdentityHashMap<ANF.Function, BitSet> free = new IdentityHashMap<>();
+    private BitSet root;
+
+    private FreeVariables() {
+    }
+
+    public static FreeVariables analyze(ANF.Expression expr) {
+        var fv = new FreeVariables();
+        fv.root = fv.walk(expr);
+        return fv;
+    }
+
+    public static FreeVariables analyze(ANF.Function f) {
+        var fv = new FreeVariables();
+        fv.root = fv.walk(f);
+        return fv;
+    }
+
+    /**
+     * {@return the indices of the free variables of {@code f}}
+     */
+    public BitSet bits(ANF.Function f) {
+        return (BitSet) cached(f).clone();
+    }
+
+    /**
+     * {@return the free variables of {@code f}, in index order}
+     */
+    public List<ANF.Var> of(ANF.Function f) {
+        return variables(cached(f));
+    }
+
+    /**
+     * {@return the free variables of the analyzed expression or function, in index order}
+     */
+    public List<ANF.Var> ofRoot() {
+        return variables(root);
+    }
+
+    /**
+     * {@return the index of the variable {@code varId}, or -1 if it does not occur}
+     */
+    public int index(Object varId) {
+        return indices.getOrDefault(varId, -1);
+    }
+
+    public ANF.Var variable(int index) {
+        return variables.get(index);
+    }
+
+    /**
+     * {@return the number of distinct variables}
+     */
+    public int size() {
+        return variables.size();
+    }
+
+    private BitSet cached(ANF.Function f) {
+        var bits = free.get(f);
+        if (bits == null) {
+            throw new IllegalArgumentException("Function " + f.name().varId() + " is not part of the analyzed program");
+        }
+        return bits;
+    }
+
+    private List<ANF.Var> variables(BitSet bits) {
+        List<ANF.Var> vars = new ArrayList<>(bits.cardinality());
+        for (int i = bits.nextSetBit(0); i >= 0; i = bits.nextSetBit(i + 1)) {
+            vars.add(variables.get(i));
+        }
+        return vars;
+    }
+
+    private int index(ANF.Var v) {
+        var i = indices.putIfAbsent(v.varId(), variables.size());
+        if (i != null) {
+            return i;
+        }
+        variables.add(v);
+        return variables.size() - 1;
+    }
+
+    private void addUses(ANF.Term term, BitSet bits) {
+        switch (term) {
+            case ANF.Var v -> bits.set(index(v));
+            case ANF.Const _ -> {
+            }
+            case ANF.FunApply fa -> {
+                if (fa.fc() instanceof FunKind.FC) {
+                    addUses(fa.name(), bits);
+                }
+                for (ANF.Term arg : fa.arguments()) {
+                    addUses(arg, bits);
+                }
+            }
+        }
+    }
+
+    // A node whose parts have been walked.
+    private record Done(Object node) {}
+
+    private BitSet walk(Object root) {
+        ArrayDeque<Object> pending = new ArrayDeque<>();
+        ArrayDeque<BitSet> done = new ArrayDeque<>();
+        pending.push(root);
+        while (!pending.isEmpty()) {
+            switch (pending.pop()) {
+                case ANF.Let l -> {
+                    index(l.name());
+                    pending.push(new Done(l));
+                    pending.push(l.expBody());
+                }
+                case ANF.IfThen i -> {
+                    pending.push(new Done(i));
+                    pending.push(i.falseExp());
+                    pending.push(i.trueExp());
+                }
+                case ANF.LetRec r -> {
+                    for (ANF.Function f : r.funs()) {
+                        index(f.name());
+                    }
+                    pending.push(new Done(r));
+                    pending.push(r.combinedBody());
+                    for (int j = r.funs().size() - 1; j >= 0; j--) {
+                        pending.push(r.funs().get(j));
+                    }
+                }
+                case ANF.Function f -> {
+                    index(f.name());
+                    for (ANF.Var p : f.parameters()) {
+                        index(p);
+                    }
+                    pending.push(new Done(f));
+                    pending.push(f.expBody());
+                }
+                case Done(ANF.Let l) -> {
+                    var bits = done.peek();
+                    bits.clear(index(l.name()));
+                    addUses(l.term(), bits);
+                }
+                case Done(ANF.IfThen i) -> {
+                    var bits = union(done.pop(), done.pop());
+                    addUses(i.cond(), bits);
+                    done.push(bits);
+                }
+                case Done(ANF.LetRec r) -> {
+                    var bits = done.pop();
+                    for (int j = 0; j < r.funs().size(); j++) {
+                        bits = union(bits, done.pop());
+                    }
+                    for (ANF.Function f : r.funs()) {
+                        bits.clear(index(f.name()));
+                    }
+                    done.push(bits);
+                }
+                case Done(ANF.Function f) -> {
+                    var bits = done.peek();
+                    for (ANF.Var p : f.parameters()) {
+                        bits.clear(index(p));
+                    }
+                    free.put(f, (BitSet) bits.clone());
+                }
+                case ANF.Term t -> {
+                    var bits = new BitSet();
+                    addUses(t, bits);
+                    done.push(bits);
+                }
+                default -> throw new IllegalStateException();
+            }
+        }
+        return done.pop();
+    }
+
+    /**
+     * {@return the union of two sets, computed in the one using more words}
+     */
+    private static BitSet union(BitSet a, BitSet b) {
+        if (a.length() < b.length()) {
+            var t = a;
+            a = b;
+            b = t;
+        }
+        a.or(b);
+        return a;
+    }
+}
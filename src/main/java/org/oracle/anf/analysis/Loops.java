@@ -0,0 +1,235 @@
+/*
+ * Copyright (c) 2024, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Oracle designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+
+package org.oracle.anf.analysis;
+
+import org.oracle.anf.ANF;
+import org.oracle.anf.FunKind;
+import org.oracle.anf.util.Fold;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Loops of an ANF program, recovered from cycles of tail calls.
+ * <p>
+ * Loops of the source program become {@link ANF.LetRec} functions calling each other in tail
+ * position, the loop header and body blocks of a {@code while} loop for example. Every strongly
+ * connected component of the graph of tail calls between the program's functions that contains
+ * a cycle, including a function calling itself, is a {@link Loop}. Its members may be defined in
+ * different LetRecs, as a loop body is nested in the function of the block dominating it. Its
+ * headers are the members called from outside the loop, and its loop-carried variables are the
+ * parameters of its members: a tail call within the loop is a jump that assigns them.
+ * <p>
+ * The loops are an annotation of the unchanged program: an evaluator or code generator may run
+ * a tail call within a loop as a jump in the current frame, as the {@code Linker} does. A jump
+ * to a member defined in the calling function would need the current frame as its static link,
+ * so such edges are only jumps once {@code LambdaLifting} has made the members siblings.
+ * Variable names are assumed unique.
+ */
+public final class Loops {
+
+    /**
+     * Functions calling each other in tail position.
+     *
+     * @param members the functions of the loop, in definition order
+     * @param headers the members called from outside the loop
+     * @param carried the parameters of the members
+     */
+    public record Loop(List<ANF.Function> members, List<ANF.Function> headers, List<ANF.Var> carried) {}
+
+    private final List<Loop> loops;
+    private final Map<Object, Loop> byName;
+
+    private Loops(List<Loop> loops, Map<Object, Loop> byName) {
+        this.loops = loops;
+        this.byName = byName;
+    }
+
+    public static Loops find(ANF.Expression expr) {
+        return find(expr, null);
+    }
+
+    /**
+     * Finds the loops of the program with entry point {@code entry}, which is called from outside.
+     */
+    public static Loops find(ANF.Function entry) {
+        return find(null, entry);
+    }
+
+    public List<Loop> loops() {
+        return loops;
+    }
+
+    /**
+     * {@return the loop the function named {@code functionName} belongs to, or null}
+     */
+    public Loop loopOf(Object functionName) {
+        return byName.get(functionName);
+    }
+
+    /**
+     * {@return whether a tail call from the function named {@code from} to {@code to} is a jump within a loop}
+     */
+    public boolean isJump(Object from, Object to) {
+        var loop = byName.get(from);
+        return loop != null && loop == byName.get(to);
+    }
+
+    private static Loops find(ANF.Expression expr, ANF.Function entry) {
+        List<ANF.Function> functions = new ArrayList<>();
+        Fold.Visitor<List<ANF.Function>> collect = new Fold.Visitor<>() {
+            @Override
+            public Fold.Step preFunction(ANF.Function f, List<ANF.Function> acc) {
+                acc.add(f);
+                return Fold.Step.CONTINUE;
+            }
+        };
+        if (entry != null) {
+            Fold.fold(entry, collect, functions);
+        } else {
+            Fold.fold(expr, collect, functions);
+        }
+        HashMap<Object, Integer> index = new HashMap<>();
+        for (int i = 0; i < functions.size(); i++) {
+            index.put(functions.get(i).name().varId(), i);
+        }
+
+        // Tail calls between functions, and every function called by another or from the top level.
+        int n = functions.size();
+        BitSet[] tailCalls = new BitSet[n];
+        List<int[]> calls = new ArrayList<>();
+        for (int i = 0; i < n; i++) {
+            tailCalls[i] = new BitSet();
+            collectCalls(functions.get(i).expBody(), i, index, tailCalls[i], calls);
+        }
+        if (entry != null) {
+            calls.add(new int[]{-1, 0});
+        } else {
+            collectCalls(expr, -1, index, new BitSet(), calls);
+        }
+        int[][] successors = new int[n][];
+        for (int i = 0; i < n; i++) {
+            successors[i] = tailCalls[i].stream().toArray();
+        }
+        boolean[] all = new boolean[n];
+        Arrays.fill(all, true);
+
+        int[] component = new int[n];
+        var components = StronglyConnected.components(successors, all);
+        for (int c = 0; c < components.size(); c++) {
+            for (int i : components.get(c)) {
+                component[i] = c;
+            }
+        }
+        BitSet headers = new BitSet();
+        for (int[] call : calls) {
+            if (call[0] < 0 || component[call[0]] != component[call[1]]) {
+                headers.set(call[1]);
+            }
+        }
+
+        List<Loop> loops = new ArrayList<>();
+        Map<Object, Loop> byName = new HashMap<>();
+        for (int[] members : components) {
+            if (members.length == 1 && !tailCalls[members[0]].get(members[0])) {
+                continue;
+            }
+            List<ANF.Function> fs = new ArrayList<>(members.length);
+            List<ANF.Function> hs = new ArrayList<>();
+            List<ANF.Var> carried = new ArrayList<>();
+            for (int i : members) {
+                var f = functions.get(i);
+                fs.add(f);
+                if (headers.get(i)) {
+                    hs.add(f);
+                }
+                carried.addAll(f.parameters());
+            }
+            var loop = new Loop(List.copyOf(fs), List.copyOf(hs), List.copyOf(carried));
+            loops.add(loop);
+            for (var f : fs) {
+                byName.put(f.name().varId(), loop);
+            }
+        }
+        return new Loops(List.copyOf(loops), byName);
+    }
+
+    /**
+     * Records the calls made by the body of one function, not those of the functions it defines.
+     */
+    private static void collectCalls(ANF.Expression body, int caller, Map<Object, Integer> index,
+                                     BitSet tailCalls, List<int[]> calls) {
+        ArrayDeque<ANF.Expression> spine = new ArrayDeque<>();
+        spine.push(body);
+        while (!spine.isEmpty()) {
+            switch (spine.pop()) {
+                case ANF.Let l -> {
+                    collectCalls(l.term(), caller, index, calls);
+                    spine.push(l.expBody());
+                }
+                case ANF.LetRec r -> spine.push(r.combinedBody());
+                case ANF.IfThen i -> {
+                    collectCalls(i.cond(), caller, index, calls);
+                    spine.push(i.falseExp());
+                    spine.push(i.trueExp());
+                }
+                case ANF.FunApply fa -> {
+                    var callee = callee(fa, index);
+                    if (callee != null) {
+                        tailCalls.set(callee);
+                    }
+                    collectCalls(fa, caller, index, calls);
+                }
+                case ANF.Var _, ANF.Const _ -> {
+                }
+            }
+        }
+    }
+
+    private static void collectCalls(ANF.Term term, int caller, Map<Object, Integer> index, List<int[]> calls) {
+        if (term instanceof ANF.FunApply fa) {
+            var callee = callee(fa, index);
+            if (callee != null) {
+                calls.add(new int[]{caller, callee});
+            }
+            for (ANF.Term arg : fa.arguments()) {
+                collectCalls(arg, caller, index, calls);
+            }
+        }
+    }
+
+    private static Integer callee(ANF.FunApply fa, Map<Object, Integer> index) {
+        if (fa.fc() instanceof FunKind.FC && fa.name() instanceof ANF.Var(var id)) {
+            return index.get(id);
+        }
+        return null;
+    }
+}
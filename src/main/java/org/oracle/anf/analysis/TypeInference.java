@@ -0,0 +1,296 @@
+/*
+ * Copyright (c) 2024, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Oracle designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+
+package org.oracle.anf.analysis;
+
+import org.oracle.anf.ANF;
+import org.oracle.anf.FunKind;
+import org.oracle.anf.eval.JavaMethods;
+import org.oracle.anf.eval.PrimitiveOp;
+
+import java.lang.reflect.Method;
+import java.util.*;
+
+/**
+ * Infers JVM types for the variables and functions of an ANF program.
+ * <p>
+ * ANF carries no types, so types flow from the entry function's parameter types, constants,
+ * primitive results and Java method signatures. The parameter types of a LetRec-bound
+ * function are those of its arguments at the call sites, and its return type is that of
+ * its tail expressions. Inference runs to a fixpoint, since recursive functions may only
+ * get their types once another function has been typed.
+ * <p>
+ * Variable names are assumed unique across the program, as produced by the transform
+ * or the {@code Labeler}.
+ */
+public final class TypeInference {
+
+    private final Map<Object, Class<?>> varTypes = new HashMap<>();
+    private final Map<Object, ANF.Function> functionsByName = new HashMap<>();
+    private final IdentityHashMap<ANF.Function, Class<?>[]> paramTypes = new IdentityHashMap<>();
+    private final IdentityHashMap<ANF.Function, Class<?>> returnTypes = new IdentityHashMap<>();
+    private final IdentityHashMap<ANF.FunApply, Method> javaTargets = new IdentityHashMap<>();
+    private final List<ANF.Function> functions = new ArrayList<>();
+    private boolean changed;
+
+    private TypeInference() {
+    }
+
+    public static TypeInference infer(ANF.Function entry, List<Class<?>> entryParamTypes) {
+        if (entry.parameters().size() != entryParamTypes.size()) {
+            throw new IllegalArgumentException("Entry function takes " + entry.parameters().size()
+                    + " parameters, " + entryParamTypes.size() + " types given");
+        }
+        var ti = new TypeInference();
+        ti.collect(entry);
+        ti.paramTypes.put(entry, entryParamTypes.toArray(new Class<?>[0]));
+
+        do {
+            ti.changed = false;
+            for (ANF.Function f : ti.functions) {
+                var ps = ti.paramTypes.get(f);
+                if (Arrays.asList(ps).contains(null)) {
+                    continue;
+                }
+                for (int i = 0; i < ps.length; i++) {
+                    ti.bind(f.parameters().get(i), ps[i]);
+                }
+                var rt = ti.typeOf(f.expBody());
+                if (rt != null) {
+                    var old = ti.returnTypes.get(f);
+                    var joined = join(old, rt);
+                    if (joined != old) {
+                        ti.returnTypes.put(f, joined);
+                        ti.changed = true;
+                    }
+                }
+            }
+        } while (ti.changed);
+
+        if (ti.returnTypes.get(entry) == null) {
+            throw new UnsupportedOperationException("Cannot infer the return type of " + entry.name().varId());
+        }
+        return ti;
+    }
+
+    /**
+     * {@return all functions of the program in definition order, the entry function first}
+     */
+    public List<ANF.Function> functions() {
+        return functions;
+    }
+
+    /**
+     * {@return whether the function is called with known argument types, i.e. it is reachable from the entry}
+     */
+    public boolean isTyped(ANF.Function f) {
+        return !Arrays.asList(paramTypes.get(f)).contains(null) && returnTypes.get(f) != null;
+    }
+
+    public Class<?> typeOf(ANF.Var v) {
+        var t = varTypes.get(v.varId());
+        if (t == null) {
+            throw new IllegalStateException("No type for " + v.varId());
+        }
+        return t;
+    }
+
+    public Class<?> typeOf(ANF.Term term) {
+        var t = termType(term);
+        if (t == null) {
+            throw new IllegalStateException("No type for " + term);
+        }
+        return t;
+    }
+
+    public List<Class<?>> parameterTypes(ANF.Function f) {
+        return List.of(paramTypes.get(f));
+    }
+
+    public Class<?> returnType(ANF.Function f) {
+        return returnTypes.get(f);
+    }
+
+    /**
+     * {@return the function a {@link FunKind#FC} application calls}
+     */
+    public ANF.Function callee(ANF.FunApply fa) {
+        var f = fa.name() instanceof ANF.Var(var id) ? functionsByName.get(id) : null;
+        if (f == null) {
+            throw new IllegalStateException("Call to unknown function " + fa.name());
+        }
+        return f;
+    }
+
+    /**
+     * {@return the method a {@link FunKind.Java} application resolves to}
+     */
+    public Method javaTarget(ANF.FunApply fa) {
+        return javaTargets.get(fa);
+    }
+
+    public boolean isFunction(ANF.Var v) {
+        return functionsByName.containsKey(v.varId());
+    }
+
+    private void collect(ANF.Function f) {
+        functions.add(f);
+        functionsByName.put(f.name().varId(), f);
+        paramTypes.put(f, new Class<?>[f.parameters().size()]);
+        collect(f.expBody());
+    }
+
+    private void collect(ANF.Expression expr) {
+        while (true) {
+            switch (expr) {
+                case ANF.Let l -> expr = l.expBody();
+                case ANF.LetRec(var funs, var body) -> {
+                    funs.forEach(this::collect);
+                    expr = body;
+                }
+                case ANF.IfThen(var cond, var t, var f) -> {
+                    collect(t);
+                    expr = f;
+                }
+                default -> {
+                    return;
+                }
+            }
+        }
+    }
+
+    private Class<?> typeOf(ANF.Expression expr) {
+        while (true) {
+            switch (expr) {
+                case ANF.Let(var name, var term, var body) -> {
+                    var t = termType(term);
+                    if (t == null) {
+                        return null;
+                    }
+                    bind(name, t);
+                    expr = body;
+                }
+                case ANF.LetRec l -> expr = l.combinedBody();
+                case ANF.IfThen(var cond, var t, var f) -> {
+                    var ct = termType(cond);
+                    if (ct != null && ct != boolean.class) {
+                        throw new IllegalStateException("Condition " + cond + " is not boolean");
+                    }
+                    return join(typeOf(t), typeOf(f));
+                }
+                case ANF.Const c -> {
+                    return termType(c);
+                }
+                case ANF.Var v -> {
+                    return termType(v);
+                }
+                case ANF.FunApply fa -> {
+                    return termType(fa);
+                }
+            }
+        }
+    }
+
+    private Class<?> termType(ANF.Term term) {
+        return switch (term) {
+            case ANF.Const(var value) -> constantType(value);
+            case ANF.Var(var id) -> varTypes.get(id);
+            case ANF.FunApply fa -> {
+                List<Class<?>> argTypes = new ArrayList<>(fa.arguments().size());
+                for (ANF.Term arg : fa.arguments()) {
+                    argTypes.add(termType(arg));
+                }
+                yield switch (fa.fc()) {
+                    case FunKind.FC _ -> {
+                        var callee = callee(fa);
+                        var ps = paramTypes.get(callee);
+                        if (ps.length != argTypes.size()) {
+                            throw new IllegalStateException("Function " + callee.name().varId() + " expects "
+                                    + ps.length + " arguments, got " + argTypes.size());
+                        }
+                        for (int i = 0; i < ps.length; i++) {
+                            var joined = join(ps[i], argTypes.get(i));
+                            if (joined != ps[i]) {
+                                ps[i] = joined;
+                                changed = true;
+                            }
+                        }
+                        yield returnTypes.get(callee);
+                    }
+                    case FunKind.Primitive _ -> argTypes.contains(null)
+                            ? null
+                            : PrimitiveOp.of(fa).resultType(argTypes);
+                    case FunKind.Java j -> {
+                        if (argTypes.contains(null)) {
+                            yield null;
+                        }
+                        var m = javaTargets.computeIfAbsent(fa, k -> JavaMethods.resolve(j.name(), argTypes));
+                        yield m.getReturnType() == void.class ? Void.class : m.getReturnType();
+                    }
+                };
+            }
+        };
+    }
+
+    private void bind(ANF.Var v, Class<?> type) {
+        var old = varTypes.get(v.varId());
+        var joined = join(old, type);
+        if (joined != old) {
+            varTypes.put(v.varId(), joined);
+            changed = true;
+        }
+    }
+
+    public static Class<?> constantType(Object value) {
+        if (value == null) {
+            return Object.class;
+        }
+        return switch (value) {
+            case Integer _ -> int.class;
+            case Long _ -> long.class;
+            case Float _ -> float.class;
+            case Double _ -> double.class;
+            case Boolean _ -> boolean.class;
+            case Character _ -> char.class;
+            case Short _ -> short.class;
+            case Byte _ -> byte.class;
+            default -> value.getClass();
+        };
+    }
+
+    /**
+     * {@return the least type of {@code a} and {@code b}, unknown types being {@code null}}
+     */
+    static Class<?> join(Class<?> a, Class<?> b) {
+        if (a == null || a == b) {
+            return b;
+        } else if (b == null) {
+            return a;
+        } else if (!a.isPrimitive() && !b.isPrimitive()) {
+            return a.isAssignableFrom(b) ? a : b.isAssignableFrom(a) ? b : Object.class;
+        }
+        throw new UnsupportedOperationException("Conflicting types " + a.getName() + " and " + b.getName());
+    }
+}
@@ -0,0 +1,619 @@
+/*
+ * Copyright (c) 2024, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Oracle designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+
+package org.oracle.anf.compile;
+
+import org.oracle.anf.ANF;
+import org.oracle.anf.FunKind;
+import org.oracle.anf.analysis.TypeInference;
+import org.oracle.anf.eval.JavaMethods;
+import org.oracle.anf.eval.PrimitiveOp;
+
+import java.lang.classfile.ClassFile;
+import java.lang.classfile.ClassHierarchyResolver;
+import java.lang.classfile.CodeBuilder;
+import java.lang.classfile.Label;
+import java.lang.classfile.TypeKind;
+import java.lang.constant.ClassDesc;
+import java.lang.constant.ConstantDesc;
+import java.lang.constant.MethodTypeDesc;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.*;
+
+import static java.lang.constant.ConstantDescs.*;
+
+/**
+ * Compiles an ANF program to JVM bytecode in a hidden class.
+ * <p>
+ * Types come from {@link TypeInference}. Every function the program calls in non-tail
+ * position, and the entry function, becomes a static method whose parameters are the
+ * function's parameters followed by the variables it captures from enclosing functions.
+ * The functions a method reaches through tail calls are emitted into the same method,
+ * so a tail call becomes a store to the callee's parameters and a {@code goto}, and
+ * loops that became tail-recursive functions stay loops. {@code IfThen} becomes
+ * conditional jumps, primitives become the matching JVM opcodes and {@link FunKind.Java}
+ * applications become direct invocations of the resolved method.
+ */
+public final class ANFCompiler {
+
+    private static final MethodHandles.Lookup LOOKUP = MethodHandles.lookup();
+    private static final ClassDesc PROGRAM = ClassDesc.of(ANFCompiler.class.getPackageName(), "ANFProgram");
+
+    private final TypeInference types;
+    private final FunctionInfo[] infos;
+    private final IdentityHashMap<ANF.Function, FunctionInfo> infoOf = new IdentityHashMap<>();
+
+    private ANFCompiler(TypeInference types) {
+        this.types = types;
+        var functions = types.functions().stream().filter(types::isTyped).toList();
+        this.infos = new FunctionInfo[functions.size()];
+        for (int i = 0; i < infos.length; i++) {
+            infos[i] = new FunctionInfo(functions.get(i), "fn" + i);
+            infoOf.put(functions.get(i), infos[i]);
+        }
+    }
+
+    /**
+     * Compiles the program whose entry point is {@code entry}.
+     *
+     * @param entry the entry function, typically with the outermost LetRec as its body
+     * @param type  the type of the returned handle, its parameter types are the entry function's parameter types
+     * @return a handle invoking the compiled entry function
+     */
+    public static MethodHandle compile(ANF.Function entry, MethodType type) {
+        var types = TypeInference.infer(entry, type.parameterList());
+        var compiler = new ANFCompiler(types);
+        try {
+            var program = LOOKUP.defineHiddenClass(compiler.generate(), true);
+            var main = compiler.infoOf.get(entry);
+            return program.findStatic(program.lookupClass(), main.methodName, compiler.methodType(main)).asType(type);
+        } catch (IllegalAccessException | NoSuchMethodException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Compiles a LetRec program whose free variables {@code parameters} are bound to the handle's arguments.
+     */
+    public static MethodHandle compile(ANF.LetRec program, List<ANF.Var> parameters, MethodType type) {
+        return compile(ANF.function(ANF.variable(new Object()), parameters, program), type);
+    }
+
+    private static final class FunctionInfo {
+        final ANF.Function function;
+        final String methodName;
+        // Variables bound in this function's own body, not in nested functions.
+        final Set<Object> bound = new HashSet<>();
+        // Variables referenced in this function's own body.
+        final Set<Object> referenced = new LinkedHashSet<>();
+        final List<ANF.Function> tailCalls = new ArrayList<>();
+        final List<ANF.Function> calls = new ArrayList<>();
+        final LinkedHashSet<Object> captures = new LinkedHashSet<>();
+        boolean isMethod;
+
+        FunctionInfo(ANF.Function function, String methodName) {
+            this.function = function;
+            this.methodName = methodName;
+        }
+    }
+
+    private byte[] generate() {
+        for (FunctionInfo info : infos) {
+            scan(info);
+        }
+        infos[0].isMethod = true;
+        computeCaptures();
+
+        var resolver = ClassHierarchyResolver.defaultResolver()
+                .orElse(ClassHierarchyResolver.ofClassLoading(ANFCompiler.class.getClassLoader()));
+        return ClassFile.of(ClassFile.ClassHierarchyResolverOption.of(resolver)).build(PROGRAM, clb -> {
+            clb.withFlags(ClassFile.ACC_FINAL | ClassFile.ACC_SYNTHETIC);
+            for (FunctionInfo info : infos) {
+                if (info.isMethod) {
+                    clb.withMethodBody(info.methodName, methodTypeDesc(info),
+                            ClassFile.ACC_STATIC | ClassFile.ACC_SYNTHETIC,
+                            cb -> new MethodGen(cb, info).emit());
+                }
+            }
+        });
+    }
+
+    /**
+     * Records what a function binds, references and calls, without descending into nested functions.
+     * Functions called in non-tail position become methods.
+     */
+    private void scan(FunctionInfo info) {
+        info.function.parameters().forEach(p -> info.bound.add(p.varId()));
+        ArrayDeque<ANF.Expression> pending = new ArrayDeque<>();
+        pending.push(info.function.expBody());
+        while (!pending.isEmpty()) {
+            var expr = pending.pop();
+            switch (expr) {
+                case ANF.Let(var name, var term, var body) -> {
+                    info.bound.add(name.varId());
+                    scanTerm(info, term, false);
+                    pending.push(body);
+                }
+                case ANF.LetRec l -> pending.push(l.combinedBody());
+                case ANF.IfThen(var cond, var t, var f) -> {
+                    scanTerm(info, cond, false);
+                    pending.push(t);
+                    pending.push(f);
+                }
+                case ANF.FunApply fa -> scanTerm(info, fa, true);
+                case ANF.Var v -> scanTerm(info, v, false);
+                case ANF.Const _ -> {
+                }
+            }
+        }
+    }
+
+    private void scanTerm(FunctionInfo info, ANF.Term term, boolean tail) {
+        switch (term) {
+            case ANF.Var v -> {
+                if (types.isFunction(v)) {
+                    throw new UnsupportedOperationException("Function " + v.varId() + " used as a value");
+                }
+                info.referenced.add(v.varId());
+            }
+            case ANF.FunApply fa -> {
+                if (fa.fc() instanceof FunKind.FC) {
+                    var callee = types.callee(fa);
+                    if (tail) {
+                        info.tailCalls.add(callee);
+                    } else {
+                        info.calls.add(callee);
+                        infoOf.get(callee).isMethod = true;
+                    }
+                }
+                fa.arguments().forEach(a -> scanTerm(info, a, false));
+            }
+            case ANF.Const _ -> {
+            }
+        }
+    }
+
+    /**
+     * A function captures the variables it references but does not bind, and those its callees
+     * capture that it does not bind itself, since it has to pass them on.
+     */
+    private void computeCaptures() {
+        for (FunctionInfo info : infos) {
+            for (Object id : info.referenced) {
+                if (!info.bound.contains(id)) {
+                    info.captures.add(id);
+                }
+            }
+        }
+        boolean changed = true;
+        while (changed) {
+            changed = false;
+            for (FunctionInfo info : infos) {
+                for (var callee : calleesOf(info)) {
+                    for (Object id : infoOf.get(callee).captures) {
+                        if (!info.bound.contains(id)) {
+                            changed |= info.captures.add(id);
+                        }
+                    }
+                }
+            }
+        }
+        if (!infos[0].captures.isEmpty()) {
+            throw new IllegalArgumentException("Entry function has free variables " + infos[0].captures);
+        }
+    }
+
+    private static List<ANF.Function> calleesOf(FunctionInfo info) {
+        List<ANF.Function> callees = new ArrayList<>(info.calls);
+        callees.addAll(info.tailCalls);
+        return callees;
+    }
+
+    private List<Class<?>> methodParameterTypes(FunctionInfo info) {
+        List<Class<?>> params = new ArrayList<>(types.parameterTypes(info.function));
+        for (Object id : info.captures) {
+            params.add(types.typeOf(ANF.variable(id)));
+        }
+        return params;
+    }
+
+    private MethodType methodType(FunctionInfo info) {
+        return MethodType.methodType(types.returnType(info.function), methodParameterTypes(info));
+    }
+
+    private MethodTypeDesc methodTypeDesc(FunctionInfo info) {
+        return MethodTypeDesc.of(desc(types.returnType(info.function)),
+                methodParameterTypes(info).stream().map(ANFCompiler::desc).toList());
+    }
+
+    /**
+     * Emits one method: its root function, followed by every function reachable from it through tail calls.
+     */
+    private final class MethodGen {
+        final CodeBuilder cb;
+        final FunctionInfo root;
+        final Map<Object, Integer> slots = new HashMap<>();
+        final IdentityHashMap<ANF.Function, Label> entries = new IdentityHashMap<>();
+        final ANF.Function rootFunction;
+
+        MethodGen(CodeBuilder cb, FunctionInfo root) {
+            this.cb = cb;
+            this.root = root;
+            this.rootFunction = root.function;
+        }
+
+        void emit() {
+            int slot = 0;
+            for (ANF.Var p : rootFunction.parameters()) {
+                slots.put(p.varId(), slot);
+                slot += kind(types.typeOf(p)).slotSize();
+            }
+            for (Object id : root.captures) {
+                slots.put(id, slot);
+                slot += kind(types.typeOf(ANF.variable(id))).slotSize();
+            }
+
+            // Tail call closure, every member gets an entry label and slots for its parameters.
+            List<ANF.Function> group = new ArrayList<>();
+            group.add(rootFunction);
+            entries.put(rootFunction, cb.newLabel());
+            for (int i = 0; i < group.size(); i++) {
+                for (var callee : infoOf.get(group.get(i)).tailCalls) {
+                    if (!entries.containsKey(callee)) {
+                        entries.put(callee, cb.newLabel());
+                        group.add(callee);
+                        for (ANF.Var p : callee.parameters()) {
+                            slots.put(p.varId(), cb.allocateLocal(kind(types.typeOf(p))));
+                        }
+                    }
+                }
+            }
+
+            for (var f : group) {
+                cb.labelBinding(entries.get(f));
+                emitTail(f.expBody(), types.returnType(f));
+            }
+        }
+
+        void emitTail(ANF.Expression expr, Class<?> returnType) {
+            while (true) {
+                switch (expr) {
+                    case ANF.Let(var name, var term, var body) -> {
+                        var type = types.typeOf(name);
+                        convert(emitTerm(term), type);
+                        int slot = cb.allocateLocal(kind(type));
+                        cb.storeLocal(kind(type), slot);
+                        slots.put(name.varId(), slot);
+                        expr = body;
+                    }
+                    case ANF.LetRec l -> expr = l.combinedBody();
+                    case ANF.IfThen(var cond, var t, var f) -> {
+                        Label elseLabel = cb.newLabel();
+                        emitBranchIfFalse(cond, elseLabel);
+                        emitTail(t, returnType);
+                        cb.labelBinding(elseLabel);
+                        expr = f;
+                    }
+                    case ANF.FunApply fa when fa.fc() instanceof FunKind.FC && entries.containsKey(types.callee(fa)) -> {
+                        // Tail call within this method: assign the parameters and jump.
+                        var callee = types.callee(fa);
+                        var params = callee.parameters();
+                        for (int i = 0; i < params.size(); i++) {
+                            convert(emitTerm(fa.arguments().get(i)), types.typeOf(params.get(i)));
+                        }
+                        for (int i = params.size() - 1; i >= 0; i--) {
+                            cb.storeLocal(kind(types.typeOf(params.get(i))), slots.get(params.get(i).varId()));
+                        }
+                        cb.goto_(entries.get(callee));
+                        return;
+                    }
+                    case ANF.Term term -> {
+                        convert(emitTerm(term), returnType);
+                        cb.return_(kind(returnType));
+                        return;
+                    }
+                }
+            }
+        }
+
+        /**
+         * Pushes the value of {@code term} and returns its static type.
+         */
+        Class<?> emitTerm(ANF.Term term) {
+            switch (term) {
+                case ANF.Const(var value) -> {
+                    emitConstant(value);
+                    return TypeInference.constantType(value);
+                }
+                case ANF.Var v -> {
+                    var type = types.typeOf(v);
+                    cb.loadLocal(kind(type), slot(v));
+                    return type;
+                }
+                case ANF.FunApply fa -> {
+                    return switch (fa.fc()) {
+                        case FunKind.FC _ -> emitCall(fa);
+                        case FunKind.Primitive _ -> emitPrimitive(fa);
+                        case FunKind.Java _ -> emitJava(fa);
+                    };
+                }
+            }
+        }
+
+        Class<?> emitCall(ANF.FunApply fa) {
+            var callee = infoOf.get(types.callee(fa));
+            var params = callee.function.parameters();
+            for (int i = 0; i < params.size(); i++) {
+                convert(emitTerm(fa.arguments().get(i)), types.typeOf(params.get(i)));
+            }
+            for (Object id : callee.captures) {
+                cb.loadLocal(kind(types.typeOf(ANF.variable(id))), slots.get(id));
+            }
+            cb.invokestatic(PROGRAM, callee.methodName, methodTypeDesc(callee));
+            return types.returnType(callee.function);
+        }
+
+        Class<?> emitJava(ANF.FunApply fa) {
+            Method m = types.javaTarget(fa);
+            // Invoke through the named class, the declaring class may not be accessible.
+            var ownerClass = JavaMethods.owner(((FunKind.Java) fa.fc()).name());
+            var owner = desc(ownerClass);
+            var mtype = MethodTypeDesc.of(desc(m.getReturnType()),
+                    Arrays.stream(m.getParameterTypes()).map(ANFCompiler::desc).toList());
+            var args = fa.arguments();
+            var params = m.getParameterTypes();
+            boolean isStatic = Modifier.isStatic(m.getModifiers());
+            int offset = isStatic ? 0 : 1;
+            if (!isStatic) {
+                convert(emitTerm(args.getFirst()), ownerClass);
+            }
+            for (int i = 0; i < params.length; i++) {
+                convert(emitTerm(args.get(i + offset)), params[i]);
+            }
+            boolean isInterface = ownerClass.isInterface();
+            if (isStatic) {
+                cb.invokestatic(owner, m.getName(), mtype, isInterface);
+            } else if (isInterface) {
+                cb.invokeinterface(owner, m.getName(), mtype);
+            } else {
+                cb.invokevirtual(owner, m.getName(), mtype);
+            }
+            if (m.getReturnType() == void.class) {
+                cb.aconst_null();
+                return Void.class;
+            }
+            return m.getReturnType();
+        }
+
+        Class<?> emitPrimitive(ANF.FunApply fa) {
+            var op = PrimitiveOp.of(fa);
+            var args = fa.arguments();
+            List<Class<?>> argTypes = args.stream().<Class<?>>map(types::typeOf).toList();
+            var type = op.resultType(argTypes);
+            if (op.isComparison()) {
+                Label isTrue = cb.newLabel();
+                Label end = cb.newLabel();
+                emitCompareJump(op, args, isTrue);
+                cb.iconst_0();
+                cb.goto_(end);
+                cb.labelBinding(isTrue);
+                cb.iconst_1();
+                cb.labelBinding(end);
+                return boolean.class;
+            }
+            switch (op) {
+                case NOT -> {
+                    convert(emitTerm(args.getFirst()), boolean.class);
+                    cb.iconst_1();
+                    cb.ixor();
+                }
+                case NEG -> {
+                    convert(emitTerm(args.getFirst()), type);
+                    switch (kind(type)) {
+                        case LONG -> cb.lneg();
+                        case FLOAT -> cb.fneg();
+                        case DOUBLE -> cb.dneg();
+                        default -> cb.ineg();
+                    }
+                }
+                case COMPL -> {
+                    convert(emitTerm(args.getFirst()), type);
+                    if (type == long.class) {
+                        cb.loadConstant(-1L);
+                        cb.lxor();
+                    } else {
+                        cb.iconst_m1();
+                        cb.ixor();
+                    }
+                }
+                case LSHL, ASHR, LSHR -> {
+                    convert(emitTerm(args.get(0)), type);
+                    var distance = emitTerm(args.get(1));
+                    if (distance == long.class) {
+                        cb.l2i();
+                    } else {
+                        convert(distance, int.class);
+                    }
+                    boolean isLong = type == long.class;
+                    switch (op) {
+                        case LSHL -> { if (isLong) cb.lshl(); else cb.ishl(); }
+                        case ASHR -> { if (isLong) cb.lshr(); else cb.ishr(); }
+                        default -> { if (isLong) cb.lushr(); else cb.iushr(); }
+                    }
+                }
+                default -> {
+                    convert(emitTerm(args.get(0)), type);
+                    convert(emitTerm(args.get(1)), type);
+                    emitBinary(op, type == boolean.class ? TypeKind.INT : kind(type));
+                }
+            }
+            return type;
+        }
+
+        void emitBinary(PrimitiveOp op, TypeKind k) {
+            switch (op) {
+                case ADD -> { switch (k) { case LONG -> cb.ladd(); case FLOAT -> cb.fadd(); case DOUBLE -> cb.dadd(); default -> cb.iadd(); } }
+                case SUB -> { switch (k) { case LONG -> cb.lsub(); case FLOAT -> cb.fsub(); case DOUBLE -> cb.dsub(); default -> cb.isub(); } }
+                case MUL -> { switch (k) { case LONG -> cb.lmul(); case FLOAT -> cb.fmul(); case DOUBLE -> cb.dmul(); default -> cb.imul(); } }
+                case DIV -> { switch (k) { case LONG -> cb.ldiv(); case FLOAT -> cb.fdiv(); case DOUBLE -> cb.ddiv(); default -> cb.idiv(); } }
+                case MOD -> { switch (k) { case LONG -> cb.lrem(); case FLOAT -> cb.frem(); case DOUBLE -> cb.drem(); default -> cb.irem(); } }
+                case AND -> { if (k == TypeKind.LONG) cb.land(); else cb.iand(); }
+                case OR -> { if (k == TypeKind.LONG) cb.lor(); else cb.ior(); }
+                case XOR -> { if (k == TypeKind.LONG) cb.lxor(); else cb.ixor(); }
+                default -> throw new IllegalStateException(op.opName() + " is not a binary operation");
+            }
+        }
+
+        /**
+         * Jumps to {@code target} if the comparison holds, following Java semantics for NaN.
+         */
+        void emitCompareJump(PrimitiveOp op, List<ANF.Term> args, Label target) {
+            var a = types.typeOf(args.get(0));
+            var b = types.typeOf(args.get(1));
+            if (!PrimitiveOp.isNumeric(a) || !PrimitiveOp.isNumeric(b)) {
+                emitTerm(args.get(0));
+                emitTerm(args.get(1));
+                boolean references = !a.isPrimitive() || !b.isPrimitive();
+                switch (op) {
+                    case EQ -> { if (references) cb.if_acmpeq(target); else cb.if_icmpeq(target); }
+                    case NEQ -> { if (references) cb.if_acmpne(target); else cb.if_icmpne(target); }
+                    default -> throw new IllegalStateException(op.opName() + " is not defined on " + a.getName());
+                }
+                return;
+            }
+            var type = PrimitiveOp.promote(a, b);
+            convert(emitTerm(args.get(0)), type);
+            convert(emitTerm(args.get(1)), type);
+            if (type == int.class) {
+                switch (op) {
+                    case EQ -> cb.if_icmpeq(target);
+                    case NEQ -> cb.if_icmpne(target);
+                    case LT -> cb.if_icmplt(target);
+                    case LE -> cb.if_icmple(target);
+                    case GT -> cb.if_icmpgt(target);
+                    default -> cb.if_icmpge(target);
+                }
+                return;
+            }
+            // NaN compares as 1 with *cmpg and as -1 with *cmpl, failing < and <= or > and >= respectively.
+            boolean g = op == PrimitiveOp.LT || op == PrimitiveOp.LE;
+            switch (kind(type)) {
+                case LONG -> cb.lcmp();
+                case FLOAT -> { if (g) cb.fcmpg(); else cb.fcmpl(); }
+                default -> { if (g) cb.dcmpg(); else cb.dcmpl(); }
+            }
+            switch (op) {
+                case EQ -> cb.ifeq(target);
+                case NEQ -> cb.ifne(target);
+                case LT -> cb.iflt(target);
+                case LE -> cb.ifle(target);
+                case GT -> cb.ifgt(target);
+                default -> cb.ifge(target);
+            }
+        }
+
+        void emitBranchIfFalse(ANF.Term cond, Label elseLabel) {
+            if (cond instanceof ANF.FunApply fa && fa.fc() instanceof FunKind.Primitive
+                    && PrimitiveOp.of(fa).isComparison()) {
+                Label thenLabel = cb.newLabel();
+                emitCompareJump(PrimitiveOp.of(fa), fa.arguments(), thenLabel);
+                cb.goto_(elseLabel);
+                cb.labelBinding(thenLabel);
+            } else {
+                convert(emitTerm(cond), boolean.class);
+                cb.ifeq(elseLabel);
+            }
+        }
+
+        void emitConstant(Object value) {
+            switch (value) {
+                case null -> cb.aconst_null();
+                case Boolean b -> cb.loadConstant(b ? 1 : 0);
+                case Character c -> cb.loadConstant((int) c);
+                case Byte b -> cb.loadConstant((int) b);
+                case Short s -> cb.loadConstant((int) s);
+                case Integer _, Long _, Float _, Double _, String _ -> cb.loadConstant((ConstantDesc) value);
+                default -> throw new UnsupportedOperationException("Constant of type "
+                        + value.getClass().getName() + " cannot be compiled");
+            }
+        }
+
+        /**
+         * Converts the value on top of the stack from {@code from} to {@code to}:
+         * primitive widening, boxing, unboxing or a reference cast.
+         */
+        void convert(Class<?> from, Class<?> to) {
+            if (from == to) {
+                return;
+            }
+            if (from.isPrimitive() && to.isPrimitive()) {
+                var f = kind(from);
+                var t = kind(to);
+                if (f != t) {
+                    cb.conversion(f, t);
+                }
+            } else if (from.isPrimitive()) {
+                var box = JavaMethods.box(from);
+                cb.invokestatic(desc(box), "valueOf", MethodTypeDesc.of(desc(box), desc(from)));
+            } else if (to.isPrimitive()) {
+                var box = JavaMethods.box(to);
+                cb.checkcast(desc(box));
+                cb.invokevirtual(desc(box), to.getName() + "Value", MethodTypeDesc.of(desc(to)));
+            } else if (!to.isAssignableFrom(from)) {
+                cb.checkcast(desc(to));
+            }
+        }
+
+        int slot(ANF.Var v) {
+            var slot = slots.get(v.varId());
+            if (slot == null) {
+                throw new IllegalStateException("Variable " + v.varId() + " is not in scope of " + root.methodName);
+            }
+            return slot;
+        }
+    }
+
+    static TypeKind kind(Class<?> type) {
+        if (!type.isPrimitive()) {
+            return TypeKind.REFERENCE;
+        }
+        return switch (type.getName()) {
+            case "long" -> TypeKind.LONG;
+            case "float" -> TypeKind.FLOAT;
+            case "double" -> TypeKind.DOUBLE;
+            case "void" -> TypeKind.VOID;
+            default -> TypeKind.INT;
+        };
+    }
+
+    static ClassDesc desc(Class<?> type) {
+        return type.describeConstable().orElseThrow(() ->
+                new UnsupportedOperationException("Type " + type.getName() + " has no nominal descriptor"));
+    }
+}
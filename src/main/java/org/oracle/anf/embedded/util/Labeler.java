@@ -128,7 +128,7 @@ public class Labeler {
     }
 
     public String nextFunction(){
-        var res = fPrefix + pCount;
+        var res = fPrefix + fCount;
         fCount++;
         return res;
     }
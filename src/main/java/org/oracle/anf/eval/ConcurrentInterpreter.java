@@ -0,0 +1,166 @@
+/*
+ * Copyright (c) 2024, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Oracle designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+
+package org.oracle.anf.eval;
+
+import org.oracle.anf.ANF;
+import org.oracle.anf.FunKind;
+import org.oracle.anf.link.JavaCallSite;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+
+/**
+ * Interpreter running the {@link FunKind.Java} applications bound by a {@link ANF.Let}
+ * concurrently with the rest of the evaluation, each on its own virtual thread.
+ * <p>
+ * Since every intermediate result in ANF is named by a Let, a call's dependencies are the
+ * variables among its arguments. A call to a reorderable target is started as soon as its Let
+ * is reached and binds its variable to a pending result; a later reorderable call taking that
+ * variable as argument waits for it on its own thread, any other use of the variable joins it.
+ * Independent calls of a Let chain, such as the lookups of a fan-out, thus overlap.
+ * <p>
+ * Only targets accepted by the predicate given at construction are reordered, all others run
+ * in program order. Every evaluation joins the calls it started before returning, in the order
+ * they were started, and rethrows the first failure, so a call whose result is never used does
+ * not lose its exception.
+ * Instances evaluate one expression at a time.
+ */
+public class ConcurrentInterpreter extends Interpreter {
+
+    private static final int PRUNE = 1024;
+
+    private record Pending(Future<Object> result) {}
+
+    private final Predicate<String> reorderable;
+    private final Map<ANF.FunApply, JavaCallSite> sites = new IdentityHashMap<>();
+    private ExecutorService executor;
+    // Calls started by the current evaluation and not yet known to have succeeded.
+    private List<Future<Object>> started;
+    private int prune;
+
+    /**
+     * @param reorderableTargets the {@link FunKind.Java#name()}s of the methods safe to run out of order
+     */
+    public ConcurrentInterpreter(Set<String> reorderableTargets) {
+        this(reorderableTargets::contains);
+    }
+
+    public ConcurrentInterpreter(Predicate<String> reorderable) {
+        this.reorderable = reorderable;
+    }
+
+    @Override
+    public Object eval(ANF.Expression expr, Map<?, ?> bindings) {
+        return run(() -> super.eval(expr, bindings));
+    }
+
+    @Override
+    public Object invoke(ANF.Function f, Object... args) {
+        return run(() -> super.invoke(f, args));
+    }
+
+    private Object run(Supplier<Object> evaluation) {
+        if (executor != null) {
+            return evaluation.get();
+        }
+        try (var e = Executors.newVirtualThreadPerTaskExecutor()) {
+            executor = e;
+            started = new ArrayList<>();
+            prune = PRUNE;
+            var result = evaluation.get();
+            for (var call : started) {
+                join(new Pending(call));
+            }
+            return result;
+        } finally {
+            executor = null;
+            started = null;
+        }
+    }
+
+    @Override
+    protected Object evalBound(ANF.Term term, Env env) {
+        if (term instanceof ANF.FunApply fa && fa.fc() instanceof FunKind.Java j && reorderable.test(j.name())) {
+            var terms = fa.arguments();
+            Object[] args = new Object[terms.size()];
+            for (int i = 0; i < args.length; i++) {
+                // Pending arguments are joined by the call's own thread.
+                args[i] = terms.get(i) instanceof ANF.Var v ? env.lookup(v) : evalTerm(terms.get(i), env);
+            }
+            var site = sites.computeIfAbsent(fa, _ -> new JavaCallSite(j.name()));
+            var call = executor.submit(() -> {
+                for (int i = 0; i < args.length; i++) {
+                    args[i] = join(args[i]);
+                }
+                return site.invoke(args);
+            });
+            if (started.size() == prune) {
+                // Loops start calls without bound; only those that may still fail are kept.
+                started.removeIf(c -> c.state() == Future.State.SUCCESS);
+                prune = Math.max(PRUNE, started.size() * 2);
+            }
+            started.add(call);
+            return new Pending(call);
+        }
+        return super.evalBound(term, env);
+    }
+
+    @Override
+    protected Object evalTerm(ANF.Term term, Env env) {
+        if (term instanceof ANF.Var v) {
+            return join(env.lookup(v));
+        }
+        return super.evalTerm(term, env);
+    }
+
+    private static Object join(Object value) {
+        if (!(value instanceof Pending(var result))) {
+            return value;
+        }
+        try {
+            return result.get();
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException re) {
+                throw re;
+            } else if (e.getCause() instanceof Error err) {
+                throw err;
+            }
+            throw new RuntimeException(e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        }
+    }
+}
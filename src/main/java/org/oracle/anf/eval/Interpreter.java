@@ -0,0 +1,248 @@
+/*
+ * Copyright (c) 2024, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Oracle designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+
+package org.oracle.anf.eval;
+
+import org.oracle.anf.ANF;
+import org.oracle.anf.FunKind;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Tree-walking evaluator for {@link ANF.Expression}.
+ * <p>
+ * {@link FunKind#PRIMITIVE} applications dispatch to {@link PrimitiveOp}, {@link FunKind#FC}
+ * applications to functions bound by an enclosing {@link ANF.LetRec}, and {@link FunKind.Java}
+ * applications to the method named by {@link FunKind.Java#name()} (see {@link JavaMethods}).
+ * <p>
+ * The evaluation loop is a trampoline: a {@code FC} call in tail position replaces the
+ * expression and environment being evaluated instead of recursing, so loops that became
+ * mutually tail-recursive functions run in constant Java stack. Only calls in non-tail
+ * position, i.e. bound by a {@link ANF.Let}, nest on the Java stack.
+ */
+public class Interpreter {
+
+    /**
+     * A LetRec-bound function together with the environment it was defined in.
+     */
+    public record Closure(ANF.Function function, Env env) {}
+
+    /**
+     * A call still to be made, returned by {@link #intercept} to continue the trampoline with it.
+     */
+    public record TailCall(Closure closure, Object[] args) {}
+
+    /**
+     * Returned by {@link #intercept} when the call is to be interpreted.
+     */
+    protected static final Object INTERPRET = new Object();
+
+    /**
+     * Variable bindings of one function activation or LetRec scope.
+     */
+    public static final class Env {
+        final HashMap<Object, Object> values = new HashMap<>();
+        final Env parent;
+
+        Env(Env parent) {
+            this.parent = parent;
+        }
+
+        void bind(Object varId, Object value) {
+            values.put(varId, value);
+        }
+
+        void bind(ANF.Var v, Object value) {
+            values.put(v.varId(), value);
+        }
+
+        Object lookup(ANF.Var v) {
+            return lookup(v.varId());
+        }
+
+        Object lookup(Object varId) {
+            for (Env e = this; e != null; e = e.parent) {
+                var value = e.values.get(varId);
+                if (value != null || e.values.containsKey(varId)) {
+                    return value;
+                }
+            }
+            throw new IllegalStateException("Unbound variable " + varId);
+        }
+    }
+
+    /**
+     * Evaluates a closed expression.
+     */
+    public Object eval(ANF.Expression expr) {
+        return eval(expr, Map.of());
+    }
+
+    /**
+     * Evaluates an expression whose free variables are bound by {@code bindings}, keyed by variable id.
+     */
+    public Object eval(ANF.Expression expr, Map<?, ?> bindings) {
+        var env = new Env(null);
+        bindings.forEach(env.values::put);
+        return run(expr, env);
+    }
+
+    /**
+     * Applies a top level function, such as the entry function of a transformed method, to {@code args}.
+     */
+    public Object invoke(ANF.Function f, Object... args) {
+        var self = new Env(null);
+        var closure = new Closure(f, self);
+        self.values.put(f.name().varId(), closure);
+        return call(closure, args);
+    }
+
+    protected Object call(Closure closure, Object[] args) {
+        return run(null, null, closure, args);
+    }
+
+    /**
+     * Called on every {@code FC} call before it is interpreted.
+     *
+     * @return the result of the call, a {@link TailCall} to make instead, or {@link #INTERPRET}
+     */
+    protected Object intercept(Closure closure, Object[] args) {
+        return INTERPRET;
+    }
+
+    /**
+     * Evaluates {@code expr} in {@code env}.
+     */
+    protected Object run(ANF.Expression expr, Env env) {
+        return run(expr, env, null, null);
+    }
+
+    /**
+     * Evaluates {@code expr} in {@code env}, or, if {@code closure} is not null, the call of {@code closure} with {@code args}.
+     */
+    private Object run(ANF.Expression expr, Env env, Closure closure, Object[] args) {
+        while (true) {
+            if (closure != null) {
+                var r = intercept(closure, args);
+                if (r instanceof TailCall(var c, var a)) {
+                    closure = c;
+                    args = a;
+                    continue;
+                } else if (r != INTERPRET) {
+                    return r;
+                }
+                env = enter(closure, args);
+                expr = closure.function().expBody();
+                closure = null;
+                args = null;
+            }
+            switch (expr) {
+                case ANF.Let(var name, var term, var expBody) -> {
+                    env.bind(name, evalBound(term, env));
+                    expr = expBody;
+                }
+                case ANF.LetRec(var funs, var combinedBody) -> {
+                    env = new Env(env);
+                    for (ANF.Function f : funs) {
+                        env.bind(f.name(), new Closure(f, env));
+                    }
+                    expr = combinedBody;
+                }
+                case ANF.IfThen(var cond, var trueExp, var falseExp) ->
+                        expr = isTrue(evalTerm(cond, env)) ? trueExp : falseExp;
+                case ANF.FunApply fa when fa.fc() instanceof FunKind.FC -> {
+                    // Tail call: continue with the callee's body instead of recursing.
+                    closure = closure(fa, env);
+                    args = evalArgs(fa.arguments(), env);
+                }
+                case ANF.FunApply fa -> {
+                    return evalTerm(fa, env);
+                }
+                case ANF.Const c -> {
+                    return c.value();
+                }
+                case ANF.Var v -> {
+                    return evalTerm(v, env);
+                }
+            }
+        }
+    }
+
+    /**
+     * Evaluates the term bound by a {@link ANF.Let}.
+     */
+    protected Object evalBound(ANF.Term term, Env env) {
+        return evalTerm(term, env);
+    }
+
+    protected Object evalTerm(ANF.Term term, Env env) {
+        return switch (term) {
+            case ANF.Const c -> c.value();
+            case ANF.Var v -> env.lookup(v);
+            case ANF.FunApply fa -> switch (fa.fc()) {
+                case FunKind.FC _ -> call(closure(fa, env), evalArgs(fa.arguments(), env));
+                case FunKind.Primitive _ -> PrimitiveOp.of(fa).apply(evalArgs(fa.arguments(), env));
+                case FunKind.Java j -> JavaMethods.invoke(j.name(), evalArgs(fa.arguments(), env));
+            };
+        };
+    }
+
+    protected Object[] evalArgs(List<ANF.Term> args, Env env) {
+        Object[] values = new Object[args.size()];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = evalTerm(args.get(i), env);
+        }
+        return values;
+    }
+
+    private Closure closure(ANF.FunApply fa, Env env) {
+        if (evalTerm(fa.name(), env) instanceof Closure c) {
+            return c;
+        }
+        throw new IllegalStateException(fa.name() + " is not a function");
+    }
+
+    static Env enter(Closure closure, Object[] args) {
+        var params = closure.function().parameters();
+        if (params.size() != args.length) {
+            throw new IllegalArgumentException("Function " + closure.function().name().varId() + " expects "
+                    + params.size() + " arguments, got " + args.length);
+        }
+        var env = new Env(closure.env());
+        for (int i = 0; i < args.length; i++) {
+            env.bind(params.get(i), args[i]);
+        }
+        return env;
+    }
+
+    static boolean isTrue(Object cond) {
+        if (cond instanceof Boolean b) {
+            return b;
+        }
+        throw new IllegalStateException("Condition is not a boolean: " + cond);
+    }
+}
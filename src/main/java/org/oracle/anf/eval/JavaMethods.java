@@ -0,0 +1,172 @@
+/*
+ * Copyright (c) 2024, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Oracle designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+
+package org.oracle.anf.eval;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.List;
+
+/**
+ * Reflective resolution of {@link org.oracle.anf.FunKind.Java} targets.
+ * <p>
+ * A target is named {@code binary.class.Name::method}. Static methods take all
+ * arguments as parameters, instance methods take the receiver as first argument.
+ */
+public final class JavaMethods {
+
+    private JavaMethods() {
+    }
+
+    public static Object invoke(String target, Object[] args) {
+        Method m = resolve(target, args);
+        try {
+            if (Modifier.isStatic(m.getModifiers())) {
+                return m.invoke(null, args);
+            }
+            Object[] rest = new Object[args.length - 1];
+            System.arraycopy(args, 1, rest, 0, rest.length);
+            return m.invoke(args[0], rest);
+        } catch (IllegalAccessException e) {
+            throw new RuntimeException(e);
+        } catch (InvocationTargetException e) {
+            if (e.getCause() instanceof RuntimeException re) {
+                throw re;
+            }
+            throw new RuntimeException(e.getCause());
+        }
+    }
+
+    /**
+     * {@return the public method {@code target} names that accepts {@code args}}
+     */
+    public static Method resolve(String target, Object[] args) {
+        var owner = owner(target);
+        var name = methodName(target);
+        for (Method m : owner.getMethods()) {
+            if (m.getName().equals(name) && accepts(m, args)) {
+                return m;
+            }
+        }
+        throw new UnsupportedOperationException("No method " + target + " applicable to " + args.length + " arguments");
+    }
+
+    /**
+     * {@return the public method {@code target} names that accepts arguments of the given static types}
+     * Primitive arguments are accepted by parameters of the same type or, boxed, by reference parameters.
+     */
+    public static Method resolve(String target, List<Class<?>> argTypes) {
+        var owner = owner(target);
+        var name = methodName(target);
+        for (Method m : owner.getMethods()) {
+            if (m.getName().equals(name) && accepts(m, argTypes)) {
+                return m;
+            }
+        }
+        throw new UnsupportedOperationException("No method " + target + " applicable to " + argTypes);
+    }
+
+    public static Class<?> owner(String target) {
+        int sep = target.indexOf("::");
+        if (sep < 0) {
+            throw new IllegalArgumentException("Java target " + target + " is not of the form Class::method");
+        }
+        try {
+            return Class.forName(target.substring(0, sep));
+        } catch (ClassNotFoundException e) {
+            throw new IllegalArgumentException("Unknown class in Java target " + target, e);
+        }
+    }
+
+    public static String methodName(String target) {
+        return target.substring(target.indexOf("::") + 2);
+    }
+
+    private static boolean accepts(Method m, Object[] args) {
+        boolean isStatic = Modifier.isStatic(m.getModifiers());
+        var params = m.getParameterTypes();
+        int offset = isStatic ? 0 : 1;
+        if (params.length + offset != args.length) {
+            return false;
+        }
+        if (!isStatic && !m.getDeclaringClass().isInstance(args[0])) {
+            return false;
+        }
+        for (int i = 0; i < params.length; i++) {
+            if (!isInstance(params[i], args[i + offset])) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean accepts(Method m, List<Class<?>> argTypes) {
+        boolean isStatic = Modifier.isStatic(m.getModifiers());
+        var params = m.getParameterTypes();
+        int offset = isStatic ? 0 : 1;
+        if (params.length + offset != argTypes.size()) {
+            return false;
+        }
+        if (!isStatic && !m.getDeclaringClass().isAssignableFrom(argTypes.getFirst())) {
+            return false;
+        }
+        for (int i = 0; i < params.length; i++) {
+            if (!isAssignable(params[i], argTypes.get(i + offset))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    static boolean isAssignable(Class<?> type, Class<?> argType) {
+        if (type.isPrimitive() || argType.isPrimitive()) {
+            return type == argType || (!type.isPrimitive() && type.isAssignableFrom(box(argType)));
+        }
+        return type.isAssignableFrom(argType);
+    }
+
+    static boolean isInstance(Class<?> type, Object value) {
+        if (!type.isPrimitive()) {
+            return value == null || type.isInstance(value);
+        }
+        return value != null && box(type) == value.getClass();
+    }
+
+    public static Class<?> box(Class<?> type) {
+        return switch (type.getName()) {
+            case "int" -> Integer.class;
+            case "long" -> Long.class;
+            case "float" -> Float.class;
+            case "double" -> Double.class;
+            case "boolean" -> Boolean.class;
+            case "char" -> Character.class;
+            case "byte" -> Byte.class;
+            case "short" -> Short.class;
+            case "void" -> Void.class;
+            default -> type;
+        };
+    }
+}
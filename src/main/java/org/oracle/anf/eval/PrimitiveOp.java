@@ -0,0 +1,279 @@
+/*
+ * Copyright (c) 2024, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Oracle designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+
+package org.oracle.anf.eval;
+
+import org.oracle.anf.ANF;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Built-in operations applied through {@link org.oracle.anf.FunKind#PRIMITIVE}.
+ * <p>
+ * Primitives are named after the code model operation they come from (see {@code op.opName()}),
+ * and follow Java semantics, including binary numeric promotion, overflow and
+ * {@link ArithmeticException} on integer division by zero.
+ */
+public enum PrimitiveOp {
+    ADD("add", 2),
+    SUB("sub", 2),
+    MUL("mul", 2),
+    DIV("div", 2),
+    MOD("mod", 2),
+    NEG("neg", 1),
+    NOT("not", 1),
+    COMPL("compl", 1),
+    AND("and", 2),
+    OR("or", 2),
+    XOR("xor", 2),
+    LSHL("lshl", 2),
+    ASHR("ashr", 2),
+    LSHR("lshr", 2),
+    EQ("eq", 2),
+    NEQ("neq", 2),
+    GT("gt", 2),
+    GE("ge", 2),
+    LT("lt", 2),
+    LE("le", 2);
+
+    private static final Map<String, PrimitiveOp> BY_NAME = new HashMap<>();
+
+    static {
+        for (PrimitiveOp op : values()) {
+            BY_NAME.put(op.opName, op);
+        }
+    }
+
+    private final String opName;
+    private final int arity;
+
+    PrimitiveOp(String opName, int arity) {
+        this.opName = opName;
+        this.arity = arity;
+    }
+
+    public String opName() {
+        return opName;
+    }
+
+    public int arity() {
+        return arity;
+    }
+
+    public static PrimitiveOp of(String opName) {
+        var op = BY_NAME.get(opName);
+        if (op == null) {
+            throw new UnsupportedOperationException("Unknown primitive " + opName);
+        }
+        return op;
+    }
+
+    /**
+     * {@return the operation a {@link org.oracle.anf.FunKind#PRIMITIVE} application performs}
+     */
+    public static PrimitiveOp of(ANF.FunApply fa) {
+        return switch (fa.name()) {
+            case ANF.Var(var id) -> of(id.toString());
+            case ANF.Const(var value) -> of(value.toString());
+            case ANF.FunApply _ -> throw new IllegalStateException("Primitive name cannot be an application");
+        };
+    }
+
+    public static boolean isPrimitive(String opName) {
+        return BY_NAME.containsKey(opName);
+    }
+
+    public boolean isComparison() {
+        return switch (this) {
+            case EQ, NEQ, GT, GE, LT, LE -> true;
+            default -> false;
+        };
+    }
+
+    /**
+     * {@return the static result type of this operation applied to operands of the given types}
+     */
+    public Class<?> resultType(List<Class<?>> operandTypes) {
+        if (operandTypes.size() != arity) {
+            throw new IllegalArgumentException(opName + " expects " + arity + " arguments, got " + operandTypes.size());
+        }
+        var a = operandTypes.getFirst();
+        if (isComparison() || this == NOT || (a == boolean.class && (this == AND || this == OR || this == XOR))) {
+            return boolean.class;
+        }
+        if (arity == 1 || this == LSHL || this == ASHR || this == LSHR) {
+            return promote(a, int.class);
+        }
+        return promote(a, operandTypes.get(1));
+    }
+
+    /**
+     * {@return the type binary numeric promotion gives to operands of types {@code a} and {@code b}}
+     */
+    public static Class<?> promote(Class<?> a, Class<?> b) {
+        if (!isNumeric(a) || !isNumeric(b)) {
+            throw new IllegalArgumentException("Not numeric: " + a.getName() + ", " + b.getName());
+        }
+        if (a == double.class || b == double.class) {
+            return double.class;
+        } else if (a == float.class || b == float.class) {
+            return float.class;
+        } else if (a == long.class || b == long.class) {
+            return long.class;
+        }
+        return int.class;
+    }
+
+    public static boolean isNumeric(Class<?> type) {
+        return type.isPrimitive() && type != boolean.class && type != void.class;
+    }
+
+    public Object apply(Object... args) {
+        if (args.length != arity) {
+            throw new IllegalArgumentException(opName + " expects " + arity + " arguments, got " + args.length);
+        }
+        return arity == 1 ? apply(args[0]) : apply(args[0], args[1]);
+    }
+
+    public Object apply(Object a) {
+        return switch (this) {
+            case NEG -> switch (a) {
+                case Double d -> -d;
+                case Float f -> -f;
+                case Long l -> -l;
+                default -> -intValue(a);
+            };
+            case NOT -> !(Boolean) a;
+            case COMPL -> a instanceof Long l ? ~l : ~intValue(a);
+            default -> throw new IllegalArgumentException(opName + " is not unary");
+        };
+    }
+
+    public Object apply(Object a, Object b) {
+        if (a instanceof Boolean x && b instanceof Boolean y) {
+            return switch (this) {
+                case AND -> x & y;
+                case OR -> x | y;
+                case XOR -> x ^ y;
+                case EQ -> x.booleanValue() == y.booleanValue();
+                case NEQ -> x.booleanValue() != y.booleanValue();
+                default -> throw new IllegalArgumentException(opName + " is not defined on booleans");
+            };
+        }
+        if (this == LSHL || this == ASHR || this == LSHR) {
+            // Shifts promote each operand separately, the result has the type of the left operand.
+            long distance = ((Number) numeric(b)).longValue();
+            if (a instanceof Long l) {
+                return switch (this) {
+                    case LSHL -> l << distance;
+                    case ASHR -> l >> distance;
+                    default -> l >>> distance;
+                };
+            }
+            int i = intValue(a);
+            return switch (this) {
+                case LSHL -> i << distance;
+                case ASHR -> i >> distance;
+                default -> i >>> distance;
+            };
+        }
+        if (!(numeric(a) instanceof Number x) || !(numeric(b) instanceof Number y)) {
+            return switch (this) {
+                case EQ -> a == b;
+                case NEQ -> a != b;
+                default -> throw new IllegalArgumentException(opName + " is not defined on " + a + ", " + b);
+            };
+        }
+        if (x instanceof Double || y instanceof Double) {
+            double l = x.doubleValue(), r = y.doubleValue();
+            return switch (this) {
+                case ADD -> l + r;
+                case SUB -> l - r;
+                case MUL -> l * r;
+                case DIV -> l / r;
+                case MOD -> l % r;
+                default -> compare(l < r, l == r, l > r);
+            };
+        } else if (x instanceof Float || y instanceof Float) {
+            float l = x.floatValue(), r = y.floatValue();
+            return switch (this) {
+                case ADD -> l + r;
+                case SUB -> l - r;
+                case MUL -> l * r;
+                case DIV -> l / r;
+                case MOD -> l % r;
+                default -> compare(l < r, l == r, l > r);
+            };
+        } else if (x instanceof Long || y instanceof Long) {
+            long l = x.longValue(), r = y.longValue();
+            return switch (this) {
+                case ADD -> l + r;
+                case SUB -> l - r;
+                case MUL -> l * r;
+                case DIV -> l / r;
+                case MOD -> l % r;
+                case AND -> l & r;
+                case OR -> l | r;
+                case XOR -> l ^ r;
+                default -> compare(l < r, l == r, l > r);
+            };
+        } else {
+            int l = x.intValue(), r = y.intValue();
+            return switch (this) {
+                case ADD -> l + r;
+                case SUB -> l - r;
+                case MUL -> l * r;
+                case DIV -> l / r;
+                case MOD -> l % r;
+                case AND -> l & r;
+                case OR -> l | r;
+                case XOR -> l ^ r;
+                default -> compare(l < r, l == r, l > r);
+            };
+        }
+    }
+
+    private Boolean compare(boolean lt, boolean eq, boolean gt) {
+        return switch (this) {
+            case EQ -> eq;
+            case NEQ -> !eq;
+            case LT -> lt;
+            case LE -> lt || eq;
+            case GT -> gt;
+            case GE -> gt || eq;
+            default -> throw new IllegalArgumentException(opName + " is not a comparison");
+        };
+    }
+
+    private static Object numeric(Object o) {
+        return o instanceof Character c ? (int) c : o;
+    }
+
+    private static int intValue(Object o) {
+        return ((Number) numeric(o)).intValue();
+    }
+}
@@ -0,0 +1,349 @@
+/*
+ * Copyright (c) 2024, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Oracle designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+
+package org.oracle.anf.eval;
+
+import org.oracle.anf.ANF;
+import org.oracle.anf.FunKind;
+import org.oracle.anf.link.JavaCallSite;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.invoke.MutableCallSite;
+import java.util.*;
+
+import static java.lang.invoke.MethodType.methodType;
+
+/**
+ * An {@link Interpreter} that promotes hot functions to {@link MethodHandle} trees.
+ * <p>
+ * Every {@link ANF.Function} has an invocation counter and a {@link MutableCallSite} all
+ * {@code FC} calls to it dispatch through. The call site starts out interpreting. Once a
+ * function has been called {@code threshold} times its body is compiled to a method handle
+ * tree and installed as the call site's target, which callers do not observe:
+ * <ul>
+ * <li>{@code Let} chains become {@link MethodHandles#foldArguments} storing into a frame array,
+ * with operands computed by {@link MethodHandles#filterArguments},</li>
+ * <li>{@code IfThen} becomes {@link MethodHandles#guardWithTest},</li>
+ * <li>functions calling themselves in tail position are wrapped in {@link MethodHandles#loop},</li>
+ * <li>tail calls to other functions return a {@link TailCall} to the trampoline.</li>
+ * </ul>
+ * Nested {@code LetRec}s are left to the interpreter. An instance is not thread safe.
+ */
+public class TieredInterpreter extends Interpreter {
+
+    public static final int DEFAULT_THRESHOLD = 1000;
+
+    private static final MethodHandle INTERPRETED;
+    private static final MethodHandle NEW_FRAME;
+    private static final MethodHandle REBIND;
+    private static final MethodHandle IS_TRUE;
+    private static final MethodHandle IS_CONTINUE;
+    private static final MethodHandle TAIL_CALL;
+    private static final MethodHandle CALL;
+    private static final MethodHandle INTERPRET_IN_FRAME;
+    private static final MethodHandle JAVA_INVOKE;
+    private static final MethodHandle APPLY_UNARY;
+    private static final MethodHandle APPLY_BINARY;
+
+    // Returned by a loop body when the function called itself in tail position.
+    private static final Object CONTINUE = new Object();
+
+    static {
+        try {
+            var lookup = MethodHandles.lookup();
+            INTERPRETED = MethodHandles.dropArguments(MethodHandles.constant(Object.class, INTERPRET),
+                    0, Closure.class, Object[].class);
+            NEW_FRAME = lookup.findStatic(TieredInterpreter.class, "newFrame",
+                    methodType(Object[].class, Closure.class, Object[].class, int.class, Object[].class, int[].class));
+            REBIND = lookup.findStatic(TieredInterpreter.class, "rebind",
+                    methodType(Object.class, Object[].class, Object[].class));
+            IS_TRUE = lookup.findStatic(Interpreter.class, "isTrue", methodType(boolean.class, Object.class));
+            IS_CONTINUE = lookup.findStatic(TieredInterpreter.class, "isContinue",
+                    methodType(boolean.class, Object.class));
+            TAIL_CALL = lookup.findConstructor(TailCall.class, methodType(void.class, Closure.class, Object[].class))
+                    .asType(methodType(Object.class, Object.class, Object[].class));
+            CALL = lookup.findVirtual(TieredInterpreter.class, "call",
+                    methodType(Object.class, Closure.class, Object[].class));
+            INTERPRET_IN_FRAME = lookup.findVirtual(TieredInterpreter.class, "interpretInFrame",
+                    methodType(Object.class, ANF.Expression.class, Map.class, Object[].class));
+            JAVA_INVOKE = lookup.findVirtual(JavaCallSite.class, "invoke",
+                    methodType(Object.class, Object[].class));
+            APPLY_UNARY = lookup.findVirtual(PrimitiveOp.class, "apply",
+                    methodType(Object.class, Object.class));
+            APPLY_BINARY = lookup.findVirtual(PrimitiveOp.class, "apply",
+                    methodType(Object.class, Object.class, Object.class));
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    private static final class FunctionState {
+        int invocations;
+        boolean promoted;
+        final MutableCallSite site = new MutableCallSite(INTERPRETED);
+        final MethodHandle invoker = site.dynamicInvoker();
+    }
+
+    private final int threshold;
+    private final IdentityHashMap<ANF.Function, FunctionState> states = new IdentityHashMap<>();
+
+    public TieredInterpreter() {
+        this(DEFAULT_THRESHOLD);
+    }
+
+    public TieredInterpreter(int threshold) {
+        if (threshold < 0) {
+            throw new IllegalArgumentException("Negative threshold " + threshold);
+        }
+        this.threshold = threshold;
+    }
+
+    public int invocations(ANF.Function f) {
+        var state = states.get(f);
+        return state == null ? 0 : state.invocations;
+    }
+
+    public boolean isPromoted(ANF.Function f) {
+        var state = states.get(f);
+        return state != null && state.promoted;
+    }
+
+    @Override
+    protected Object intercept(Closure closure, Object[] args) {
+        var state = states.computeIfAbsent(closure.function(), f -> new FunctionState());
+        if (!state.promoted && ++state.invocations >= threshold) {
+            state.promoted = true;
+            state.site.setTarget(new FunctionCompiler(closure.function()).compile());
+        }
+        try {
+            return (Object) state.invoker.invokeExact(closure, args);
+        } catch (RuntimeException | Error e) {
+            throw e;
+        } catch (Throwable t) {
+            throw new RuntimeException(t);
+        }
+    }
+
+    private Object interpretInFrame(ANF.Expression expr, Map<Object, Integer> slots, Object[] frame) {
+        var env = new Env((Env) frame[0]);
+        slots.forEach((id, slot) -> env.bind(id, frame[slot]));
+        return run(expr, env);
+    }
+
+    private static Object[] newFrame(Closure closure, Object[] args, int size, Object[] captured, int[] capturedSlots) {
+        var params = closure.function().parameters().size();
+        if (args.length != params) {
+            throw new IllegalArgumentException("Function " + closure.function().name().varId() + " expects "
+                    + params + " arguments, got " + args.length);
+        }
+        Object[] frame = new Object[size];
+        frame[0] = closure.env();
+        System.arraycopy(args, 0, frame, 1, args.length);
+        for (int i = 0; i < captured.length; i++) {
+            frame[capturedSlots[i]] = closure.env().lookup(captured[i]);
+        }
+        return frame;
+    }
+
+    private static Object rebind(Object[] frame, Object[] args) {
+        System.arraycopy(args, 0, frame, 1, args.length);
+        return CONTINUE;
+    }
+
+    private static boolean isContinue(Object v) {
+        return v == CONTINUE;
+    }
+
+    /**
+     * Compiles one function to a handle of type {@code (Closure, Object[])Object}.
+     * <p>
+     * The handle evaluates the body over a frame array holding the closure's environment in
+     * slot 0, then the parameters, then the captured variables and the locals.
+     */
+    private final class FunctionCompiler {
+        final ANF.Function function;
+        final Map<Object, Integer> slots = new HashMap<>();
+        final List<Object> captured = new ArrayList<>();
+        final List<Integer> capturedSlots = new ArrayList<>();
+        boolean selfRecursive;
+
+        FunctionCompiler(ANF.Function function) {
+            this.function = function;
+        }
+
+        MethodHandle compile() {
+            for (ANF.Var p : function.parameters()) {
+                slots.put(p.varId(), slots.size() + 1);
+            }
+            assignSlots(function.expBody());
+
+            var body = expression(function.expBody());
+            if (selfRecursive) {
+                // loop(init, step, pred, fini): iterate while the body asks to continue.
+                var init = MethodHandles.dropArguments(MethodHandles.constant(Object.class, null), 0, Object[].class);
+                var step = MethodHandles.dropArguments(body, 0, Object.class);
+                var pred = MethodHandles.dropArguments(IS_CONTINUE, 1, Object[].class);
+                var fini = MethodHandles.dropArguments(MethodHandles.identity(Object.class), 1, Object[].class);
+                body = MethodHandles.loop(new MethodHandle[]{init, step, pred, fini});
+            }
+            var frame = MethodHandles.insertArguments(NEW_FRAME, 2, slots.size() + 1,
+                    captured.toArray(), capturedSlots.stream().mapToInt(Integer::intValue).toArray());
+            return MethodHandles.collectArguments(body, 0, frame);
+        }
+
+        /**
+         * Gives every local and captured variable of the function's own body a frame slot.
+         */
+        void assignSlots(ANF.Expression expr) {
+            ArrayDeque<ANF.Expression> pending = new ArrayDeque<>();
+            pending.push(expr);
+            while (!pending.isEmpty()) {
+                switch (pending.pop()) {
+                    case ANF.Let(var name, var term, var body) -> {
+                        assignTermSlots(term);
+                        slots.put(name.varId(), slots.size() + 1);
+                        pending.push(body);
+                    }
+                    case ANF.IfThen(var cond, var t, var f) -> {
+                        assignTermSlots(cond);
+                        pending.push(t);
+                        pending.push(f);
+                    }
+                    case ANF.LetRec _ -> {
+                        // Interpreted, resolving through the environment.
+                    }
+                    case ANF.Term term -> assignTermSlots(term);
+                }
+            }
+        }
+
+        void assignTermSlots(ANF.Term term) {
+            switch (term) {
+                case ANF.Var(var id) -> {
+                    if (!slots.containsKey(id)) {
+                        slots.put(id, slots.size() + 1);
+                        captured.add(id);
+                        capturedSlots.add(slots.get(id));
+                    }
+                }
+                case ANF.FunApply fa -> {
+                    if (fa.fc() instanceof FunKind.FC) {
+                        assignTermSlots(fa.name());
+                    }
+                    fa.arguments().forEach(this::assignTermSlots);
+                }
+                case ANF.Const _ -> {
+                }
+            }
+        }
+
+        /**
+         * {@return a handle of type {@code (Object[])Object} evaluating {@code expr} in tail position}
+         */
+        MethodHandle expression(ANF.Expression expr) {
+            List<ANF.Let> lets = new ArrayList<>();
+            while (expr instanceof ANF.Let l) {
+                lets.add(l);
+                expr = l.expBody();
+            }
+            var mh = switch (expr) {
+                case ANF.IfThen(var cond, var t, var f) -> MethodHandles.guardWithTest(
+                        MethodHandles.filterReturnValue(term(cond), IS_TRUE), expression(t), expression(f));
+                case ANF.LetRec l -> MethodHandles.insertArguments(INTERPRET_IN_FRAME.bindTo(TieredInterpreter.this),
+                        0, l, Map.copyOf(slots));
+                case ANF.FunApply fa when fa.fc() instanceof FunKind.FC -> {
+                    if (fa.name() instanceof ANF.Var(var id) && id.equals(function.name().varId())) {
+                        selfRecursive = true;
+                        yield MethodHandles.permuteArguments(
+                                MethodHandles.filterArguments(REBIND, 1, arguments(fa.arguments())),
+                                methodType(Object.class, Object[].class), 0, 0);
+                    }
+                    yield fromFrame(TAIL_CALL, term(fa.name()), arguments(fa.arguments()));
+                }
+                case ANF.Term t -> term(t);
+                case ANF.Let _ -> throw new IllegalStateException();
+            };
+            // Stores run before the rest of the chain, innermost binding folded first.
+            for (int i = lets.size() - 1; i >= 0; i--) {
+                var l = lets.get(i);
+                var setter = MethodHandles.insertArguments(MethodHandles.arrayElementSetter(Object[].class),
+                        1, slots.get(l.name().varId()));
+                var store = MethodHandles.permuteArguments(MethodHandles.filterArguments(setter, 1, term(l.term())),
+                        methodType(void.class, Object[].class), 0, 0);
+                mh = MethodHandles.foldArguments(mh, store);
+            }
+            return mh;
+        }
+
+        /**
+         * {@return a handle of type {@code (Object[])Object} computing {@code term}}
+         */
+        MethodHandle term(ANF.Term term) {
+            return switch (term) {
+                case ANF.Const(var value) -> MethodHandles.dropArguments(
+                        MethodHandles.constant(Object.class, value), 0, Object[].class);
+                case ANF.Var(var id) -> MethodHandles.insertArguments(
+                        MethodHandles.arrayElementGetter(Object[].class), 1, slots.get(id));
+                case ANF.FunApply fa -> switch (fa.fc()) {
+                    case FunKind.FC _ -> fromFrame(CALL.bindTo(TieredInterpreter.this)
+                                    .asType(methodType(Object.class, Object.class, Object[].class)),
+                            term(fa.name()), arguments(fa.arguments()));
+                    case FunKind.Primitive _ -> {
+                        var op = PrimitiveOp.of(fa);
+                        var args = fa.arguments();
+                        yield op.arity() == 1
+                                ? fromFrame(APPLY_UNARY.bindTo(op), term(args.get(0)))
+                                : fromFrame(APPLY_BINARY.bindTo(op), term(args.get(0)), term(args.get(1)));
+                    }
+                    case FunKind.Java j -> MethodHandles.filterArguments(
+                            JAVA_INVOKE.bindTo(new JavaCallSite(j.name())), 0, arguments(fa.arguments()));
+                };
+            };
+        }
+
+        /**
+         * {@return a handle of type {@code (Object[])Object[]} collecting the values of {@code args}}
+         */
+        MethodHandle arguments(List<ANF.Term> args) {
+            if (args.isEmpty()) {
+                return MethodHandles.dropArguments(MethodHandles.constant(Object[].class, new Object[0]),
+                        0, Object[].class);
+            }
+            var collector = MethodHandles.identity(Object[].class).asCollector(Object[].class, args.size());
+            return fromFrame(collector, args.stream().map(this::term).toArray(MethodHandle[]::new));
+        }
+
+        /**
+         * Applies {@code target} to the results of {@code operands}, all reading the same frame.
+         */
+        MethodHandle fromFrame(MethodHandle target, MethodHandle... operands) {
+            var filtered = MethodHandles.filterArguments(target, 0, operands);
+            return MethodHandles.permuteArguments(filtered,
+                    methodType(target.type().returnType(), Object[].class), new int[operands.length]);
+        }
+    }
+}
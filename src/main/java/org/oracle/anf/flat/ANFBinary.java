@@ -0,0 +1,240 @@
+/*
+ * Copyright (c) 2024, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Oracle designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+
+package org.oracle.anf.flat;
+
+import org.oracle.anf.ANF;
+import org.oracle.anf.FunKind;
+
+import java.io.IOException;
+import java.lang.foreign.Arena;
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.ValueLayout;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Binary file format of a {@link NodeStream}.
+ * <p>
+ * All values are little endian. A file starts with a header of six ints: the magic number
+ * {@link #MAGIC}, the format {@link #VERSION}, the length of the node stream and the sizes of
+ * the constant, name and kind tables. The node stream follows, then, for each table in that
+ * order, the byte offsets of its entries, relative to the start of the file. Entries come last,
+ * each a tag byte followed by its payload:
+ * <pre>
+ * NULL
+ * INT, LONG, FLOAT, DOUBLE, BOOLEAN, CHAR, BYTE, SHORT  the value
+ * STRING                                               length in bytes, UTF-8 bytes
+ * FC, PRIMITIVE
+ * JAVA                                                 the name, as a STRING entry
+ * </pre>
+ * Names are encoded like constants. Other constant types cannot be written.
+ */
+public final class ANFBinary {
+
+    public static final int MAGIC = 0x00464E41;
+    public static final int VERSION = 1;
+
+    static final int HEADER_INTS = 6;
+
+    static final byte NULL = 0;
+    static final byte INT = 1;
+    static final byte LONG = 2;
+    static final byte FLOAT = 3;
+    static final byte DOUBLE = 4;
+    static final byte BOOLEAN = 5;
+    static final byte CHAR = 6;
+    static final byte BYTE = 7;
+    static final byte SHORT = 8;
+    static final byte STRING = 9;
+    static final byte FC = 10;
+    static final byte PRIMITIVE = 11;
+    static final byte JAVA = 12;
+
+    private ANFBinary() {
+    }
+
+    public static void write(ANF.Expression expr, Path file) throws IOException {
+        write(FlatANF.encode(expr), file);
+    }
+
+    public static void write(FlatANF flat, Path file) throws IOException {
+        var code = flat.code();
+        int tables = flat.constants().length + flat.names().length + flat.kinds().length;
+        var buf = ByteBuffer.allocate(4 * (HEADER_INTS + code.length + tables) + 16 * tables)
+                .order(ByteOrder.LITTLE_ENDIAN);
+        buf.putInt(MAGIC).putInt(VERSION).putInt(code.length)
+                .putInt(flat.constants().length).putInt(flat.names().length).putInt(flat.kinds().length);
+        for (int word : code) {
+            buf.putInt(word);
+        }
+        int offsets = buf.position();
+        buf.position(offsets + 4 * tables);
+        int entry = 0;
+        for (Object c : flat.constants()) {
+            buf = putOffset(buf, offsets, entry++);
+            buf = putValue(buf, c);
+        }
+        for (Object n : flat.names()) {
+            buf = putOffset(buf, offsets, entry++);
+            buf = putValue(buf, n);
+        }
+        for (FunKind k : flat.kinds()) {
+            buf = putOffset(buf, offsets, entry++);
+            buf = switch (k) {
+                case FunKind.FC _ -> ensure(buf, 1).put(FC);
+                case FunKind.Primitive _ -> ensure(buf, 1).put(PRIMITIVE);
+                case FunKind.Java(var name) -> putValue(ensure(buf, 1).put(JAVA), name);
+            };
+        }
+        buf.flip();
+        try (var ch = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            while (buf.hasRemaining()) {
+                ch.write(buf);
+            }
+        }
+    }
+
+    /**
+     * Maps {@code file} for reading. Entries of the side tables are decoded on first use, but
+     * the header, the table offsets and the entry tags are checked here.
+     *
+     * @throws IOException if the file cannot be read or is not a well-formed ANF binary file
+     */
+    public static MappedANF map(Path file) throws IOException {
+        var arena = Arena.ofShared();
+        try (var ch = FileChannel.open(file, StandardOpenOption.READ)) {
+            var segment = ch.map(FileChannel.MapMode.READ_ONLY, 0, ch.size(), arena);
+            return new MappedANF(segment, arena);
+        } catch (IOException | RuntimeException e) {
+            arena.close();
+            throw e;
+        }
+    }
+
+    private static ByteBuffer putOffset(ByteBuffer buf, int offsets, int entry) {
+        buf.putInt(offsets + 4 * entry, buf.position());
+        return buf;
+    }
+
+    private static ByteBuffer putValue(ByteBuffer buf, Object value) {
+        return switch (value) {
+            case null -> ensure(buf, 1).put(NULL);
+            case Integer i -> ensure(buf, 5).put(INT).putInt(i);
+            case Long l -> ensure(buf, 9).put(LONG).putLong(l);
+            case Float f -> ensure(buf, 5).put(FLOAT).putFloat(f);
+            case Double d -> ensure(buf, 9).put(DOUBLE).putDouble(d);
+            case Boolean b -> ensure(buf, 2).put(BOOLEAN).put((byte) (b ? 1 : 0));
+            case Character c -> ensure(buf, 3).put(CHAR).putChar(c);
+            case Byte b -> ensure(buf, 2).put(BYTE).put(b);
+            case Short s -> ensure(buf, 3).put(SHORT).putShort(s);
+            case String s -> {
+                var bytes = s.getBytes(StandardCharsets.UTF_8);
+                yield ensure(buf, 5 + bytes.length).put(STRING).putInt(bytes.length).put(bytes);
+            }
+            default -> throw new IllegalArgumentException("Cannot write value of " + value.getClass());
+        };
+    }
+
+    private static ByteBuffer ensure(ByteBuffer buf, int n) {
+        if (buf.remaining() >= n) {
+            return buf;
+        }
+        var grown = ByteBuffer.allocate(Math.max(buf.capacity() * 2, buf.position() + n)).order(ByteOrder.LITTLE_ENDIAN);
+        return grown.put(buf.flip());
+    }
+
+    /**
+     * Checks that a complete entry, a kind if {@code kind} is set and a constant or name
+     * otherwise, starts at {@code offset}, between {@code start} and the end of the file.
+     */
+    static void checkValue(MemorySegment segment, long start, long offset, boolean kind) throws IOException {
+        long size = segment.byteSize();
+        if (offset < start || offset >= size) {
+            throw new IOException("Corrupt ANF binary file: entry offset " + offset + " out of range");
+        }
+        byte tag = segment.get(ValueLayout.JAVA_BYTE, offset);
+        long payload = switch (tag) {
+            case NULL, FC, PRIMITIVE, JAVA -> 0;
+            case BOOLEAN, BYTE -> 1;
+            case CHAR, SHORT -> 2;
+            case INT, FLOAT -> 4;
+            case LONG, DOUBLE -> 8;
+            case STRING -> {
+                if (offset + 5 > size) {
+                    throw new IOException("Truncated ANF binary file");
+                }
+                int length = segment.get(MappedANF.INT, offset + 1);
+                if (length < 0) {
+                    throw new IOException("Corrupt ANF binary file: negative string length at " + offset);
+                }
+                yield 4L + length;
+            }
+            default -> throw new IOException("Corrupt ANF binary file: unknown entry tag " + tag + " at " + offset);
+        };
+        if ((tag == FC || tag == PRIMITIVE || tag == JAVA) != kind) {
+            throw new IOException("Corrupt ANF binary file: unexpected entry tag " + tag + " at " + offset);
+        }
+        if (offset + 1 + payload > size) {
+            throw new IOException("Truncated ANF binary file");
+        }
+        if (tag == JAVA) {
+            if (offset + 1 >= size || segment.get(ValueLayout.JAVA_BYTE, offset + 1) != STRING) {
+                throw new IOException("Corrupt ANF binary file: Java kind without a name at " + offset);
+            }
+            checkValue(segment, start, offset + 1, false);
+        }
+    }
+
+    static Object readValue(MemorySegment segment, long offset) {
+        byte tag = segment.get(ValueLayout.JAVA_BYTE, offset);
+        long at = offset + 1;
+        return switch (tag) {
+            case NULL -> null;
+            case INT -> segment.get(MappedANF.INT, at);
+            case LONG -> segment.get(MappedANF.LONG, at);
+            case FLOAT -> segment.get(MappedANF.FLOAT, at);
+            case DOUBLE -> segment.get(MappedANF.DOUBLE, at);
+            case BOOLEAN -> segment.get(ValueLayout.JAVA_BYTE, at) != 0;
+            case CHAR -> segment.get(MappedANF.CHAR, at);
+            case BYTE -> segment.get(ValueLayout.JAVA_BYTE, at);
+            case SHORT -> segment.get(MappedANF.SHORT, at);
+            case STRING -> {
+                int length = segment.get(MappedANF.INT, at);
+                var bytes = segment.asSlice(at + 4, length).toArray(ValueLayout.JAVA_BYTE);
+                yield new String(bytes, StandardCharsets.UTF_8);
+            }
+            case FC -> FunKind.FC;
+            case PRIMITIVE -> FunKind.PRIMITIVE;
+            case JAVA -> FunKind.java((String) readValue(segment, at));
+            default -> throw new IllegalStateException("Unknown entry tag " + tag + " at " + offset);
+        };
+    }
+}
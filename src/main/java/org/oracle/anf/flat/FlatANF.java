@@ -0,0 +1,195 @@
+/*
+ * Copyright (c) 2024, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Oracle designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+
+package org.oracle.anf.flat;
+
+import org.oracle.anf.ANF;
+import org.oracle.anf.FunKind;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * A {@link NodeStream} held in an {@code int[]}, with its side tables in arrays.
+ * <p>
+ * Two encodings are equal when their streams and tables have equal contents.
+ */
+public record FlatANF(int[] code, Object[] constants, Object[] names, FunKind[] kinds) implements NodeStream {
+
+    @Override
+    public boolean equals(Object o) {
+        return o instanceof FlatANF f
+                && Arrays.equals(code, f.code)
+                && Arrays.equals(constants, f.constants)
+                && Arrays.equals(names, f.names)
+                && Arrays.equals(kinds, f.kinds);
+    }
+
+    @Override
+    public int hashCode() {
+        int h = Arrays.hashCode(code);
+        h = 31 * h + Arrays.hashCode(constants);
+        h = 31 * h + Arrays.hashCode(names);
+        return 31 * h + Arrays.hashCode(kinds);
+    }
+
+    @Override
+    public String toString() {
+        return "FlatANF[code=" + Arrays.toString(code) + ", constants=" + Arrays.toString(constants)
+                + ", names=" + Arrays.toString(names) + ", kinds=" + Arrays.toString(kinds) + "]";
+    }
+
+    @Override
+    public int word(int index) {
+        return code[index];
+    }
+
+    @Override
+    public int length() {
+        return code.length;
+    }
+
+    @Override
+    public Object constant(int index) {
+        return constants[index];
+    }
+
+    @Override
+    public Object name(int index) {
+        return names[index];
+    }
+
+    @Override
+    public FunKind kind(int index) {
+        return kinds[index];
+    }
+
+    public static FlatANF encode(ANF.Expression expr) {
+        return new Encoder().encode(expr);
+    }
+
+    private static final class Encoder {
+        private int[] code = new int[256];
+        private int size;
+        private final HashMap<Object, Integer> constantIndex = new HashMap<>();
+        private final HashMap<Object, Integer> nameIndex = new HashMap<>();
+        private final HashMap<FunKind, Integer> kindIndex = new HashMap<>();
+        private final List<Object> constants = new ArrayList<>();
+        private final List<Object> names = new ArrayList<>();
+        private final List<FunKind> kinds = new ArrayList<>();
+
+        /**
+         * A node still to be emitted, and the operand its offset is to be written to.
+         */
+        private record Pending(Object node, int patch) {}
+
+        FlatANF encode(ANF.Expression root) {
+            ArrayDeque<Pending> pending = new ArrayDeque<>();
+            pending.push(new Pending(root, -1));
+            while (!pending.isEmpty()) {
+                var p = pending.pop();
+                int offset = size;
+                if (p.patch() >= 0) {
+                    code[p.patch()] = offset;
+                }
+                // Children are pushed last to first so they are emitted in order after their parent.
+                switch (p.node()) {
+                    case ANF.Const(var value) -> emit(Tag.CONST, index(constantIndex, constants, value));
+                    case ANF.Var(var varId) -> emit(Tag.VAR, index(nameIndex, names, varId));
+                    case ANF.FunApply(var name, var args, var fc) -> {
+                        emit(Tag.FUN_APPLY, index(kindIndex, kinds, fc), args.size(), 0);
+                        reserve(args.size());
+                        for (int i = args.size() - 1; i >= 0; i--) {
+                            pending.push(new Pending(args.get(i), offset + 4 + i));
+                        }
+                        pending.push(new Pending(name, offset + 3));
+                    }
+                    case ANF.Let(var name, var term, var expBody) -> {
+                        emit(Tag.LET, index(nameIndex, names, name.varId()), 0, 0);
+                        pending.push(new Pending(expBody, offset + 3));
+                        pending.push(new Pending(term, offset + 2));
+                    }
+                    case ANF.LetRec(var funs, var combinedBody) -> {
+                        emit(Tag.LET_REC, 0, funs.size());
+                        reserve(funs.size());
+                        pending.push(new Pending(combinedBody, offset + 1));
+                        for (int i = funs.size() - 1; i >= 0; i--) {
+                            pending.push(new Pending(funs.get(i), offset + 3 + i));
+                        }
+                    }
+                    case ANF.Function(var name, var params, var expBody) -> {
+                        emit(Tag.FUNCTION, index(nameIndex, names, name.varId()), params.size(), 0);
+                        for (ANF.Var param : params) {
+                            emit(index(nameIndex, names, param.varId()));
+                        }
+                        pending.push(new Pending(expBody, offset + 3));
+                    }
+                    case ANF.IfThen(var cond, var trueExp, var falseExp) -> {
+                        emit(Tag.IF_THEN, 0, 0, 0);
+                        pending.push(new Pending(falseExp, offset + 3));
+                        pending.push(new Pending(trueExp, offset + 2));
+                        pending.push(new Pending(cond, offset + 1));
+                    }
+                    default -> throw new IllegalStateException("Unexpected node " + p.node());
+                }
+            }
+            return new FlatANF(Arrays.copyOf(code, size), constants.toArray(), names.toArray(),
+                    kinds.toArray(FunKind[]::new));
+        }
+
+        private static <T> int index(HashMap<T, Integer> indexes, List<T> table, T value) {
+            var i = indexes.get(value);
+            if (i == null) {
+                i = table.size();
+                table.add(value);
+                indexes.put(value, i);
+            }
+            return i;
+        }
+
+        private void emit(Tag tag, int... operands) {
+            emit(tag.ordinal());
+            for (int operand : operands) {
+                emit(operand);
+            }
+        }
+
+        private void emit(int value) {
+            if (size == code.length) {
+                code = Arrays.copyOf(code, size * 2);
+            }
+            code[size++] = value;
+        }
+
+        private void reserve(int n) {
+            for (int i = 0; i < n; i++) {
+                emit(0);
+            }
+        }
+    }
+}
@@ -0,0 +1,153 @@
+/*
+ * Copyright (c) 2024, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Oracle designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+
+package org.oracle.anf.flat;
+
+import org.oracle.anf.FunKind;
+
+import java.io.IOException;
+import java.lang.foreign.Arena;
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.ValueLayout;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+
+/**
+ * A {@link NodeStream} read in place from a file mapped by {@link ANFBinary#map}.
+ * <p>
+ * Nodes are read from the mapping as they are visited, and a side table entry is decoded the
+ * first time it is used. Closing unmaps the file; the stream must not be used afterwards.
+ */
+public final class MappedANF implements NodeStream, AutoCloseable {
+
+    static final ValueLayout.OfInt INT = ValueLayout.JAVA_INT_UNALIGNED.withOrder(ByteOrder.LITTLE_ENDIAN);
+    static final ValueLayout.OfLong LONG = ValueLayout.JAVA_LONG_UNALIGNED.withOrder(ByteOrder.LITTLE_ENDIAN);
+    static final ValueLayout.OfFloat FLOAT = ValueLayout.JAVA_FLOAT_UNALIGNED.withOrder(ByteOrder.LITTLE_ENDIAN);
+    static final ValueLayout.OfDouble DOUBLE = ValueLayout.JAVA_DOUBLE_UNALIGNED.withOrder(ByteOrder.LITTLE_ENDIAN);
+    static final ValueLayout.OfChar CHAR = ValueLayout.JAVA_CHAR_UNALIGNED.withOrder(ByteOrder.LITTLE_ENDIAN);
+    static final ValueLayout.OfShort SHORT = ValueLayout.JAVA_SHORT_UNALIGNED.withOrder(ByteOrder.LITTLE_ENDIAN);
+
+    // Decoded entries are immutable, so racing decodes of the same entry are harmless.
+    private static final Object UNDECODED = new Object();
+
+    private final MemorySegment segment;
+    private final Arena arena;
+    private final int length;
+    private final long codeOffset;
+    private final long constantOffsets;
+    private final long nameOffsets;
+    private final long kindOffsets;
+    private final Object[] constants;
+    private final Object[] names;
+    private final FunKind[] kinds;
+
+    MappedANF(MemorySegment segment, Arena arena) throws IOException {
+        if (segment.byteSize() < 4L * ANFBinary.HEADER_INTS || segment.get(INT, 0) != ANFBinary.MAGIC) {
+            throw new IOException("Not an ANF binary file");
+        }
+        int version = segment.get(INT, 4);
+        if (version != ANFBinary.VERSION) {
+            throw new IOException("Unsupported ANF binary version " + version + ", expected " + ANFBinary.VERSION);
+        }
+        this.segment = segment;
+        this.arena = arena;
+        this.length = segment.get(INT, 8);
+        int constantCount = segment.get(INT, 12);
+        int nameCount = segment.get(INT, 16);
+        int kindCount = segment.get(INT, 20);
+        if (length < 0 || constantCount < 0 || nameCount < 0 || kindCount < 0) {
+            throw new IOException("Corrupt ANF binary file: negative table size");
+        }
+        this.codeOffset = 4L * ANFBinary.HEADER_INTS;
+        this.constantOffsets = codeOffset + 4L * length;
+        this.nameOffsets = constantOffsets + 4L * constantCount;
+        this.kindOffsets = nameOffsets + 4L * nameCount;
+        if (kindOffsets + 4L * kindCount > segment.byteSize()) {
+            throw new IOException("Truncated ANF binary file");
+        }
+        // Entries are decoded lazily, but a bad offset or tag fails here rather than on first use.
+        long entries = kindOffsets + 4L * kindCount;
+        for (int i = 0; i < constantCount; i++) {
+            ANFBinary.checkValue(segment, entries, segment.get(INT, constantOffsets + 4L * i), false);
+        }
+        for (int i = 0; i < nameCount; i++) {
+            ANFBinary.checkValue(segment, entries, segment.get(INT, nameOffsets + 4L * i), false);
+        }
+        for (int i = 0; i < kindCount; i++) {
+            ANFBinary.checkValue(segment, entries, segment.get(INT, kindOffsets + 4L * i), true);
+        }
+        this.constants = new Object[constantCount];
+        this.names = new Object[nameCount];
+        this.kinds = new FunKind[kindCount];
+        Arrays.fill(constants, UNDECODED);
+        Arrays.fill(names, UNDECODED);
+    }
+
+    @Override
+    public int word(int index) {
+        return segment.get(INT, codeOffset + 4L * index);
+    }
+
+    @Override
+    public int length() {
+        return length;
+    }
+
+    @Override
+    public Object constant(int index) {
+        var c = constants[index];
+        if (c == UNDECODED) {
+            c = constants[index] = entry(constantOffsets, index);
+        }
+        return c;
+    }
+
+    @Override
+    public Object name(int index) {
+        var n = names[index];
+        if (n == UNDECODED) {
+            n = names[index] = entry(nameOffsets, index);
+        }
+        return n;
+    }
+
+    @Override
+    public FunKind kind(int index) {
+        var k = kinds[index];
+        if (k == null) {
+            k = kinds[index] = (FunKind) entry(kindOffsets, index);
+        }
+        return k;
+    }
+
+    private Object entry(long offsets, int index) {
+        return ANFBinary.readValue(segment, segment.get(INT, offsets + 4L * index));
+    }
+
+    @Override
+    public void close() {
+        arena.close();
+    }
+}
@@ -0,0 +1,248 @@
+/*
+ * Copyright (c) 2024, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Oracle designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+
+package org.oracle.anf.flat;
+
+import org.oracle.anf.ANF;
+import org.oracle.anf.FunKind;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * An {@link ANF.Expression} encoded as a stream of ints.
+ * <p>
+ * Nodes are laid out in pre-order starting at index 0, each starting with its {@link Tag}
+ * ordinal followed by its operands:
+ * <pre>
+ * CONST      constant
+ * VAR        name
+ * FUN_APPLY  kind nargs applied arg...
+ * LET        name term body
+ * LET_REC    body nfuns function...
+ * FUNCTION   name nparams body param...
+ * IF_THEN    cond true false
+ * </pre>
+ * {@code constant}, {@code name}, {@code param} and {@code kind} index the constant, name and
+ * {@link FunKind} side tables, whose entries are shared by all nodes with equal values. The
+ * other operands are the indexes of child nodes in the stream. A {@link Cursor} reads nodes in
+ * place, without decoding them.
+ */
+public sealed interface NodeStream permits FlatANF, MappedANF {
+
+    enum Tag {CONST, VAR, FUN_APPLY, LET, LET_REC, FUNCTION, IF_THEN}
+
+    /**
+     * {@return the int at {@code index} in the stream}
+     */
+    int word(int index);
+
+    /**
+     * {@return the number of ints in the stream}
+     */
+    int length();
+
+    Object constant(int index);
+
+    Object name(int index);
+
+    FunKind kind(int index);
+
+    /**
+     * {@return a cursor at the root expression}
+     */
+    default Cursor cursor() {
+        return new Cursor(this, 0);
+    }
+
+    /**
+     * {@return the record form of the root expression}
+     */
+    default ANF.Expression decode() {
+        return Cursor.decode(this);
+    }
+
+    /**
+     * Read access to a node stream, positioned at one node at a time.
+     */
+    final class Cursor {
+        private static final Tag[] TAGS = Tag.values();
+
+        private final NodeStream stream;
+        private int offset;
+
+        Cursor(NodeStream stream, int offset) {
+            this.stream = stream;
+            this.offset = offset;
+        }
+
+        public int offset() {
+            return offset;
+        }
+
+        public Cursor moveTo(int offset) {
+            this.offset = offset;
+            return this;
+        }
+
+        public Tag tag() {
+            return TAGS[stream.word(offset)];
+        }
+
+        /**
+         * {@return the value of a CONST node}
+         */
+        public Object value() {
+            return stream.constant(stream.word(offset + 1));
+        }
+
+        /**
+         * {@return the variable id of a VAR node, or the name of a LET or FUNCTION node}
+         */
+        public Object name() {
+            return stream.name(stream.word(offset + 1));
+        }
+
+        public FunKind kind() {
+            return stream.kind(stream.word(offset + 1));
+        }
+
+        /**
+         * {@return the number of arguments, functions or parameters of a FUN_APPLY, LET_REC or FUNCTION node}
+         */
+        public int count() {
+            return stream.word(offset + 2);
+        }
+
+        /**
+         * {@return the offset of the applied term of a FUN_APPLY node}
+         */
+        public int applied() {
+            return stream.word(offset + 3);
+        }
+
+        public int argument(int i) {
+            return stream.word(offset + 4 + i);
+        }
+
+        /**
+         * {@return the offset of the bound term of a LET node}
+         */
+        public int term() {
+            return stream.word(offset + 2);
+        }
+
+        /**
+         * {@return the offset of the body of a LET, LET_REC or FUNCTION node}
+         */
+        public int body() {
+            return switch (tag()) {
+                case LET, FUNCTION -> stream.word(offset + 3);
+                case LET_REC -> stream.word(offset + 1);
+                default -> throw new IllegalStateException(tag() + " node has no body");
+            };
+        }
+
+        public int function(int i) {
+            return stream.word(offset + 3 + i);
+        }
+
+        public Object parameter(int i) {
+            return stream.name(stream.word(offset + 4 + i));
+        }
+
+        public int cond() {
+            return stream.word(offset + 1);
+        }
+
+        public int trueBranch() {
+            return stream.word(offset + 2);
+        }
+
+        public int falseBranch() {
+            return stream.word(offset + 3);
+        }
+
+        /**
+         * {@return the number of ints the current node occupies}
+         */
+        public int size() {
+            return switch (tag()) {
+                case CONST, VAR -> 2;
+                case LET, IF_THEN -> 4;
+                case FUN_APPLY, FUNCTION -> 4 + count();
+                case LET_REC -> 3 + count();
+            };
+        }
+
+        /**
+         * Decodes every node in reverse stream order, so that the children of a node, which
+         * follow it, are decoded before it.
+         */
+        static ANF.Expression decode(NodeStream stream) {
+            int length = stream.length();
+            int[] starts = new int[length / 2 + 1];
+            int n = 0;
+            var c = new Cursor(stream, 0);
+            for (int offset = 0; offset < length; offset += c.moveTo(offset).size()) {
+                starts[n++] = offset;
+            }
+            Object[] nodes = new Object[length];
+            for (int i = n - 1; i >= 0; i--) {
+                c.moveTo(starts[i]);
+                nodes[starts[i]] = switch (c.tag()) {
+                    case CONST -> ANF.constant(c.value());
+                    case VAR -> ANF.variable(c.name());
+                    case FUN_APPLY -> {
+                        List<ANF.Term> args = new ArrayList<>(c.count());
+                        for (int a = 0; a < c.count(); a++) {
+                            args.add((ANF.Term) nodes[c.argument(a)]);
+                        }
+                        yield ANF.funApply((ANF.Term) nodes[c.applied()], args, c.kind());
+                    }
+                    case LET -> ANF.let(ANF.variable(c.name()), (ANF.Term) nodes[c.term()],
+                            (ANF.Expression) nodes[c.body()]);
+                    case LET_REC -> {
+                        List<ANF.Function> funs = new ArrayList<>(c.count());
+                        for (int f = 0; f < c.count(); f++) {
+                            funs.add((ANF.Function) nodes[c.function(f)]);
+                        }
+                        yield ANF.letRec(funs, (ANF.Expression) nodes[c.body()]);
+                    }
+                    case FUNCTION -> {
+                        List<ANF.Var> params = new ArrayList<>(c.count());
+                        for (int p = 0; p < c.count(); p++) {
+                            params.add(ANF.variable(c.parameter(p)));
+                        }
+                        yield ANF.function(ANF.variable(c.name()), params, (ANF.Expression) nodes[c.body()]);
+                    }
+                    case IF_THEN -> ANF.ifThen((ANF.Term) nodes[c.cond()], (ANF.Expression) nodes[c.trueBranch()],
+                            (ANF.Expression) nodes[c.falseBranch()]);
+                };
+            }
+            return (ANF.Expression) nodes[0];
+        }
+    }
+}
@@ -0,0 +1,192 @@
+/*
+ * Copyright (c) 2024, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Oracle designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+
+package org.oracle.anf.link;
+
+import org.oracle.anf.eval.JavaMethods;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static java.lang.invoke.MethodType.methodType;
+
+/**
+ * A {@link org.oracle.anf.FunKind.Java} application site.
+ * <p>
+ * The target is resolved to a {@link MethodHandle} once per combination of argument classes
+ * seen at the site and kept in an inline cache, so the overload resolution of
+ * {@link JavaMethods#resolve(String, Object[])} runs only on a cache miss. A site is
+ * monomorphic or polymorphic until more than {@link #POLYMORPHIC_LIMIT} combinations have been
+ * seen, after which it becomes megamorphic and looks its handles up in a table shared by all sites.
+ * <p>
+ * A site can instead be linked up front to a method known from the static argument types;
+ * it then needs no guard when that method is static, final or declared by a final class.
+ * <p>
+ * Sites may be shared between threads: the cache is replaced, never mutated, when an entry is added.
+ */
+public final class JavaCallSite {
+
+    public static final int POLYMORPHIC_LIMIT = 4;
+
+    public enum State {UNINITIALIZED, MONOMORPHIC, POLYMORPHIC, MEGAMORPHIC, LINKED}
+
+    private record Entry(Class<?>[] classes, MethodHandle handle) {
+        boolean matches(Object[] args) {
+            for (int i = 0; i < classes.length; i++) {
+                if (classes[i] != (args[i] == null ? null : args[i].getClass())) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+
+    private record Signature(String target, Class<?>[] classes) {
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof Signature s && target.equals(s.target) && Arrays.equals(classes, s.classes);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * target.hashCode() + Arrays.hashCode(classes);
+        }
+    }
+
+    private static final Entry[] EMPTY = new Entry[0];
+    private static final ConcurrentHashMap<Signature, MethodHandle> MEGAMORPHIC = new ConcurrentHashMap<>();
+
+    private final String target;
+    private final MethodHandle linked;
+    private volatile Entry[] cache = EMPTY;
+    private volatile boolean megamorphic;
+
+    public JavaCallSite(String target) {
+        this.target = target;
+        this.linked = null;
+    }
+
+    private JavaCallSite(String target, MethodHandle linked) {
+        this.target = target;
+        this.linked = linked;
+    }
+
+    /**
+     * {@return a site for {@code target} linked to {@code m}, resolved from the site's static argument types}
+     * Falls back to an unlinked site when {@code m} could be overridden by the receiver.
+     */
+    public static JavaCallSite link(String target, Method m) {
+        int mods = m.getModifiers();
+        if (Modifier.isStatic(mods) || Modifier.isFinal(mods) || Modifier.isFinal(m.getDeclaringClass().getModifiers())) {
+            return new JavaCallSite(target, spreader(m));
+        }
+        return new JavaCallSite(target);
+    }
+
+    public String target() {
+        return target;
+    }
+
+    public State state() {
+        if (linked != null) {
+            return State.LINKED;
+        } else if (megamorphic) {
+            return State.MEGAMORPHIC;
+        }
+        return switch (cache.length) {
+            case 0 -> State.UNINITIALIZED;
+            case 1 -> State.MONOMORPHIC;
+            default -> State.POLYMORPHIC;
+        };
+    }
+
+    public Object invoke(Object[] args) {
+        MethodHandle h = linked;
+        if (h == null) {
+            h = lookup(args);
+        }
+        try {
+            return (Object) h.invokeExact(args);
+        } catch (RuntimeException | Error e) {
+            throw e;
+        } catch (Throwable t) {
+            throw new RuntimeException(t);
+        }
+    }
+
+    private MethodHandle lookup(Object[] args) {
+        if (!megamorphic) {
+            var entries = cache;
+            for (Entry e : entries) {
+                if (e.matches(args)) {
+                    return e.handle();
+                }
+            }
+            var classes = classes(args);
+            var h = spreader(JavaMethods.resolve(target, args));
+            if (entries.length == POLYMORPHIC_LIMIT) {
+                megamorphic = true;
+                cache = EMPTY;
+                MEGAMORPHIC.putIfAbsent(new Signature(target, classes), h);
+            } else {
+                var grown = Arrays.copyOf(entries, entries.length + 1);
+                grown[entries.length] = new Entry(classes, h);
+                cache = grown;
+            }
+            return h;
+        }
+        return MEGAMORPHIC.computeIfAbsent(new Signature(target, classes(args)),
+                _ -> spreader(JavaMethods.resolve(target, args)));
+    }
+
+    private static Class<?>[] classes(Object[] args) {
+        var classes = new Class<?>[args.length];
+        for (int i = 0; i < args.length; i++) {
+            classes[i] = args[i] == null ? null : args[i].getClass();
+        }
+        return classes;
+    }
+
+    /**
+     * {@return a handle of type {@code (Object[])Object} invoking {@code m}, the receiver of an instance method first}
+     */
+    private static MethodHandle spreader(Method m) {
+        try {
+            var h = MethodHandles.publicLookup().unreflect(m);
+            if (m.getReturnType() == void.class) {
+                h = MethodHandles.filterReturnValue(h, MethodHandles.constant(Object.class, null));
+            }
+            return h.asType(h.type().changeReturnType(Object.class))
+                    .asSpreader(Object[].class, h.type().parameterCount())
+                    .asType(methodType(Object.class, Object[].class));
+        } catch (IllegalAccessException e) {
+            throw new UnsupportedOperationException("Java target " + m + " is not accessible", e);
+        }
+    }
+}
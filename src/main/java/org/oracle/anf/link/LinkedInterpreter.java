@@ -0,0 +1,128 @@
+/*
+ * Copyright (c) 2024, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Oracle designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+
+package org.oracle.anf.link;
+
+/**
+ * Evaluates a {@link LinkedProgram}.
+ * <p>
+ * Frames are {@code Object[]} arrays sized per function, so execution needs no maps or string
+ * compares. Like {@link org.oracle.anf.eval.Interpreter}, tail calls replace the current
+ * frame and node instead of recursing, and jumps within a loop reuse the current frame.
+ */
+public class LinkedInterpreter {
+
+    private final LinkedProgram.Function[] functions;
+
+    public LinkedInterpreter(LinkedProgram program) {
+        this.functions = program.functions().toArray(LinkedProgram.Function[]::new);
+    }
+
+    public Object invoke(Object... args) {
+        var entry = functions[0];
+        if (args.length != entry.arity()) {
+            throw new IllegalArgumentException("Entry function expects " + entry.arity() + " arguments, got " + args.length);
+        }
+        Object[] frame = new Object[entry.frameSize()];
+        System.arraycopy(args, 0, frame, 1, args.length);
+        return execute(entry.body(), frame);
+    }
+
+    private Object execute(LinkedProgram.Node node, Object[] frame) {
+        while (true) {
+            switch (node) {
+                case LinkedProgram.Let(var slot, var value, var body) -> {
+                    frame[slot] = eval(value, frame);
+                    node = body;
+                }
+                case LinkedProgram.If(var cond, var t, var f) -> node = isTrue(eval(cond, frame)) ? t : f;
+                case LinkedProgram.TailCall(var function, var hops, var args) -> {
+                    var callee = functions[function];
+                    frame = enter(callee, hops, args, frame);
+                    node = callee.body();
+                }
+                case LinkedProgram.Jump(var function, var hops, var args, var temps) -> {
+                    for (int i = 0; i < args.length; i++) {
+                        frame[temps + i] = eval(args[i], frame);
+                    }
+                    frame[0] = up(frame, hops);
+                    System.arraycopy(frame, temps, frame, 1, args.length);
+                    node = functions[function].body();
+                }
+                default -> {
+                    return eval(node, frame);
+                }
+            }
+        }
+    }
+
+    private Object eval(LinkedProgram.Node node, Object[] frame) {
+        return switch (node) {
+            case LinkedProgram.Const(var value) -> value;
+            case LinkedProgram.Local(var slot) -> frame[slot];
+            case LinkedProgram.Outer(var hops, var slot) -> up(frame, hops)[slot];
+            case LinkedProgram.Primitive(var op, var args) -> args.length == 1
+                    ? op.apply(eval(args[0], frame))
+                    : op.apply(eval(args[0], frame), eval(args[1], frame));
+            case LinkedProgram.Call(var function, var hops, var args) -> {
+                var callee = functions[function];
+                yield execute(callee.body(), enter(callee, hops, args, frame));
+            }
+            case LinkedProgram.JavaCall(var site, var args) -> site.invoke(evalAll(args, frame));
+            case LinkedProgram.Let _, LinkedProgram.If _, LinkedProgram.TailCall _, LinkedProgram.Jump _ -> execute(node, frame);
+        };
+    }
+
+    private Object[] enter(LinkedProgram.Function callee, int hops, LinkedProgram.Node[] args, Object[] frame) {
+        Object[] calleeFrame = new Object[callee.frameSize()];
+        calleeFrame[0] = up(frame, hops);
+        for (int i = 0; i < args.length; i++) {
+            calleeFrame[i + 1] = eval(args[i], frame);
+        }
+        return calleeFrame;
+    }
+
+    private Object[] evalAll(LinkedProgram.Node[] args, Object[] frame) {
+        Object[] values = new Object[args.length];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = eval(args[i], frame);
+        }
+        return values;
+    }
+
+    private static Object[] up(Object[] frame, int hops) {
+        for (int i = 0; i < hops; i++) {
+            frame = (Object[]) frame[0];
+        }
+        return frame;
+    }
+
+    private static boolean isTrue(Object cond) {
+        if (cond instanceof Boolean b) {
+            return b;
+        }
+        throw new IllegalStateException("Condition is not a boolean: " + cond);
+    }
+}
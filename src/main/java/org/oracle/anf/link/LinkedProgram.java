@@ -0,0 +1,87 @@
+/*
+ * Copyright (c) 2024, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Oracle designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+
+package org.oracle.anf.link;
+
+import org.oracle.anf.eval.PrimitiveOp;
+
+import java.util.List;
+
+/**
+ * An ANF program with all names resolved, as produced by {@link Linker}.
+ * <p>
+ * Every function has a frame of {@link Function#frameSize()} slots. Slot 0 holds the frame of
+ * the function the callee was defined in (its static link), followed by the parameters and
+ * the Let-bound variables. A variable is addressed by the number of static links to follow
+ * and a slot, a primitive by its {@link PrimitiveOp}, a function by its index in
+ * {@link #functions()} and a Java method by its {@link JavaCallSite}.
+ */
+public record LinkedProgram(List<Function> functions) {
+
+    /**
+     * {@return the entry function}
+     */
+    public Function entry() {
+        return functions.getFirst();
+    }
+
+    public record Function(Object name, int arity, int frameSize, Node body) {}
+
+    public sealed interface Node permits Const, Local, Outer, Primitive, Call, JavaCall, Let, If, TailCall, Jump {}
+
+    public record Const(Object value) implements Node {}
+
+    /**
+     * A variable of the current frame.
+     */
+    public record Local(int slot) implements Node {}
+
+    /**
+     * A variable of the frame {@code hops} static links up.
+     */
+    public record Outer(int hops, int slot) implements Node {}
+
+    public record Primitive(PrimitiveOp op, Node[] args) implements Node {}
+
+    /**
+     * A call in non-tail position, the callee's static link being {@code hops} static links up.
+     */
+    public record Call(int function, int hops, Node[] args) implements Node {}
+
+    public record JavaCall(JavaCallSite site, Node[] args) implements Node {}
+
+    public record Let(int slot, Node value, Node body) implements Node {}
+
+    public record If(Node cond, Node trueNode, Node falseNode) implements Node {}
+
+    public record TailCall(int function, int hops, Node[] args) implements Node {}
+
+    /**
+     * A tail call within a loop, reusing the current frame: the arguments are evaluated into the
+     * slots from {@code temps} on, then moved to the parameter slots. The functions of a loop
+     * have frames of the same size.
+     */
+    public record Jump(int function, int hops, Node[] args, int temps) implements Node {}
+}
@@ -0,0 +1,250 @@
+/*
+ * Copyright (c) 2024, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Oracle designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+
+package org.oracle.anf.link;
+
+import org.oracle.anf.ANF;
+import org.oracle.anf.FunKind;
+import org.oracle.anf.analysis.Loops;
+import org.oracle.anf.analysis.TypeInference;
+import org.oracle.anf.eval.PrimitiveOp;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Resolves the names of an ANF program: variables to frame slots, primitives to
+ * {@link PrimitiveOp}s and {@code FC} call targets to function indexes.
+ * <p>
+ * Tail calls within a loop found by {@link Loops} become {@link LinkedProgram.Jump}s, which run
+ * in the current frame, unless the callee is defined in the calling function and so needs the
+ * current frame as its static link.
+ * The transform nests a loop body in the function of its header, so the header's call into
+ * the body stays a {@link LinkedProgram.TailCall} and allocates a frame on every iteration. Run
+ * {@code LambdaLifting} first to make every loop function a sibling, and every edge of the loop a jump.
+ * <p>
+ * Variable names are assumed unique across the program, as produced by the transform
+ * or the {@code Labeler}.
+ */
+public final class Linker {
+
+    private record Binding(int depth, int slot) {}
+
+    private record FunctionBinding(int index, int depth) {}
+
+    private record PendingFunction(ANF.Function f, int depth) {}
+
+    private final Map<Object, Binding> variables = new HashMap<>();
+    private final Map<Object, FunctionBinding> functionBindings = new HashMap<>();
+    private final List<LinkedProgram.Function> functions = new ArrayList<>();
+    // Functions registered but not linked yet, so nesting does not recurse on the Java stack.
+    private final ArrayDeque<PendingFunction> pending = new ArrayDeque<>();
+
+    private final TypeInference types;
+    private final Loops loops;
+
+    private Linker(TypeInference types, Loops loops) {
+        this.types = types;
+        this.loops = loops;
+    }
+
+    /**
+     * Links the program whose entry point is {@code entry}.
+     */
+    public static LinkedProgram link(ANF.Function entry) {
+        return link(entry, (TypeInference) null);
+    }
+
+    /**
+     * Links the program whose entry point is {@code entry}, linking Java call sites whose
+     * argument types can be inferred from {@code entryParamTypes} to their target method.
+     */
+    public static LinkedProgram link(ANF.Function entry, List<Class<?>> entryParamTypes) {
+        return link(entry, TypeInference.infer(entry, entryParamTypes));
+    }
+
+    private static LinkedProgram link(ANF.Function entry, TypeInference types) {
+        var linker = new Linker(types, Loops.find(entry));
+        linker.register(entry, 0);
+        linker.pending.add(new PendingFunction(entry, 0));
+        while (!linker.pending.isEmpty()) {
+            var p = linker.pending.poll();
+            linker.linkFunction(p.f(), p.depth());
+        }
+        linker.shareLoopFrames();
+        return new LinkedProgram(List.copyOf(linker.functions));
+    }
+
+    private void register(ANF.Function f, int depth) {
+        functionBindings.put(f.name().varId(), new FunctionBinding(functions.size(), depth));
+        functions.add(null);
+    }
+
+    private final class FunctionLinker {
+        final Object function;
+        final int depth;
+        int nextSlot = 1;
+
+        FunctionLinker(Object function, int depth) {
+            this.function = function;
+            this.depth = depth;
+        }
+
+        int bind(ANF.Var v) {
+            int slot = nextSlot++;
+            variables.put(v.varId(), new Binding(depth, slot));
+            return slot;
+        }
+
+        /**
+         * {@return the first of {@code n} unnamed slots}
+         */
+        int reserve(int n) {
+            int slot = nextSlot;
+            nextSlot += n;
+            return slot;
+        }
+    }
+
+    private void linkFunction(ANF.Function f, int depth) {
+        var fl = new FunctionLinker(f.name().varId(), depth);
+        f.parameters().forEach(fl::bind);
+        var body = linkExpression(f.expBody(), fl);
+        var index = functionBindings.get(f.name().varId()).index();
+        functions.set(index, new LinkedProgram.Function(f.name().varId(), f.parameters().size(), fl.nextSlot, body));
+    }
+
+    private LinkedProgram.Node linkExpression(ANF.Expression expr, FunctionLinker fl) {
+        List<ANF.Let> lets = new ArrayList<>();
+        List<LinkedProgram.Node> values = new ArrayList<>();
+        List<Integer> slots = new ArrayList<>();
+        LinkedProgram.Node node = null;
+        while (node == null) {
+            switch (expr) {
+                case ANF.Let l -> {
+                    // The value is resolved before the name it is bound to comes into scope.
+                    values.add(linkTerm(l.term(), fl));
+                    slots.add(fl.bind(l.name()));
+                    lets.add(l);
+                    expr = l.expBody();
+                }
+                case ANF.LetRec(var funs, var body) -> {
+                    // The functions are linked after this one, once the variables they capture are bound.
+                    for (ANF.Function f : funs) {
+                        register(f, fl.depth + 1);
+                        pending.add(new PendingFunction(f, fl.depth + 1));
+                    }
+                    expr = body;
+                }
+                case ANF.IfThen(var cond, var t, var f) -> node = new LinkedProgram.If(linkTerm(cond, fl),
+                        linkExpression(t, fl), linkExpression(f, fl));
+                case ANF.FunApply fa when fa.fc() instanceof FunKind.FC -> {
+                    var target = function(fa);
+                    int hops = hops(fl, target);
+                    var args = linkTerms(fa.arguments(), fl);
+                    node = hops > 0 && loops.isJump(fl.function, ((ANF.Var) fa.name()).varId())
+                            ? new LinkedProgram.Jump(target.index(), hops, args, fl.reserve(args.length))
+                            : new LinkedProgram.TailCall(target.index(), hops, args);
+                }
+                case ANF.Term t -> node = linkTerm(t, fl);
+            }
+        }
+        for (int i = lets.size() - 1; i >= 0; i--) {
+            node = new LinkedProgram.Let(slots.get(i), values.get(i), node);
+        }
+        return node;
+    }
+
+    private LinkedProgram.Node linkTerm(ANF.Term term, FunctionLinker fl) {
+        return switch (term) {
+            case ANF.Const(var value) -> new LinkedProgram.Const(value);
+            case ANF.Var(var id) -> {
+                var b = variables.get(id);
+                if (b == null) {
+                    throw new IllegalStateException("Unbound variable " + id);
+                }
+                yield b.depth() == fl.depth
+                        ? new LinkedProgram.Local(b.slot())
+                        : new LinkedProgram.Outer(fl.depth - b.depth(), b.slot());
+            }
+            case ANF.FunApply fa -> switch (fa.fc()) {
+                case FunKind.FC _ -> {
+                    var target = function(fa);
+                    yield new LinkedProgram.Call(target.index(), hops(fl, target), linkTerms(fa.arguments(), fl));
+                }
+                case FunKind.Primitive _ -> new LinkedProgram.Primitive(PrimitiveOp.of(fa), linkTerms(fa.arguments(), fl));
+                case FunKind.Java j -> new LinkedProgram.JavaCall(callSite(fa, j), linkTerms(fa.arguments(), fl));
+            };
+        };
+    }
+
+    /**
+     * Gives the functions of every loop the frame size of the largest, so that jumps can reuse frames.
+     */
+    private void shareLoopFrames() {
+        for (Loops.Loop loop : loops.loops()) {
+            int size = 0;
+            for (ANF.Function f : loop.members()) {
+                size = Math.max(size, functions.get(functionBindings.get(f.name().varId()).index()).frameSize());
+            }
+            for (ANF.Function f : loop.members()) {
+                int index = functionBindings.get(f.name().varId()).index();
+                var lf = functions.get(index);
+                functions.set(index, new LinkedProgram.Function(lf.name(), lf.arity(), size, lf.body()));
+            }
+        }
+    }
+
+    private LinkedProgram.Node[] linkTerms(List<ANF.Term> terms, FunctionLinker fl) {
+        var nodes = new LinkedProgram.Node[terms.size()];
+        for (int i = 0; i < nodes.length; i++) {
+            nodes[i] = linkTerm(terms.get(i), fl);
+        }
+        return nodes;
+    }
+
+    private JavaCallSite callSite(ANF.FunApply fa, FunKind.Java j) {
+        var m = types == null ? null : types.javaTarget(fa);
+        return m == null ? new JavaCallSite(j.name()) : JavaCallSite.link(j.name(), m);
+    }
+
+    private FunctionBinding function(ANF.FunApply fa) {
+        var f = fa.name() instanceof ANF.Var(var id) ? functionBindings.get(id) : null;
+        if (f == null) {
+            throw new IllegalStateException("Call to unknown function " + fa.name());
+        }
+        return f;
+    }
+
+    /**
+     * A function at depth {@code d} has the frame at depth {@code d - 1} as its static link.
+     */
+    private static int hops(FunctionLinker fl, FunctionBinding target) {
+        return fl.depth - (target.depth() - 1);
+    }
+}
@@ -0,0 +1,195 @@
+/*
+ * Copyright (c) 2024, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Oracle designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+
+package org.oracle.anf.opt;
+
+import org.oracle.anf.ANF;
+import org.oracle.anf.FunKind;
+import org.oracle.anf.eval.PrimitiveOp;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+
+import static org.oracle.anf.ANF.*;
+
+/**
+ * Constant folding and copy propagation.
+ * <p>
+ * A {@link FunKind#PRIMITIVE} application whose operands are all numeric, boolean or char
+ * constants is evaluated by {@link PrimitiveOp}, so folding follows Java semantics for overflow,
+ * floating point and division. An application that would throw, such as an integer division by
+ * zero, is kept so that it still throws when run. A {@link ANF.Let} binding a constant, a
+ * variable or a folded application is removed and its variable replaced by the bound value in
+ * the rest of the scope, and an {@link ANF.IfThen} on a constant condition is replaced by the
+ * branch taken.
+ * <p>
+ * The program is walked once, top down, substituting as it goes: every term is rewritten with
+ * the values of the lets above it before it is folded, so the result is a fixpoint. Variable
+ * names are assumed unique, as produced by {@code Transform}. Nested expressions are kept on an
+ * explicit stack, and unchanged subtrees are returned as is.
+ */
+public final class ConstantFolding {
+
+    // Replacement of removed variables, by variable id.
+    private final HashMap<Object, ANF.Term> values = new HashMap<>();
+
+    private ConstantFolding() {
+    }
+
+    public static ANF.Expression fold(ANF.Expression expr) {
+        return new ConstantFolding().run(expr);
+    }
+
+    public static ANF.Function fold(ANF.Function f) {
+        var body = fold(f.expBody());
+        return body == f.expBody() ? f : function(f.name(), f.parameters(), body);
+    }
+
+    // A node waiting for its parts.
+    private record Rebuild(Object node, ANF.Term term, int parts) {}
+
+    private ANF.Expression run(ANF.Expression expr) {
+        ArrayDeque<Object> pending = new ArrayDeque<>();
+        ArrayDeque<Object> done = new ArrayDeque<>();
+        pending.push(expr);
+        while (!pending.isEmpty()) {
+            switch (pending.pop()) {
+                case ANF.Let l -> {
+                    var term = simplify(l.term());
+                    if (term instanceof ANF.FunApply) {
+                        pending.push(new Rebuild(l, term, 1));
+                    } else {
+                        values.put(l.name().varId(), term);
+                    }
+                    pending.push(l.expBody());
+                }
+                case ANF.IfThen i -> {
+                    var cond = simplify(i.cond());
+                    if (cond instanceof ANF.Const(Boolean b)) {
+                        pending.push(b ? i.trueExp() : i.falseExp());
+                    } else {
+                        pending.push(new Rebuild(i, cond, 2));
+                        pending.push(i.falseExp());
+                        pending.push(i.trueExp());
+                    }
+                }
+                case ANF.LetRec r -> {
+                    pending.push(new Rebuild(r, null, r.funs().size() + 1));
+                    pending.push(r.combinedBody());
+                    for (int j = r.funs().size() - 1; j >= 0; j--) {
+                        pending.push(r.funs().get(j).expBody());
+                    }
+                }
+                case Rebuild(ANF.Let l, var term, var _) -> {
+                    var body = (ANF.Expression) done.pop();
+                    done.push(term == l.term() && body == l.expBody() ? l : let(l.name(), term, body));
+                }
+                case Rebuild(ANF.IfThen i, var cond, var _) -> {
+                    var falseExp = (ANF.Expression) done.pop();
+                    var trueExp = (ANF.Expression) done.pop();
+                    done.push(cond == i.cond() && trueExp == i.trueExp() && falseExp == i.falseExp()
+                            ? i : ifThen(cond, trueExp, falseExp));
+                }
+                case Rebuild(ANF.LetRec r, var _, var parts) -> {
+                    var body = (ANF.Expression) done.pop();
+                    boolean changed = body != r.combinedBody();
+                    ANF.Expression[] bodies = new ANF.Expression[parts - 1];
+                    for (int j = bodies.length - 1; j >= 0; j--) {
+                        bodies[j] = (ANF.Expression) done.pop();
+                        changed |= bodies[j] != r.funs().get(j).expBody();
+                    }
+                    if (changed) {
+                        List<ANF.Function> funs = new ArrayList<>(bodies.length);
+                        for (int j = 0; j < bodies.length; j++) {
+                            var f = r.funs().get(j);
+                            funs.add(bodies[j] == f.expBody() ? f : function(f.name(), f.parameters(), bodies[j]));
+                        }
+                        done.push(letRec(funs, body));
+                    } else {
+                        done.push(r);
+                    }
+                }
+                case ANF.Term t -> done.push((ANF.Expression) simplify(t));
+                default -> throw new IllegalStateException();
+            }
+        }
+        return (ANF.Expression) done.pop();
+    }
+
+    /**
+     * {@return {@code term} with removed variables replaced, folded to a constant if possible}
+     */
+    private ANF.Term simplify(ANF.Term term) {
+        return switch (term) {
+            case ANF.Const c -> c;
+            case ANF.Var v -> values.getOrDefault(v.varId(), v);
+            case ANF.FunApply fa -> {
+                var args = fa.arguments();
+                List<ANF.Term> newArgs = null;
+                for (int i = 0; i < args.size(); i++) {
+                    var arg = simplify(args.get(i));
+                    if (arg != args.get(i) && newArgs == null) {
+                        newArgs = new ArrayList<>(args.subList(0, i));
+                    }
+                    if (newArgs != null) {
+                        newArgs.add(arg);
+                    }
+                }
+                var name = fa.fc() instanceof FunKind.Primitive ? fa.name() : simplify(fa.name());
+                if (newArgs != null || name != fa.name()) {
+                    fa = funApply(name, newArgs != null ? newArgs : args, fa.fc());
+                }
+                var folded = fa.fc() instanceof FunKind.Primitive ? evaluate(fa) : null;
+                yield folded != null ? folded : fa;
+            }
+        };
+    }
+
+    /**
+     * {@return the constant a primitive application evaluates to, or null if it cannot be folded}
+     */
+    private static ANF.Const evaluate(ANF.FunApply fa) {
+        var args = fa.arguments();
+        Object[] operands = new Object[args.size()];
+        for (int i = 0; i < operands.length; i++) {
+            if (!(args.get(i) instanceof ANF.Const(var value))
+                    || !(value instanceof Number || value instanceof Boolean || value instanceof Character)) {
+                return null;
+            }
+            operands[i] = value;
+        }
+        if (!(fa.name() instanceof ANF.Var(var id)) || !PrimitiveOp.isPrimitive(id.toString())) {
+            return null;
+        }
+        try {
+            return constant(PrimitiveOp.of(fa).apply(operands));
+        } catch (ArithmeticException | IllegalArgumentException | ClassCastException e) {
+            // Left to fail at run time.
+            return null;
+        }
+    }
+}
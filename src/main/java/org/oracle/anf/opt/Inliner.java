@@ -0,0 +1,503 @@
+/*
+ * Copyright (c) 2024, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Oracle designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+
+package org.oracle.anf.opt;
+
+import org.oracle.anf.ANF;
+import org.oracle.anf.FunKind;
+import org.oracle.anf.util.Fold;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+
+import static org.oracle.anf.ANF.*;
+
+/**
+ * Inlines non-recursive {@link ANF.LetRec} functions into their call sites.
+ * <p>
+ * A function is inlined if it is called exactly once, or if its body has at most
+ * {@link #budget()} nodes, and its name is used for nothing but calls. A call in tail position is
+ * replaced by the body. A call bound by a {@link ANF.Let} is replaced by the body followed by the
+ * rest of the Let when the body is straight-line code; otherwise, for a function called only
+ * there, the call is contified: the rest of the Let becomes a local join function and every
+ * return of the body a tail call to it, so the function returns to the one continuation it
+ * ever had by a jump. Inlined functions are removed, and inlined bodies are inlined into in turn.
+ * Every copy of a body after the first gets fresh variable names, counting the copies actually
+ * made, so a function called once from a body that is itself copied is renamed as well.
+ * <p>
+ * Only functions alone in their LetRec are considered, so run {@link LetRecSplitting} first to
+ * separate non-recursive functions from recursive groups. Variable names are assumed unique,
+ * and nested expressions are kept on explicit stacks.
+ */
+public final class Inliner {
+
+    public static final int DEFAULT_BUDGET = 20;
+
+    private final int budget;
+
+    public Inliner() {
+        this(DEFAULT_BUDGET);
+    }
+
+    public Inliner(int budget) {
+        if (budget < 0) {
+            throw new IllegalArgumentException("budget must not be negative: " + budget);
+        }
+        this.budget = budget;
+    }
+
+    /**
+     * {@return the largest body, in nodes, inlined into more than one call site}
+     */
+    public int budget() {
+        return budget;
+    }
+
+    public ANF.Expression inline(ANF.Expression expr) {
+        return new Run().run(expr);
+    }
+
+    public ANF.Function inline(ANF.Function f) {
+        var body = inline(f.expBody());
+        return body == f.expBody() ? f : function(f.name(), f.parameters(), body);
+    }
+
+    /**
+     * What is known of a LetRec function.
+     */
+    private static final class Info {
+        final ANF.Function function;
+        final boolean alone;
+        int uses;
+        int calls;
+        int letCalls;
+        int tailCalls;
+        int start;
+        int size;
+        // Copies made so far by the rewrite.
+        int copies;
+        boolean recursive;
+
+        Info(ANF.Function function, boolean alone) {
+            this.function = function;
+            this.alone = alone;
+        }
+    }
+
+    private record Rebuild(ANF.Expression node, List<ANF.Function> funs) {}
+
+    private final class Run implements Fold.Visitor<Run> {
+        final HashMap<Object, Info> functions = new HashMap<>();
+        final HashMap<Object, Integer> active = new HashMap<>();
+        // Every variable id of the program and those made since, to keep fresh names fresh.
+        final HashSet<Object> names = new HashSet<>();
+        int nodes;
+        int fresh;
+
+        ANF.Expression run(ANF.Expression expr) {
+            tailCall(expr);
+            Fold.fold(expr, this, this);
+            return rewrite(expr);
+        }
+
+        // Analysis.
+
+        @Override
+        public Fold.Step preFunction(ANF.Function f, Run acc) {
+            var info = functions.get(f.name().varId());
+            info.start = nodes;
+            active.merge(f.name().varId(), 1, Integer::sum);
+            for (ANF.Var p : f.parameters()) {
+                names.add(p.varId());
+            }
+            return Fold.Step.CONTINUE;
+        }
+
+        @Override
+        public Fold.Step postFunction(ANF.Function f, Run acc) {
+            var info = functions.get(f.name().varId());
+            info.size = nodes - info.start;
+            active.remove(f.name().varId());
+            return Fold.Step.CONTINUE;
+        }
+
+        @Override
+        public Fold.Step preExpression(ANF.Expression expr, Run acc) {
+            nodes++;
+            switch (expr) {
+                case ANF.Let l -> {
+                    names.add(l.name().varId());
+                    if (l.term() instanceof ANF.FunApply fa && callee(fa) instanceof Info info) {
+                        info.letCalls++;
+                    }
+                    tailCall(l.expBody());
+                }
+                case ANF.LetRec r -> {
+                    for (ANF.Function f : r.funs()) {
+                        names.add(f.name().varId());
+                        functions.put(f.name().varId(), new Info(f, r.funs().size() == 1));
+                        tailCall(f.expBody());
+                    }
+                    tailCall(r.combinedBody());
+                }
+                case ANF.IfThen i -> {
+                    tailCall(i.trueExp());
+                    tailCall(i.falseExp());
+                }
+                case ANF.FunApply fa -> {
+                    if (callee(fa) instanceof Info info) {
+                        info.calls++;
+                    }
+                }
+                case ANF.Var v -> {
+                    names.add(v.varId());
+                    var info = functions.get(v.varId());
+                    if (info != null) {
+                        info.uses++;
+                        info.recursive |= active.containsKey(v.varId());
+                    }
+                }
+                case ANF.Const _ -> {
+                }
+            }
+            return Fold.Step.CONTINUE;
+        }
+
+        private void tailCall(ANF.Expression expr) {
+            if (expr instanceof ANF.FunApply fa && callee(fa) instanceof Info info) {
+                info.tailCalls++;
+            }
+        }
+
+        /**
+         * {@return the LetRec function {@code fa} calls, or null}
+         */
+        private Info callee(ANF.FunApply fa) {
+            if (fa.fc() instanceof FunKind.FC && fa.name() instanceof ANF.Var(var id)) {
+                return functions.get(id);
+            }
+            return null;
+        }
+
+        private boolean isInlined(Info info) {
+            if (!info.alone || info.recursive || info.uses == 0
+                    || info.uses != info.calls || info.calls != info.letCalls + info.tailCalls) {
+                return false;
+            }
+            return info.calls == 1
+                    || (info.size <= budget && (info.letCalls == 0 || isStraightLine(info.function.expBody())));
+        }
+
+        // Rewrite.
+
+        private ANF.Expression rewrite(ANF.Expression expr) {
+            ArrayDeque<Object> pending = new ArrayDeque<>();
+            ArrayDeque<ANF.Expression> done = new ArrayDeque<>();
+            pending.push(expr);
+            while (!pending.isEmpty()) {
+                switch (pending.pop()) {
+                    case ANF.Let l when l.term() instanceof ANF.FunApply fa && inlined(fa) instanceof Info info -> {
+                        var body = copy(info, fa.arguments());
+                        if (isStraightLine(body)) {
+                            pending.push(splice(body, l.name(), l.expBody()));
+                        } else {
+                            var join = fresh(l.name().varId());
+                            pending.push(letRec(List.of(function(join, List.of(l.name()), l.expBody())),
+                                    jumpFromTails(body, join)));
+                        }
+                    }
+                    case ANF.Let l -> {
+                        pending.push(new Rebuild(l, null));
+                        pending.push(l.expBody());
+                    }
+                    case ANF.IfThen i -> {
+                        pending.push(new Rebuild(i, null));
+                        pending.push(i.falseExp());
+                        pending.push(i.trueExp());
+                    }
+                    case ANF.LetRec r -> {
+                        List<ANF.Function> kept = new ArrayList<>(r.funs().size());
+                        for (ANF.Function f : r.funs()) {
+                            var info = functions.get(f.name().varId());
+                            if (info == null || !isInlined(info)) {
+                                kept.add(f);
+                            }
+                        }
+                        if (kept.isEmpty()) {
+                            pending.push(r.combinedBody());
+                        } else {
+                            pending.push(new Rebuild(r, kept));
+                            pending.push(r.combinedBody());
+                            for (int j = kept.size() - 1; j >= 0; j--) {
+                                pending.push(kept.get(j).expBody());
+                            }
+                        }
+                    }
+                    case ANF.FunApply fa when inlined(fa) instanceof Info info -> pending.push(copy(info, fa.arguments()));
+                    case Rebuild(ANF.Let l, var _) -> {
+                        var body = done.pop();
+                        done.push(body == l.expBody() ? l : let(l.name(), l.term(), body));
+                    }
+                    case Rebuild(ANF.IfThen i, var _) -> {
+                        var falseExp = done.pop();
+                        var trueExp = done.pop();
+                        done.push(trueExp == i.trueExp() && falseExp == i.falseExp()
+                                ? i : ifThen(i.cond(), trueExp, falseExp));
+                    }
+                    case Rebuild(ANF.LetRec r, var kept) -> {
+                        var body = done.pop();
+                        boolean changed = kept.size() != r.funs().size();
+                        ANF.Function[] funs = new ANF.Function[kept.size()];
+                        for (int j = funs.length - 1; j >= 0; j--) {
+                            var f = kept.get(j);
+                            var fBody = done.pop();
+                            changed |= fBody != f.expBody();
+                            funs[j] = fBody == f.expBody() ? f : function(f.name(), f.parameters(), fBody);
+                        }
+                        done.push(!changed && body == r.combinedBody() ? r : letRec(List.of(funs), body));
+                    }
+                    case ANF.Expression e -> done.push(e);
+                    default -> throw new IllegalStateException();
+                }
+            }
+            return done.pop();
+        }
+
+        private Info inlined(ANF.FunApply fa) {
+            var info = callee(fa);
+            return info != null && isInlined(info) ? info : null;
+        }
+
+        /**
+         * {@return the body of {@code info}'s function with the arguments for its parameters,
+         * under fresh names unless this is its first copy}
+         */
+        private ANF.Expression copy(Info info, List<ANF.Term> args) {
+            var f = info.function;
+            HashMap<Object, ANF.Term> subst = new HashMap<>();
+            List<ANF.Var> bound = new ArrayList<>();
+            List<ANF.Term> values = new ArrayList<>();
+            boolean rename = info.copies++ > 0;
+            for (int i = 0; i < args.size(); i++) {
+                var p = f.parameters().get(i);
+                var arg = args.get(i);
+                if (arg instanceof ANF.FunApply) {
+                    // Evaluated once, before the body.
+                    var v = rename ? fresh(p.varId()) : p;
+                    subst.put(p.varId(), v);
+                    bound.add(v);
+                    values.add(arg);
+                } else {
+                    subst.put(p.varId(), arg);
+                }
+            }
+            var body = new Copy(subst, rename).run(f.expBody());
+            for (int i = bound.size() - 1; i >= 0; i--) {
+                body = let(bound.get(i), values.get(i), body);
+            }
+            return body;
+        }
+
+        private ANF.Var fresh(Object varId) {
+            while (true) {
+                var id = varId + "$" + ++fresh;
+                if (names.add(id)) {
+                    return variable(id);
+                }
+            }
+        }
+
+        /**
+         * Copies an expression, replacing variables by {@code subst} and, if {@code rename}, binding fresh names.
+         */
+        private final class Copy {
+            final HashMap<Object, ANF.Term> subst;
+            final boolean rename;
+
+            Copy(HashMap<Object, ANF.Term> subst, boolean rename) {
+                this.subst = subst;
+                this.rename = rename;
+            }
+
+            ANF.Var binder(ANF.Var v) {
+                if (!rename) {
+                    return v;
+                }
+                var fresh = fresh(v.varId());
+                subst.put(v.varId(), fresh);
+                return fresh;
+            }
+
+            ANF.Term term(ANF.Term term) {
+                return switch (term) {
+                    case ANF.Var v -> subst.getOrDefault(v.varId(), v);
+                    case ANF.Const c -> c;
+                    case ANF.FunApply fa -> {
+                        List<ANF.Term> args = new ArrayList<>(fa.arguments().size());
+                        for (ANF.Term arg : fa.arguments()) {
+                            args.add(term(arg));
+                        }
+                        yield funApply(fa.fc() instanceof FunKind.Primitive ? fa.name() : term(fa.name()), args, fa.fc());
+                    }
+                };
+            }
+
+            ANF.Expression run(ANF.Expression expr) {
+                ArrayDeque<Object> pending = new ArrayDeque<>();
+                ArrayDeque<ANF.Expression> done = new ArrayDeque<>();
+                pending.push(expr);
+                while (!pending.isEmpty()) {
+                    switch (pending.pop()) {
+                        case ANF.Let l -> {
+                            // The term is in scope of what is bound above, not of the Let's own name.
+                            var term = term(l.term());
+                            pending.push(new Rebuild(let(binder(l.name()), term, l.expBody()), null));
+                            pending.push(l.expBody());
+                        }
+                        case ANF.IfThen i -> {
+                            pending.push(new Rebuild(ifThen(term(i.cond()), i.trueExp(), i.falseExp()), null));
+                            pending.push(i.falseExp());
+                            pending.push(i.trueExp());
+                        }
+                        case ANF.LetRec r -> {
+                            List<ANF.Function> funs = new ArrayList<>(r.funs().size());
+                            for (ANF.Function f : r.funs()) {
+                                funs.add(function(binder(f.name()), f.parameters(), f.expBody()));
+                            }
+                            for (int j = 0; j < funs.size(); j++) {
+                                var params = new ArrayList<ANF.Var>();
+                                for (ANF.Var p : r.funs().get(j).parameters()) {
+                                    params.add(binder(p));
+                                }
+                                funs.set(j, function(funs.get(j).name(), params, funs.get(j).expBody()));
+                            }
+                            pending.push(new Rebuild(r, funs));
+                            pending.push(r.combinedBody());
+                            for (int j = funs.size() - 1; j >= 0; j--) {
+                                pending.push(funs.get(j).expBody());
+                            }
+                        }
+                        case Rebuild(ANF.Let l, var _) -> done.push(let(l.name(), l.term(), done.pop()));
+                        case Rebuild(ANF.IfThen i, var _) -> {
+                            var falseExp = done.pop();
+                            var trueExp = done.pop();
+                            done.push(ifThen(i.cond(), trueExp, falseExp));
+                        }
+                        case Rebuild(ANF.LetRec _, var funs) -> {
+                            var body = done.pop();
+                            ANF.Function[] copies = new ANF.Function[funs.size()];
+                            for (int j = copies.length - 1; j >= 0; j--) {
+                                copies[j] = function(funs.get(j).name(), funs.get(j).parameters(), done.pop());
+                            }
+                            done.push(letRec(List.of(copies), body));
+                        }
+                        case ANF.Term t -> done.push((ANF.Expression) term(t));
+                        default -> throw new IllegalStateException();
+                    }
+                }
+                return done.pop();
+            }
+        }
+
+        /**
+         * {@return {@code body} with every return replaced by a tail call of {@code join}}
+         */
+        private ANF.Expression jumpFromTails(ANF.Expression body, ANF.Var join) {
+            ArrayDeque<Object> pending = new ArrayDeque<>();
+            ArrayDeque<ANF.Expression> done = new ArrayDeque<>();
+            pending.push(body);
+            while (!pending.isEmpty()) {
+                switch (pending.pop()) {
+                    case ANF.Let l -> {
+                        pending.push(new Rebuild(l, null));
+                        pending.push(l.expBody());
+                    }
+                    case ANF.LetRec r -> {
+                        pending.push(new Rebuild(r, null));
+                        pending.push(r.combinedBody());
+                    }
+                    case ANF.IfThen i -> {
+                        pending.push(new Rebuild(i, null));
+                        pending.push(i.falseExp());
+                        pending.push(i.trueExp());
+                    }
+                    case Rebuild(ANF.Let l, var _) -> done.push(let(l.name(), l.term(), done.pop()));
+                    case Rebuild(ANF.LetRec r, var _) -> done.push(letRec(r.funs(), done.pop()));
+                    case Rebuild(ANF.IfThen i, var _) -> {
+                        var falseExp = done.pop();
+                        var trueExp = done.pop();
+                        done.push(ifThen(i.cond(), trueExp, falseExp));
+                    }
+                    case ANF.FunApply fa -> {
+                        var result = fresh(join.varId());
+                        done.push(let(result, fa, funApply(join, List.of(result), FunKind.FC)));
+                    }
+                    case ANF.Term t -> done.push(funApply(join, List.of(t), FunKind.FC));
+                    default -> throw new IllegalStateException();
+                }
+            }
+            return done.pop();
+        }
+    }
+
+    /**
+     * {@return whether {@code expr} is a chain of Lets and LetRecs ending in a term}
+     */
+    private static boolean isStraightLine(ANF.Expression expr) {
+        while (true) {
+            switch (expr) {
+                case ANF.Let l -> expr = l.expBody();
+                case ANF.LetRec r -> expr = r.combinedBody();
+                case ANF.IfThen _ -> {
+                    return false;
+                }
+                default -> {
+                    return true;
+                }
+            }
+        }
+    }
+
+    /**
+     * {@return the chain {@code body} with its final term bound to {@code name} in {@code rest}}
+     */
+    private static ANF.Expression splice(ANF.Expression body, ANF.Var name, ANF.Expression rest) {
+        List<ANF.Expression> chain = new ArrayList<>();
+        var e = body;
+        while (!(e instanceof ANF.Term)) {
+            chain.add(e);
+            e = e instanceof ANF.Let l ? l.expBody() : ((ANF.LetRec) e).combinedBody();
+        }
+        ANF.Expression result = let(name, (ANF.Term) e, rest);
+        for (int i = chain.size() - 1; i >= 0; i--) {
+            result = chain.get(i) instanceof ANF.Let l ? let(l.name(), l.term(), result)
+                    : letRec(((ANF.LetRec) chain.get(i)).funs(), result);
+        }
+        return result;
+    }
+}
@@ -0,0 +1,315 @@
+/*
+ * Copyright (c) 2024, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Oracle designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+
+package org.oracle.anf.opt;
+
+import org.oracle.anf.ANF;
+import org.oracle.anf.FunKind;
+import org.oracle.anf.analysis.FreeVariables;
+import org.oracle.anf.util.Fold;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+
+import static org.oracle.anf.ANF.*;
+
+/**
+ * Lambda lifting with a closure conversion fallback.
+ * <p>
+ * Every {@link ANF.LetRec} function is moved into one LetRec around the program, or around the
+ * body of the entry function, taking the variables it captured as extra leading parameters.
+ * The extra parameters of a function are its free variables other than functions, together with
+ * the extra parameters of the functions it refers to, computed to a fixpoint from the cached sets
+ * of {@link FreeVariables}. Calls pass the captured values explicitly, so no lifted function has
+ * free variables other than lifted functions, and an evaluator can give each call a flat frame.
+ * <p>
+ * A function whose name escapes, that is, is used other than as the callee of a call, cannot
+ * have its callers pass the extra parameters. If it captured anything, it is closure converted
+ * instead: its body is lifted as well, and a stub where it was defined binds the captured values
+ * and forwards to the lifted body. The stub is the only closure left; it is used wherever the
+ * function is passed as a value, and lifted functions referring to it capture it like any other
+ * variable.
+ * <p>
+ * Variable names are assumed unique; extra parameters and stubs get fresh names, so they stay unique.
+ */
+public final class LambdaLifting {
+
+    private final FreeVariables fv;
+    // Lifted functions in definition order, and their extra parameters.
+    private final List<ANF.Function> functions = new ArrayList<>();
+    private final Map<Object, BitSet> extras = new HashMap<>();
+    // Closure converted functions, by name, with their stubs.
+    private final Map<Object, ANF.Var> stubs = new HashMap<>();
+    private final HashSet<Object> freshNames = new HashSet<>();
+    private int fresh;
+
+    private LambdaLifting(FreeVariables fv) {
+        this.fv = fv;
+    }
+
+    public static ANF.Expression lift(ANF.Expression expr) {
+        var ll = new LambdaLifting(FreeVariables.analyze(expr));
+        var uses = new Uses();
+        ll.analyze(Fold.fold(expr, uses, uses), null);
+        var body = ll.rewrite(expr, Map.of());
+        return ll.functions.isEmpty() ? body : letRec(ll.liftAll(), body);
+    }
+
+    public static ANF.Function lift(ANF.Function f) {
+        var ll = new LambdaLifting(FreeVariables.analyze(f));
+        var uses = new Uses();
+        ll.analyze(Fold.fold(f.expBody(), uses, uses), f);
+        var body = ll.rewrite(f.expBody(), Map.of());
+        if (ll.functions.isEmpty()) {
+            return f;
+        }
+        return function(f.name(), f.parameters(), letRec(ll.liftAll(), body));
+    }
+
+    /**
+     * Functions in definition order and how often their names are used and called.
+     */
+    private static final class Uses implements Fold.Visitor<Uses> {
+        final List<ANF.Function> functions = new ArrayList<>();
+        final HashMap<Object, int[]> counts = new HashMap<>();
+
+        @Override
+        public Fold.Step preFunction(ANF.Function f, Uses acc) {
+            acc.functions.add(f);
+            return Fold.Step.CONTINUE;
+        }
+
+        @Override
+        public Fold.Step preExpression(ANF.Expression expr, Uses acc) {
+            switch (expr) {
+                case ANF.LetRec r -> {
+                    for (ANF.Function f : r.funs()) {
+                        acc.counts.putIfAbsent(f.name().varId(), new int[2]);
+                    }
+                }
+                case ANF.Var v -> {
+                    var c = acc.counts.get(v.varId());
+                    if (c != null) {
+                        c[0]++;
+                    }
+                }
+                case ANF.FunApply fa when fa.fc() instanceof FunKind.FC && fa.name() instanceof ANF.Var(var id) -> {
+                    var c = acc.counts.get(id);
+                    if (c != null) {
+                        c[1]++;
+                    }
+                }
+                default -> {
+                }
+            }
+            return Fold.Step.CONTINUE;
+        }
+
+        boolean escapes(ANF.Function f) {
+            var c = counts.get(f.name().varId());
+            return c[0] != c[1];
+        }
+    }
+
+    /**
+     * Computes the extra parameters of every function and which functions are closure converted.
+     */
+    private void analyze(Uses uses, ANF.Function entry) {
+        functions.addAll(uses.functions);
+        BitSet lifted = new BitSet();
+        for (ANF.Function f : functions) {
+            lifted.set(fv.index(f.name().varId()));
+        }
+        // The entry function is bound by the caller, like a lifted function.
+        BitSet global = (BitSet) lifted.clone();
+        if (entry != null && fv.index(entry.name().varId()) >= 0) {
+            global.set(fv.index(entry.name().varId()));
+        }
+        boolean converted;
+        do {
+            converted = false;
+            for (ANF.Function f : functions) {
+                var bits = fv.bits(f);
+                bits.andNot(global);
+                extras.put(f.name().varId(), bits);
+            }
+            boolean changed;
+            do {
+                changed = false;
+                for (ANF.Function f : functions) {
+                    var bits = extras.get(f.name().varId());
+                    var refs = fv.bits(f);
+                    refs.and(lifted);
+                    for (int i = refs.nextSetBit(0); i >= 0; i = refs.nextSetBit(i + 1)) {
+                        var other = extras.get(fv.variable(i).varId());
+                        if (other != bits) {
+                            int before = bits.cardinality();
+                            bits.or(other);
+                            changed |= bits.cardinality() != before;
+                        }
+                    }
+                }
+            } while (changed);
+            // Escaping functions that capture become closures, which in turn can be captured.
+            for (ANF.Function f : functions) {
+                var id = f.name().varId();
+                if (!stubs.containsKey(id) && uses.escapes(f) && !extras.get(id).isEmpty()) {
+                    stubs.put(id, fresh(id));
+                    global.clear(fv.index(id));
+                    converted = true;
+                }
+            }
+        } while (converted);
+    }
+
+    private List<ANF.Function> liftAll() {
+        List<ANF.Function> lifted = new ArrayList<>(functions.size());
+        for (ANF.Function f : functions) {
+            Map<Object, ANF.Term> subst = new HashMap<>();
+            List<ANF.Var> params = new ArrayList<>();
+            var bits = extras.get(f.name().varId());
+            for (int i = bits.nextSetBit(0); i >= 0; i = bits.nextSetBit(i + 1)) {
+                var p = fresh(fv.variable(i).varId());
+                subst.put(fv.variable(i).varId(), p);
+                params.add(p);
+            }
+            params.addAll(f.parameters());
+            lifted.add(function(f.name(), params, rewrite(f.expBody(), subst)));
+        }
+        return lifted;
+    }
+
+    private record Rebuild(ANF.Expression node, List<ANF.Function> stubs) {}
+
+    /**
+     * {@return {@code expr} without its LetRecs, but for stubs, and with variables replaced by {@code subst}}
+     */
+    private ANF.Expression rewrite(ANF.Expression expr, Map<Object, ANF.Term> subst) {
+        ArrayDeque<Object> pending = new ArrayDeque<>();
+        ArrayDeque<ANF.Expression> done = new ArrayDeque<>();
+        pending.push(expr);
+        while (!pending.isEmpty()) {
+            switch (pending.pop()) {
+                case ANF.Let l -> {
+                    pending.push(new Rebuild(l, null));
+                    pending.push(l.expBody());
+                }
+                case ANF.IfThen i -> {
+                    pending.push(new Rebuild(i, null));
+                    pending.push(i.falseExp());
+                    pending.push(i.trueExp());
+                }
+                case ANF.LetRec r -> {
+                    List<ANF.Function> closures = new ArrayList<>();
+                    for (ANF.Function f : r.funs()) {
+                        var stub = stubs.get(f.name().varId());
+                        if (stub != null) {
+                            closures.add(stub(f, stub, subst));
+                        }
+                    }
+                    if (!closures.isEmpty()) {
+                        pending.push(new Rebuild(r, closures));
+                    }
+                    pending.push(r.combinedBody());
+                }
+                case Rebuild(ANF.Let l, var _) -> done.push(let(l.name(), term(l.term(), subst), done.pop()));
+                case Rebuild(ANF.IfThen i, var _) -> {
+                    var falseExp = done.pop();
+                    var trueExp = done.pop();
+                    done.push(ifThen(term(i.cond(), subst), trueExp, falseExp));
+                }
+                case Rebuild(ANF.LetRec _, var closures) -> done.push(letRec(closures, done.pop()));
+                case ANF.Term t -> done.push((ANF.Expression) term(t, subst));
+                default -> throw new IllegalStateException();
+            }
+        }
+        return done.pop();
+    }
+
+    /**
+     * {@return the stub of a closure converted function, forwarding to its lifted body}
+     */
+    private ANF.Function stub(ANF.Function f, ANF.Var stub, Map<Object, ANF.Term> subst) {
+        List<ANF.Var> params = new ArrayList<>(f.parameters().size());
+        for (ANF.Var p : f.parameters()) {
+            params.add(fresh(p.varId()));
+        }
+        List<ANF.Term> args = extraArguments(f.name().varId(), subst);
+        args.addAll(params);
+        return function(stub, params, funApply(f.name(), args, FunKind.FC));
+    }
+
+    private List<ANF.Term> extraArguments(Object function, Map<Object, ANF.Term> subst) {
+        var bits = extras.get(function);
+        List<ANF.Term> args = new ArrayList<>();
+        for (int i = bits.nextSetBit(0); i >= 0; i = bits.nextSetBit(i + 1)) {
+            args.add(term(fv.variable(i), subst));
+        }
+        return args;
+    }
+
+    private ANF.Term term(ANF.Term term, Map<Object, ANF.Term> subst) {
+        return switch (term) {
+            case ANF.Var v -> {
+                var t = subst.get(v.varId());
+                if (t != null) {
+                    yield t;
+                }
+                var stub = stubs.get(v.varId());
+                yield stub != null ? stub : v;
+            }
+            case ANF.Const c -> c;
+            case ANF.FunApply fa -> {
+                List<ANF.Term> args = new ArrayList<>(fa.arguments().size());
+                if (fa.fc() instanceof FunKind.FC && fa.name() instanceof ANF.Var(var id) && extras.containsKey(id)) {
+                    // A direct call of a lifted function passes what it captured.
+                    args.addAll(extraArguments(id, subst));
+                    for (ANF.Term arg : fa.arguments()) {
+                        args.add(term(arg, subst));
+                    }
+                    yield funApply(fa.name(), args, fa.fc());
+                }
+                for (ANF.Term arg : fa.arguments()) {
+                    args.add(term(arg, subst));
+                }
+                yield funApply(fa.fc() instanceof FunKind.FC ? term(fa.name(), subst) : fa.name(), args, fa.fc());
+            }
+        };
+    }
+
+    private ANF.Var fresh(Object varId) {
+        while (true) {
+            var id = varId + "$" + ++fresh;
+            if (fv.index(id) < 0 && freshNames.add(id)) {
+                return variable(id);
+            }
+        }
+    }
+}
@@ -0,0 +1,264 @@
+/*
+ * Copyright (c) 2024, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Oracle designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+
+package org.oracle.anf.opt;
+
+import org.oracle.anf.ANF;
+import org.oracle.anf.FunKind;
+import org.oracle.anf.analysis.StronglyConnected;
+import org.oracle.anf.util.Fold;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.oracle.anf.ANF.*;
+
+/**
+ * Dead function elimination and {@link ANF.LetRec} splitting.
+ * <p>
+ * The functions of every LetRec and the uses of their names form a call graph. Functions not
+ * reachable from the LetRec's body are dropped, and the rest are split into one LetRec per
+ * strongly connected component, nested so that every component is bound outside the components
+ * using it. A function that does not call itself ends up alone in its LetRec, where inlining can
+ * treat it as straight-line code. Any occurrence of a name counts as a use, including passing
+ * the function as an argument, and a component keeps the original order of its functions.
+ * <p>
+ * LetRecs are processed bottom-up, so functions only used by dropped functions are dropped too.
+ * The uses of a subtree are tracked as the set of function names occurring free in it, so the
+ * program is walked once. Variable names are assumed unique.
+ */
+public final class LetRecSplitting {
+
+    // Names bound by some LetRec of the program; other variables are not tracked.
+    private final Set<Object> functionNames;
+
+    private LetRecSplitting(Set<Object> functionNames) {
+        this.functionNames = functionNames;
+    }
+
+    public static ANF.Expression split(ANF.Expression expr) {
+        return new LetRecSplitting(functionNames(expr)).run(expr);
+    }
+
+    public static ANF.Function split(ANF.Function f) {
+        var body = split(f.expBody());
+        return body == f.expBody() ? f : function(f.name(), f.parameters(), body);
+    }
+
+    private static Set<Object> functionNames(ANF.Expression expr) {
+        return Fold.fold(expr, new Fold.Visitor<Set<Object>>() {
+            @Override
+            public Fold.Step preFunction(ANF.Function f, Set<Object> names) {
+                names.add(f.name().varId());
+                return Fold.Step.CONTINUE;
+            }
+        }, new HashSet<>());
+    }
+
+    // A rewritten subtree and the function names free in it.
+    private record Part(ANF.Expression expr, Set<Object> uses) {}
+
+    private record Rebuild(ANF.Expression node) {}
+
+    private ANF.Expression run(ANF.Expression expr) {
+        ArrayDeque<Object> pending = new ArrayDeque<>();
+        ArrayDeque<Part> done = new ArrayDeque<>();
+        pending.push(expr);
+        while (!pending.isEmpty()) {
+            switch (pending.pop()) {
+                case ANF.Let l -> {
+                    pending.push(new Rebuild(l));
+                    pending.push(l.expBody());
+                }
+                case ANF.IfThen i -> {
+                    pending.push(new Rebuild(i));
+                    pending.push(i.falseExp());
+                    pending.push(i.trueExp());
+                }
+                case ANF.LetRec r -> {
+                    pending.push(new Rebuild(r));
+                    pending.push(r.combinedBody());
+                    for (int j = r.funs().size() - 1; j >= 0; j--) {
+                        pending.push(r.funs().get(j).expBody());
+                    }
+                }
+                case Rebuild(ANF.Let l) -> {
+                    var body = done.pop();
+                    var uses = uses(l.term(), body.uses());
+                    done.push(new Part(body.expr() == l.expBody() ? l : let(l.name(), l.term(), body.expr()), uses));
+                }
+                case Rebuild(ANF.IfThen i) -> {
+                    var falseExp = done.pop();
+                    var trueExp = done.pop();
+                    var uses = uses(i.cond(), union(trueExp.uses(), falseExp.uses()));
+                    done.push(new Part(trueExp.expr() == i.trueExp() && falseExp.expr() == i.falseExp()
+                            ? i : ifThen(i.cond(), trueExp.expr(), falseExp.expr()), uses));
+                }
+                case Rebuild(ANF.LetRec r) -> {
+                    var body = done.pop();
+                    Part[] bodies = new Part[r.funs().size()];
+                    for (int j = bodies.length - 1; j >= 0; j--) {
+                        bodies[j] = done.pop();
+                    }
+                    done.push(split(r, bodies, body));
+                }
+                case ANF.Term t -> done.push(new Part((ANF.Expression) t, uses(t, Set.of())));
+                default -> throw new IllegalStateException();
+            }
+        }
+        return done.pop().expr();
+    }
+
+    private Part split(ANF.LetRec r, Part[] bodies, Part body) {
+        var funs = r.funs();
+        int n = funs.size();
+        HashMap<Object, Integer> index = new HashMap<>();
+        for (int i = 0; i < n; i++) {
+            index.put(funs.get(i).name().varId(), i);
+        }
+        int[][] calls = new int[n][];
+        for (int i = 0; i < n; i++) {
+            calls[i] = siblings(bodies[i].uses(), index);
+        }
+
+        // Functions reachable from the body.
+        boolean[] live = new boolean[n];
+        ArrayDeque<Integer> work = new ArrayDeque<>();
+        for (int i : siblings(body.uses(), index)) {
+            live[i] = true;
+            work.push(i);
+        }
+        while (!work.isEmpty()) {
+            for (int callee : calls[work.pop()]) {
+                if (!live[callee]) {
+                    live[callee] = true;
+                    work.push(callee);
+                }
+            }
+        }
+
+        var components = StronglyConnected.components(calls, live);
+        Set<Object> uses = body.uses();
+        boolean changed = body.expr() != r.combinedBody() || components.size() != 1 || components.getFirst().length != n;
+        for (int i = 0; i < n; i++) {
+            if (live[i]) {
+                uses = union(uses, bodies[i].uses());
+                changed |= bodies[i].expr() != funs.get(i).expBody();
+            }
+        }
+        if (!uses.isEmpty()) {
+            uses.removeAll(index.keySet());
+        }
+        if (!changed) {
+            return new Part(r, uses);
+        }
+
+        // Callees are bound outside their callers: build from the last component found outwards.
+        var expr = body.expr();
+        for (int c = components.size() - 1; c >= 0; c--) {
+            List<ANF.Function> group = new ArrayList<>();
+            for (int i : components.get(c)) {
+                var f = funs.get(i);
+                group.add(bodies[i].expr() == f.expBody() ? f : function(f.name(), f.parameters(), bodies[i].expr()));
+            }
+            expr = letRec(group, expr);
+        }
+        return new Part(expr, uses);
+    }
+
+    /**
+     * {@return the indices of the LetRec's functions among {@code uses}, in ascending order}
+     */
+    private static int[] siblings(Set<Object> uses, HashMap<Object, Integer> index) {
+        int[] result = new int[Math.min(uses.size(), index.size())];
+        int count = 0;
+        if (uses.size() <= index.size()) {
+            for (Object use : uses) {
+                var i = index.get(use);
+                if (i != null) {
+                    result[count++] = i;
+                }
+            }
+        } else {
+            for (var e : index.entrySet()) {
+                if (uses.contains(e.getKey())) {
+                    result[count++] = e.getValue();
+                }
+            }
+        }
+        result = Arrays.copyOf(result, count);
+        Arrays.sort(result);
+        return result;
+    }
+
+    /**
+     * {@return {@code uses} with the function names occurring in {@code term}}
+     */
+    private Set<Object> uses(ANF.Term term, Set<Object> uses) {
+        switch (term) {
+            case ANF.Var v -> {
+                if (functionNames.contains(v.varId())) {
+                    uses = mutable(uses);
+                    uses.add(v.varId());
+                }
+            }
+            case ANF.FunApply fa -> {
+                if (!(fa.fc() instanceof FunKind.Primitive)) {
+                    uses = uses(fa.name(), uses);
+                }
+                for (ANF.Term arg : fa.arguments()) {
+                    uses = uses(arg, uses);
+                }
+            }
+            case ANF.Const _ -> {
+            }
+        }
+        return uses;
+    }
+
+    private static Set<Object> mutable(Set<Object> set) {
+        return set.isEmpty() ? new HashSet<>() : set;
+    }
+
+    /**
+     * {@return the union of two sets owned by the caller, reusing the larger one}
+     */
+    private static Set<Object> union(Set<Object> a, Set<Object> b) {
+        if (a.size() < b.size()) {
+            var t = a;
+            a = b;
+            b = t;
+        }
+        if (!b.isEmpty()) {
+            a.addAll(b);
+        }
+        return a;
+    }
+}
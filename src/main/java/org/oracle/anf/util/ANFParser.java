@@ -0,0 +1,630 @@
+/*
+ * Copyright (c) 2024, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Oracle designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+
+package org.oracle.anf.util;
+
+import org.oracle.anf.ANF;
+import org.oracle.anf.FunKind;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.oracle.anf.ANF.*;
+
+/**
+ * Reads the text format written by {@link ANFPrinter}.
+ * <pre>
+ * expression := 'let' name '=' term 'in' '{' expression '}'
+ *             | 'letrec' (function ';')* 'in' '{' expression '}'
+ *             | 'if' term 'then' '{' expression '}' 'else' '{' expression '}'
+ *             | term
+ * function   := name '(' [name (',' name)*] ')' '=' '{' expression '}'
+ * term       := literal | name | ['%'] name ['[' name ']'] '(' [term (',' term)*] ')'
+ * </pre>
+ * The kind of an application is written out rather than guessed from its name: {@code %name(args)}
+ * is a primitive, {@code name[target](args)} a {@link FunKind.Java} call of that target, and
+ * {@code name(args)} a {@code FC} call.
+ * Names are read as {@code String} variable ids.
+ * <p>
+ * Input is scanned by a hand-written lexer from a {@link Reader} or, for files, decoded in
+ * chunks from a memory mapping. Nested expressions are kept on an explicit stack, so deeply
+ * nested programs do not use Java stack. Errors are reported as {@link SyntaxError}s with the
+ * line and column they were found at.
+ */
+public final class ANFParser {
+
+    public static final class SyntaxError extends RuntimeException {
+        private final int line;
+        private final int column;
+
+        SyntaxError(String message, int line, int column) {
+            super(line + ":" + column + ": " + message);
+            this.line = line;
+            this.column = column;
+        }
+
+        public int line() {
+            return line;
+        }
+
+        public int column() {
+            return column;
+        }
+    }
+
+    private final Lexer lexer;
+
+    private ANFParser(Lexer lexer) {
+        this.lexer = lexer;
+    }
+
+    public static ANF.Expression parse(CharSequence text) {
+        try {
+            return parse(new StringReader(text.toString()));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    public static ANF.Expression parse(Reader r) throws IOException {
+        return new ANFParser(new Lexer(r, null)).parseProgram();
+    }
+
+    /**
+     * Parses a UTF-8 encoded file, mapped into memory a window at a time, so files of any size
+     * can be read.
+     */
+    public static ANF.Expression parse(Path file) throws IOException {
+        try (var ch = FileChannel.open(file, StandardOpenOption.READ)) {
+            return new ANFParser(new Lexer(null, ch)).parseProgram();
+        }
+    }
+
+    // Expressions waiting for one of their parts.
+    private static final class LetFrame {
+        final ANF.Var name;
+        final ANF.Term term;
+
+        LetFrame(ANF.Var name, ANF.Term term) {
+            this.name = name;
+            this.term = term;
+        }
+    }
+
+    private static final class LetRecFrame {
+        final List<ANF.Function> funs = new ArrayList<>();
+    }
+
+    private static final class FunctionFrame {
+        final ANF.Var name;
+        final List<ANF.Var> params;
+
+        FunctionFrame(ANF.Var name, List<ANF.Var> params) {
+            this.name = name;
+            this.params = params;
+        }
+    }
+
+    private static final class IfFrame {
+        final ANF.Term cond;
+        ANF.Expression trueExp;
+
+        IfFrame(ANF.Term cond) {
+            this.cond = cond;
+        }
+    }
+
+    private ANF.Expression parseProgram() throws IOException {
+        lexer.next();
+        var expr = parseExpression();
+        if (lexer.type != Lexer.EOF) {
+            throw lexer.error("Expected end of input, found " + lexer.describe());
+        }
+        return expr;
+    }
+
+    private ANF.Expression parseExpression() throws IOException {
+        ArrayDeque<Object> frames = new ArrayDeque<>();
+        while (true) {
+            // Descend into nested expressions until reaching a term.
+            ANF.Expression result = null;
+            while (result == null) {
+                if (lexer.isKeyword("let")) {
+                    lexer.next();
+                    var name = variable(expectName());
+                    expect('=');
+                    var term = parseTerm();
+                    expectKeyword("in");
+                    expect('{');
+                    frames.push(new LetFrame(name, term));
+                } else if (lexer.isKeyword("letrec")) {
+                    lexer.next();
+                    var frame = new LetRecFrame();
+                    frames.push(frame);
+                    startFunctionOrBody(frames);
+                } else if (lexer.isKeyword("if")) {
+                    lexer.next();
+                    var cond = parseTerm();
+                    expectKeyword("then");
+                    expect('{');
+                    frames.push(new IfFrame(cond));
+                } else {
+                    result = (ANF.Expression) parseTerm();
+                }
+            }
+            // Complete the expressions waiting for the result.
+            boolean descend = false;
+            while (!descend) {
+                if (frames.isEmpty()) {
+                    return result;
+                }
+                switch (frames.peek()) {
+                    case LetFrame f -> {
+                        expect('}');
+                        frames.pop();
+                        result = let(f.name, f.term, result);
+                    }
+                    case FunctionFrame f -> {
+                        expect('}');
+                        expect(';');
+                        frames.pop();
+                        ((LetRecFrame) frames.peek()).funs.add(function(f.name, f.params, result));
+                        startFunctionOrBody(frames);
+                        descend = true;
+                    }
+                    case LetRecFrame f -> {
+                        expect('}');
+                        frames.pop();
+                        result = letRec(f.funs, result);
+                    }
+                    case IfFrame f when f.trueExp == null -> {
+                        expect('}');
+                        expectKeyword("else");
+                        expect('{');
+                        f.trueExp = result;
+                        descend = true;
+                    }
+                    case IfFrame f -> {
+                        expect('}');
+                        frames.pop();
+                        result = ifThen(f.cond, f.trueExp, result);
+                    }
+                    default -> throw new IllegalStateException();
+                }
+            }
+        }
+    }
+
+    /**
+     * Within a letrec, reads the header of the next function, pushing its frame, or the start of the body.
+     */
+    private void startFunctionOrBody(ArrayDeque<Object> frames) throws IOException {
+        if (lexer.isKeyword("in")) {
+            lexer.next();
+            expect('{');
+            return;
+        }
+        var name = variable(expectName());
+        expect('(');
+        List<ANF.Var> params = new ArrayList<>();
+        if (lexer.type != ')') {
+            params.add(variable(expectName()));
+            while (lexer.type == ',') {
+                lexer.next();
+                params.add(variable(expectName()));
+            }
+        }
+        expect(')');
+        expect('=');
+        expect('{');
+        frames.push(new FunctionFrame(name, params));
+    }
+
+    private ANF.Term parseTerm() throws IOException {
+        return switch (lexer.type) {
+            case Lexer.LITERAL -> {
+                var value = lexer.value;
+                lexer.next();
+                yield constant(value);
+            }
+            case '%' -> {
+                lexer.next();
+                var name = expectName();
+                expect('(');
+                yield funApply(variable(name), arguments(), FunKind.PRIMITIVE);
+            }
+            case Lexer.NAME -> {
+                if (!lexer.quoted && Lexer.isReserved(lexer.text)) {
+                    throw lexer.error("Expected a term, found " + lexer.describe());
+                }
+                var name = lexer.text;
+                lexer.next();
+                FunKind kind = FunKind.FC;
+                if (lexer.type == '[') {
+                    lexer.next();
+                    kind = FunKind.java(expectName());
+                    expect(']');
+                    expect('(');
+                } else if (lexer.type == '(') {
+                    lexer.next();
+                } else {
+                    yield variable(name);
+                }
+                yield funApply(variable(name), arguments(), kind);
+            }
+            default -> throw lexer.error("Expected a term, found " + lexer.describe());
+        };
+    }
+
+    /**
+     * Reads the arguments of an application, after its opening parenthesis.
+     */
+    private List<ANF.Term> arguments() throws IOException {
+        List<ANF.Term> args = new ArrayList<>();
+        if (lexer.type != ')') {
+            args.add(parseTerm());
+            while (lexer.type == ',') {
+                lexer.next();
+                args.add(parseTerm());
+            }
+        }
+        expect(')');
+        return args;
+    }
+
+    private String expectName() throws IOException {
+        if (lexer.type != Lexer.NAME || (!lexer.quoted && Lexer.isReserved(lexer.text))) {
+            throw lexer.error("Expected a name, found " + lexer.describe());
+        }
+        var name = lexer.text;
+        lexer.next();
+        return name;
+    }
+
+    private void expect(char c) throws IOException {
+        if (lexer.type != c) {
+            throw lexer.error("Expected '" + c + "', found " + lexer.describe());
+        }
+        lexer.next();
+    }
+
+    private void expectKeyword(String keyword) throws IOException {
+        if (!lexer.isKeyword(keyword)) {
+            throw lexer.error("Expected '" + keyword + "', found " + lexer.describe());
+        }
+        lexer.next();
+    }
+
+    /**
+     * Splits the input into tokens. The current token is described by {@link #type} and, for
+     * names and literals, {@link #text} or {@link #value}; punctuation is its own character as type.
+     */
+    static final class Lexer {
+        static final int EOF = -1;
+        static final int NAME = -2;
+        static final int LITERAL = -3;
+
+        private static final int SIZE = 8192;
+        private static final long WINDOW = 1L << 26;
+
+        private final Reader reader;
+        private final FileChannel file;
+        private final long size;
+        // The mapped window of the file being decoded, and the file offset after it.
+        private ByteBuffer bytes = ByteBuffer.allocate(0);
+        private long next;
+        private final CharsetDecoder decoder = StandardCharsets.UTF_8.newDecoder();
+        private final char[] buf = new char[SIZE];
+        private int pos;
+        private int limit;
+        private boolean eof;
+
+        private int line = 1;
+        private int column = 1;
+        private final StringBuilder sb = new StringBuilder();
+
+        int type;
+        String text;
+        Object value;
+        boolean quoted;
+        int tokenLine;
+        int tokenColumn;
+
+        Lexer(Reader reader, FileChannel file) throws IOException {
+            this.reader = reader;
+            this.file = file;
+            this.size = file == null ? 0 : file.size();
+        }
+
+        static boolean isReserved(String s) {
+            return switch (s) {
+                case "let", "letrec", "in", "if", "then", "else" -> true;
+                default -> false;
+            };
+        }
+
+        boolean isKeyword(String keyword) {
+            return type == NAME && !quoted && text.equals(keyword);
+        }
+
+        String describe() {
+            return switch (type) {
+                case EOF -> "end of input";
+                case NAME -> "'" + text + "'";
+                case LITERAL -> "literal " + value;
+                default -> "'" + (char) type + "'";
+            };
+        }
+
+        SyntaxError error(String message) {
+            return new SyntaxError(message, tokenLine, tokenColumn);
+        }
+
+        private int peek() throws IOException {
+            if (pos == limit && !fill()) {
+                return -1;
+            }
+            return buf[pos];
+        }
+
+        private int read() throws IOException {
+            int c = peek();
+            if (c >= 0) {
+                pos++;
+                if (c == '\n') {
+                    line++;
+                    column = 1;
+                } else {
+                    column++;
+                }
+            }
+            return c;
+        }
+
+        private boolean fill() throws IOException {
+            if (eof) {
+                return false;
+            }
+            if (reader != null) {
+                int n = reader.read(buf, 0, SIZE);
+                if (n < 0) {
+                    eof = true;
+                    return false;
+                }
+                pos = 0;
+                limit = n;
+                return true;
+            }
+            var chars = CharBuffer.wrap(buf);
+            while (true) {
+                boolean last = next == size;
+                CoderResult r = decoder.decode(bytes, chars, last);
+                if (r.isError()) {
+                    throw new SyntaxError("Malformed UTF-8 input", line, column);
+                }
+                if (chars.position() > 0) {
+                    break;
+                }
+                if (last) {
+                    decoder.flush(chars);
+                    eof = chars.position() == 0;
+                    break;
+                }
+                // The window is used up but for the start of a character split across windows.
+                long start = next - bytes.remaining();
+                next = Math.min(size, start + WINDOW);
+                bytes = file.map(FileChannel.MapMode.READ_ONLY, start, next - start);
+            }
+            pos = 0;
+            limit = chars.position();
+            return !eof;
+        }
+
+        void next() throws IOException {
+            int c = peek();
+            while (c == ' ' || c == '\n' || c == '\r' || c == '\t') {
+                read();
+                c = peek();
+            }
+            tokenLine = line;
+            tokenColumn = column;
+            quoted = false;
+            text = null;
+            value = null;
+            if (c < 0) {
+                type = EOF;
+            } else if (c == '(' || c == ')' || c == ',' || c == ';' || c == '=' || c == '{' || c == '}'
+                    || c == '[' || c == ']' || c == '%') {
+                read();
+                type = c;
+            } else if (c == '`') {
+                read();
+                type = NAME;
+                quoted = true;
+                text = quoted('`');
+            } else if (c == '"') {
+                read();
+                type = LITERAL;
+                value = quoted('"');
+            } else if (c == '\'') {
+                read();
+                type = LITERAL;
+                var s = quoted('\'');
+                if (s.length() != 1) {
+                    throw error("Character literal must hold one character");
+                }
+                value = s.charAt(0);
+            } else if (c == '-' || (c >= '0' && c <= '9')) {
+                type = LITERAL;
+                value = number();
+            } else if (Character.isJavaIdentifierStart(c) || c == '<') {
+                sb.setLength(0);
+                sb.append((char) read());
+                while ((c = peek()) >= 0 && ANFPrinter.isNamePart((char) c)) {
+                    sb.append((char) read());
+                }
+                word(sb.toString());
+            } else if (c == '.') {
+                throw error("Elided expression");
+            } else {
+                throw error("Unexpected character '" + (char) c + "'");
+            }
+        }
+
+        /**
+         * Classifies a word as a name or a keyword literal.
+         */
+        private void word(String w) {
+            type = LITERAL;
+            switch (w) {
+                case "true" -> value = Boolean.TRUE;
+                case "false" -> value = Boolean.FALSE;
+                case "null" -> value = null;
+                case "NaNF" -> value = Float.NaN;
+                case "NaND" -> value = Double.NaN;
+                case "InfinityF" -> value = Float.POSITIVE_INFINITY;
+                case "InfinityD" -> value = Double.POSITIVE_INFINITY;
+                default -> {
+                    type = NAME;
+                    text = w;
+                }
+            }
+        }
+
+        private String quoted(char quote) throws IOException {
+            sb.setLength(0);
+            while (true) {
+                int c = read();
+                if (c < 0 || c == '\n') {
+                    throw error("Unterminated " + (quote == '`' ? "name" : "literal"));
+                } else if (c == quote) {
+                    return sb.toString();
+                } else if (c == '\\') {
+                    int e = read();
+                    switch (e) {
+                        case 'n' -> sb.append('\n');
+                        case 't' -> sb.append('\t');
+                        case 'r' -> sb.append('\r');
+                        case '"', '\'', '\\', '`' -> sb.append((char) e);
+                        case 'u' -> {
+                            int v = 0;
+                            for (int i = 0; i < 4; i++) {
+                                int d = Character.digit(read(), 16);
+                                if (d < 0) {
+                                    throw error("Malformed unicode escape");
+                                }
+                                v = v * 16 + d;
+                            }
+                            sb.append((char) v);
+                        }
+                        default -> throw error("Unknown escape '\\" + (char) e + "'");
+                    }
+                } else {
+                    sb.append((char) c);
+                }
+            }
+        }
+
+        private Object number() throws IOException {
+            sb.setLength(0);
+            if (peek() == '-') {
+                sb.append((char) read());
+                if (peek() == 'I') {
+                    read();
+                    var rest = new StringBuilder("I");
+                    int c;
+                    while ((c = peek()) >= 0 && Character.isLetter(c)) {
+                        rest.append((char) read());
+                    }
+                    return switch (rest.toString()) {
+                        case "InfinityF" -> Float.NEGATIVE_INFINITY;
+                        case "InfinityD" -> Double.NEGATIVE_INFINITY;
+                        default -> throw error("Malformed number -" + rest);
+                    };
+                }
+            }
+            boolean decimal = false;
+            int c;
+            while ((c = peek()) >= 0) {
+                if ((c >= '0' && c <= '9')) {
+                    sb.append((char) read());
+                } else if (c == '.' || c == 'E' || c == 'e') {
+                    decimal = true;
+                    sb.append((char) read());
+                    if ((c == 'E' || c == 'e') && (peek() == '-' || peek() == '+')) {
+                        sb.append((char) read());
+                    }
+                } else {
+                    break;
+                }
+            }
+            int suffix = peek();
+            var digits = sb.toString();
+            try {
+                switch (suffix) {
+                    case 'L' -> {
+                        read();
+                        return Long.parseLong(digits);
+                    }
+                    case 'F' -> {
+                        read();
+                        return Float.parseFloat(digits);
+                    }
+                    case 'D' -> {
+                        read();
+                        return Double.parseDouble(digits);
+                    }
+                    case 'B' -> {
+                        read();
+                        return Byte.parseByte(digits);
+                    }
+                    case 'S' -> {
+                        read();
+                        return Short.parseShort(digits);
+                    }
+                    default -> {
+                        return decimal ? (Object) Double.parseDouble(digits) : (Object) Integer.parseInt(digits);
+                    }
+                }
+            } catch (NumberFormatException e) {
+                throw error("Malformed number " + digits);
+            }
+        }
+    }
+}
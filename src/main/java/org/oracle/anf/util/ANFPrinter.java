@@ -26,191 +26,496 @@
 package org.oracle.anf.util;
 
 import org.oracle.anf.ANF;
+import org.oracle.anf.FunKind;
 
 import java.io.IOException;
 import java.io.OutputStream;
-import java.io.PrintWriter;
-import java.io.Writer;
-import java.util.Iterator;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
 import java.util.List;
+import java.util.Set;
 
-
+/**
+ * Prints {@link ANF.Expression}s in the text format read by {@link ANFParser}.
+ * <p>
+ * Applications print with their kind: {@code name(args)} for an {@code FC} call,
+ * {@code %name(args)} for a primitive, and {@code name[target](args)} for a {@link FunKind.Java}
+ * call. Variable ids print as is, or quoted in backquotes when they would
+ * not read back as a name. Constants print as typed literals: {@code 1}, {@code 1L},
+ * {@code 1.0F}, {@code 1.0D}, {@code 1B}, {@code 1S}, {@code 'c'}, {@code "s"},
+ * {@code true} and {@code null}.
+ * <p>
+ * Output goes through buffers kept by the printer and reused by every print, and the program
+ * is walked with an explicit stack. Expressions nested deeper than the maximum depth, counted
+ * in blocks, are elided as {@code ...}, bounding the output of very large programs.
+ * Indentation is clamped to {@value #MAX_INDENT} columns.
+ * <p>
+ * A printer is not safe for use by multiple threads at once.
+ */
 public class ANFPrinter {
 
+    static final int INDENT = 2;
+    /**
+     * Indentation stops growing at this column, so a chain of Lets, each a block deeper than the
+     * last, prints in size linear in its length.
+     */
+    static final int MAX_INDENT = 64;
+
+    private final int maxDepth;
+    private final Sink sink = new Sink();
+
+    public ANFPrinter() {
+        this(Integer.MAX_VALUE);
+    }
+
+    /**
+     * A printer eliding expressions nested in more than {@code maxDepth} blocks.
+     */
+    public ANFPrinter(int maxDepth) {
+        if (maxDepth < 0) {
+            throw new IllegalArgumentException("maxDepth must not be negative: " + maxDepth);
+        }
+        this.maxDepth = maxDepth;
+    }
+
     public void print(ANF.Expression expr) {
-        print(expr, System.out);
+        print(expr, (OutputStream) System.out);
     }
 
     public void print(ANF.Expression expr, OutputStream os) {
-        IndentWriter w = new IndentWriter(new PrintWriter(os));
-        print(expr, w);
+        print(expr, Channels.newChannel(os));
         try {
-            w.flush();
+            os.flush();
         } catch (IOException e) {
             throw new RuntimeException(e);
         }
     }
 
-    private void print(ANF.Expression expr, IndentWriter w) {
-        try {
+    public void print(ANF.Expression expr, WritableByteChannel ch) {
+        sink.open(null, ch);
+        new Printer(sink).print(expr);
+    }
+
+    /**
+     * Prints {@code expr} to {@code out}. Named apart from {@link #print} since a
+     * {@link java.io.PrintStream} is both an {@code OutputStream} and an {@code Appendable}.
+     */
+    public void printTo(ANF.Expression expr, Appendable out) {
+        sink.open(out, null);
+        new Printer(sink).print(expr);
+    }
+
+    /**
+     * {@return the text of {@code expr}}
+     */
+    public String toText(ANF.Expression expr) {
+        var sb = new StringBuilder();
+        printTo(expr, sb);
+        return sb.toString();
+    }
+
+    private static final Set<String> RESERVED = Set.of("let", "letrec", "in", "if", "then", "else",
+            "true", "false", "null", "NaNF", "NaND", "InfinityF", "InfinityD");
+
+    /**
+     * {@return whether {@code s} prints as a name without quotes}
+     * Names start with a Java identifier start or {@code <}, and continue with Java identifier
+     * parts or any of {@code .:<>/}.
+     */
+    static boolean isName(String s) {
+        if (s.isEmpty() || RESERVED.contains(s)) {
+            return false;
+        }
+        char first = s.charAt(0);
+        if (!Character.isJavaIdentifierStart(first) && first != '<') {
+            return false;
+        }
+        for (int i = 1; i < s.length(); i++) {
+            if (!isNamePart(s.charAt(i))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    static boolean isNamePart(char c) {
+        return Character.isJavaIdentifierPart(c) && !Character.isIdentifierIgnorable(c)
+                || c == '.' || c == ':' || c == '<' || c == '>' || c == '/';
+    }
+
+    private static final byte EXPRESSION = 0;
+    private static final byte FUNCTION = 1;
+    private static final byte TEXT = 2;
+    private static final byte IN = 3;
+    private static final byte OUT = 4;
+
+    private final class Printer {
+        private final Sink w;
+        private Object[] items = new Object[64];
+        private byte[] kinds = new byte[64];
+        private int top;
+        private int depth;
+
+        Printer(Sink w) {
+            this.w = w;
+        }
+
+        void print(ANF.Expression expr) {
+            push(EXPRESSION, expr);
+            while (top > 0) {
+                top--;
+                var item = items[top];
+                items[top] = null;
+                switch (kinds[top]) {
+                    case EXPRESSION -> expression((ANF.Expression) item);
+                    case FUNCTION -> function((ANF.Function) item);
+                    case TEXT -> w.write((String) item);
+                    case IN -> in();
+                    default -> out();
+                }
+            }
+            w.flush();
+        }
+
+        private void expression(ANF.Expression expr) {
+            if (depth > maxDepth) {
+                w.write("...\n");
+                return;
+            }
             switch (expr) {
-                case ANF.Let(var name, var term, var expbody) -> {
+                case ANF.Let(var name, var term, var expBody) -> {
                     w.write("let ");
-                    w.write(name.toString());
+                    name(name.varId());
                     w.write(" = ");
-                    w.write(term.toString());
-                    w.write(" in \n");
-                    w.write("{\n");
-                    w.in();
-                    print(expbody, w);
-                    w.out();
-                    w.write("}\n");
-                }
-                case ANF.Const c -> w.write(c.toString());
-                case ANF.Var v -> w.write(v + "\n");
-                case ANF.FunApply fa -> printFunApply(fa, w);
-                case ANF.LetRec(var funs, var exprBody) -> {
+                    term(term);
+                    w.write(" in \n{\n");
+                    in();
+                    push(TEXT, "}\n");
+                    push(OUT, null);
+                    push(EXPRESSION, expBody);
+                }
+                case ANF.LetRec(var funs, var combinedBody) -> {
                     w.write("letrec \n");
-                    w.in();
-                    printFunctions(funs, w);
-                    w.out();
-                    w.write("in \n");
-                    w.write("{\n");
-                    w.in();
-                    print(exprBody, w);
-                    w.out();
-                    w.write("}\n");
+                    in();
+                    push(TEXT, "}\n");
+                    push(OUT, null);
+                    push(EXPRESSION, combinedBody);
+                    push(IN, null);
+                    push(TEXT, "in \n{\n");
+                    push(OUT, null);
+                    for (int i = funs.size() - 1; i >= 0; i--) {
+                        push(FUNCTION, funs.get(i));
+                    }
                 }
                 case ANF.IfThen(var cond, var trueExp, var falseExp) -> {
                     w.write("if ");
-                    printTerm(cond, w);
+                    term(cond);
                     w.write(" then {\n");
-                    w.in();
-                    print(trueExp, w);
-                    w.out();
-                    w.write("}\n");
-                    w.write("else {\n");
-                    w.in();
-                    print(falseExp, w);
-                    w.out();
-                    w.write("}\n");
+                    in();
+                    push(TEXT, "}\n");
+                    push(OUT, null);
+                    push(EXPRESSION, falseExp);
+                    push(IN, null);
+                    push(TEXT, "}\nelse {\n");
+                    push(OUT, null);
+                    push(EXPRESSION, trueExp);
+                }
+                case ANF.Const c -> {
+                    term(c);
+                    w.write("\n");
+                }
+                case ANF.Var v -> {
+                    term(v);
+                    w.write("\n");
+                }
+                case ANF.FunApply fa -> {
+                    term(fa);
+                    w.write("\n");
                 }
             }
-        } catch (IOException e) {
-            throw new RuntimeException(e);
         }
-    }
 
-    private void printFunctions(List<? extends ANF.Function> funs, IndentWriter w) throws IOException {
-        if (funs.size() == 1) {
-           printFunction(funs.getFirst(),w);
-           w.write(";\n");
-        } else if (funs.size() > 1){
-            for (ANF.Function fun : funs) {
-                printFunction(fun, w);
-                w.write(";\n");
+        private void function(ANF.Function f) {
+            name(f.name().varId());
+            w.write("(");
+            var params = f.parameters();
+            for (int i = 0; i < params.size(); i++) {
+                if (i > 0) {
+                    w.write(", ");
+                }
+                name(params.get(i).varId());
             }
+            w.write(") = {\n");
+            in();
+            push(TEXT, "};\n");
+            push(OUT, null);
+            push(EXPRESSION, f.expBody());
         }
-    }
 
-    private void printFunction(ANF.Function fun, IndentWriter w) throws IOException {
-        w.write(fun.name().toString());
-        printArgs(fun.parameters(),w);
-        w.write(" = ");
-        w.write("{\n");
-        w.in();
-        print(fun.expBody(), w);
-        w.out();
-        w.write("}\n");
-    }
+        /**
+         * Terms nest only as deep as the arguments of applications, so they are printed recursively.
+         */
+        private void term(ANF.Term term) {
+            switch (term) {
+                case ANF.Const(var value) -> literal(value);
+                case ANF.Var(var varId) -> name(varId);
+                case ANF.FunApply(var name, var args, var fc) -> {
+                    if (fc instanceof FunKind.Primitive) {
+                        w.write('%');
+                    }
+                    term(name);
+                    if (fc instanceof FunKind.Java(var target)) {
+                        w.write('[');
+                        name(target);
+                        w.write(']');
+                    }
+                    w.write("(");
+                    arguments(args);
+                    w.write(")");
+                }
+            }
+        }
 
-    private void printTerm(ANF.Term term, IndentWriter w) throws IOException {
-       switch (term) {
-           case ANF.Const(var value) -> w.write(value.toString());
-           case ANF.Var (var name) -> w.write(name.toString());
-           case ANF.FunApply fa -> printFunApply(fa, w);
-       }
-    }
+        private void arguments(List<ANF.Term> args) {
+            for (int i = 0; i < args.size(); i++) {
+                if (i > 0) {
+                    w.write(", ");
+                }
+                term(args.get(i));
+            }
+        }
 
-    private void printFunApply(ANF.FunApply fa, IndentWriter w) throws IOException {
-        w.write(fa.name().toString());
-        printArgs(fa.arguments(),w);
-        w.write("\n");
+        private void name(Object varId) {
+            var s = String.valueOf(varId);
+            if (varId instanceof String && isName(s)) {
+                w.write(s);
+            } else {
+                w.write('`');
+                for (int i = 0; i < s.length(); i++) {
+                    if (s.charAt(i) == '`') {
+                        w.write("\\`");
+                    } else {
+                        escaped(s.charAt(i));
+                    }
+                }
+                w.write('`');
+            }
+        }
 
-    }
+        private void literal(Object value) {
+            switch (value) {
+                case null -> w.write("null");
+                case Integer i -> w.write(i.toString());
+                case Long l -> {
+                    w.write(l.toString());
+                    w.write('L');
+                }
+                case Float f -> {
+                    w.write(f.toString());
+                    w.write('F');
+                }
+                case Double d -> {
+                    w.write(d.toString());
+                    w.write('D');
+                }
+                case Byte b -> {
+                    w.write(b.toString());
+                    w.write('B');
+                }
+                case Short s -> {
+                    w.write(s.toString());
+                    w.write('S');
+                }
+                case Boolean b -> w.write(b ? "true" : "false");
+                case Character c -> {
+                    w.write('\'');
+                    escaped(c);
+                    w.write('\'');
+                }
+                case String s -> {
+                    w.write('"');
+                    for (int i = 0; i < s.length(); i++) {
+                        escaped(s.charAt(i));
+                    }
+                    w.write('"');
+                }
+                default -> throw new IllegalArgumentException("Cannot print constant of " + value.getClass());
+            }
+        }
 
-    private void printArgs(List<? extends ANF.Term> args, IndentWriter w) throws IOException {
-       if (args.isEmpty()) {
-           w.write("()");
-       } else {
-           w.write("(");
-           printIntersperse(args, ", ", w);
-           w.write(")");
-       }
-    }
+        private void escaped(char c) {
+            switch (c) {
+                case '\n' -> w.write("\\n");
+                case '\t' -> w.write("\\t");
+                case '\r' -> w.write("\\r");
+                case '"' -> w.write("\\\"");
+                case '\'' -> w.write("\\'");
+                case '\\' -> w.write("\\\\");
+                default -> {
+                    // Lone surrogates are valid in Java strings but not encodable, so escape every surrogate.
+                    if (c < ' ' || Character.isSurrogate(c)) {
+                        w.write("\\u");
+                        var hex = Integer.toHexString(c);
+                        for (int i = hex.length(); i < 4; i++) {
+                            w.write('0');
+                        }
+                        w.write(hex);
+                    } else {
+                        w.write(c);
+                    }
+                }
+            }
+        }
+
+        private void in() {
+            depth++;
+            w.indent += INDENT;
+        }
+
+        private void out() {
+            depth--;
+            w.indent -= INDENT;
+        }
 
-    private void printIntersperse(List<? extends ANF.Term> params, String delimiter, IndentWriter w) throws IOException {
-        if (!params.isEmpty()) {
-            Iterator<? extends ANF.Term> iter = params.iterator();
-            printTerm(iter.next(), w);
-            while(iter.hasNext()) {
-                w.write(delimiter);
-                printTerm(iter.next(), w);
+        private void push(byte kind, Object item) {
+            if (top == items.length) {
+                items = Arrays.copyOf(items, top * 2);
+                kinds = Arrays.copyOf(kinds, top * 2);
             }
+            items[top] = item;
+            kinds[top++] = kind;
         }
     }
 
-    static final class IndentWriter extends Writer {
-        static final int INDENT = 2;
-        final Writer w;
+    /**
+     * Buffered, indenting output to an {@link Appendable} or a {@link WritableByteChannel},
+     * reopened for each print.
+     */
+    private static final class Sink {
+        private static final int SIZE = 8192;
+        private static final char[] SPACES = " ".repeat(MAX_INDENT).toCharArray();
+
+        private final char[] buf = new char[SIZE];
+        private final CharBuffer chars = CharBuffer.wrap(buf);
+        private Appendable out;
+        private WritableByteChannel ch;
+        private CharsetEncoder encoder;
+        private ByteBuffer bytes;
+        private int pos;
         int indent;
-        boolean writeIndent;
+        private boolean lineStart;
 
-        IndentWriter(Writer w) {
-            this(w, 0);
+        void open(Appendable out, WritableByteChannel ch) {
+            this.out = out;
+            this.ch = ch;
+            if (ch != null) {
+                if (encoder == null) {
+                    encoder = StandardCharsets.UTF_8.newEncoder();
+                    bytes = ByteBuffer.allocate(SIZE * 3);
+                }
+                encoder.reset();
+                bytes.clear();
+            }
+            chars.clear();
+            pos = 0;
+            indent = 0;
+            lineStart = true;
         }
 
-        IndentWriter(Writer w, int indent) {
-            this.writeIndent = true;
-            this.w = w;
-            this.indent = indent;
+        void write(String s) {
+            for (int i = 0; i < s.length(); i++) {
+                write(s.charAt(i));
+            }
         }
 
-        public void write(char[] cbuf, int off, int len) throws IOException {
-            if (this.writeIndent) {
-                this.w.write(" ".repeat(this.indent));
-                this.writeIndent = false;
+        void write(char c) {
+            if (lineStart && c != '\n') {
+                lineStart = false;
+                put(SPACES, Math.min(indent, MAX_INDENT));
             }
-
-            this.w.write(cbuf, off, len);
-            if (len > 0 && cbuf[off + len - 1] == '\n') {
-                this.writeIndent = true;
+            put(c);
+            if (c == '\n') {
+                lineStart = true;
             }
-
         }
 
-        public void flush() throws IOException {
-            this.w.flush();
+        private void put(char c) {
+            if (pos == SIZE) {
+                drain(false);
+            }
+            buf[pos++] = c;
         }
 
-        public void close() throws IOException {
-            this.w.close();
+        private void put(char[] cs, int len) {
+            for (int i = 0; i < len; ) {
+                if (pos == SIZE) {
+                    drain(false);
+                }
+                int k = Math.min(len - i, SIZE - pos);
+                System.arraycopy(cs, i, buf, pos, k);
+                pos += k;
+                i += k;
+            }
         }
 
-        void in() {
-            this.in(INDENT);
+        void flush() {
+            drain(true);
+            // Let go of the target, the buffers stay with the printer.
+            out = null;
+            ch = null;
         }
 
-        void in(int i) {
-            this.indent += i;
+        private void drain(boolean end) {
+            try {
+                if (out != null) {
+                    out.append(chars, 0, pos);
+                } else {
+                    chars.limit(pos).position(0);
+                    // Every char is complete here except possibly a trailing high surrogate.
+                    encode(end);
+                    if (end) {
+                        while (encoder.flush(bytes).isOverflow()) {
+                            send();
+                        }
+                        send();
+                    }
+                    int left = chars.remaining();
+                    System.arraycopy(buf, chars.position(), buf, 0, left);
+                    chars.clear();
+                    pos = left;
+                    return;
+                }
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+            pos = 0;
         }
 
-        void out() {
-            this.out(INDENT);
+        private void encode(boolean end) throws IOException {
+            while (true) {
+                CoderResult r = encoder.encode(chars, bytes, end);
+                send();
+                if (r.isError()) {
+                    r.throwException();
+                }
+                if (!r.isOverflow()) {
+                    return;
+                }
+            }
         }
 
-        void out(int i) {
-            this.indent -= i;
+        private void send() throws IOException {
+            bytes.flip();
+            while (bytes.hasRemaining()) {
+                ch.write(bytes);
+            }
+            bytes.clear();
         }
     }
 }
@@ -0,0 +1,220 @@
+/*
+ * Copyright (c) 2024, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Oracle designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+
+package org.oracle.anf.util;
+
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.LinkedHashMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.function.Supplier;
+import java.util.function.ToLongFunction;
+
+/**
+ * Thread-safe cache of computed values with a bounded total weight.
+ * <p>
+ * Keys are a member name within an owner class. The owner is held weakly: once it is
+ * collected, its entries are dropped, so caching does not keep classes from unloading. Keys
+ * without an owner are held strongly until evicted.
+ * <p>
+ * Concurrent requests for a key that is not cached yet wait for a single computation. Once the
+ * total weight of the computed values exceeds the maximum, the least recently used values are
+ * evicted. A computation that fails, or whose value the weigher rejects, is not cached. A
+ * computation that requests its own key fails with {@link IllegalStateException} rather than
+ * waiting for itself.
+ */
+public final class BoundedCache<V> {
+
+    /**
+     * Counters since the cache was created. A request finding a value still being computed is a hit.
+     */
+    public record Statistics(long hits, long misses, long evictions, int size, long weight) {}
+
+    private static final class Key extends WeakReference<Class<?>> {
+        final boolean anchored;
+        final String member;
+        final int hash;
+
+        Key(Class<?> owner, String member, ReferenceQueue<Class<?>> queue) {
+            super(owner, queue);
+            this.anchored = owner != null;
+            this.member = member;
+            this.hash = 31 * System.identityHashCode(owner) + member.hashCode();
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (o == this) {
+                return true;
+            }
+            if (!(o instanceof Key k) || k.hash != hash || k.anchored != anchored || !k.member.equals(member)) {
+                return false;
+            }
+            if (!anchored) {
+                return true;
+            }
+            var owner = get();
+            return owner != null && owner == k.get();
+        }
+    }
+
+    private static final class Entry<V> {
+        final CompletableFuture<V> value = new CompletableFuture<>();
+        // The thread computing the value, cleared once it is done so entries do not keep it alive.
+        volatile Thread computer = Thread.currentThread();
+        // Negative while the value is being computed.
+        long weight = -1;
+    }
+
+    private final long maxWeight;
+    private final ToLongFunction<? super V> weigher;
+    private final ReferenceQueue<Class<?>> queue = new ReferenceQueue<>();
+    private final LinkedHashMap<Key, Entry<V>> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private long weight;
+    private long hits;
+    private long misses;
+    private long evictions;
+
+    /**
+     * A cache of at most {@code maxEntries} values.
+     */
+    public BoundedCache(long maxEntries) {
+        this(maxEntries, _ -> 1);
+    }
+
+    public BoundedCache(long maxWeight, ToLongFunction<? super V> weigher) {
+        if (maxWeight < 1) {
+            throw new IllegalArgumentException("maxWeight must be positive: " + maxWeight);
+        }
+        this.maxWeight = maxWeight;
+        this.weigher = weigher;
+    }
+
+    /**
+     * {@return the value cached for {@code member} of {@code owner}, computing it if not cached}
+     *
+     * @param owner the class the key belongs to, or null for a key held until evicted
+     */
+    public V get(Class<?> owner, String member, Supplier<? extends V> compute) {
+        var key = new Key(owner, member, queue);
+        Entry<V> entry;
+        boolean computing = false;
+        synchronized (entries) {
+            expunge();
+            entry = entries.get(key);
+            if (entry != null) {
+                if (entry.computer == Thread.currentThread() && !entry.value.isDone()) {
+                    throw new IllegalStateException("Recursive computation of " + member);
+                }
+                hits++;
+            } else {
+                misses++;
+                entry = new Entry<>();
+                entries.put(key, entry);
+                computing = true;
+            }
+        }
+        if (computing) {
+            V value;
+            long w;
+            try {
+                value = compute.get();
+                w = weigher.applyAsLong(value);
+                if (w < 0) {
+                    throw new IllegalStateException("Negative weight " + w + " for " + member);
+                }
+            } catch (RuntimeException | Error e) {
+                synchronized (entries) {
+                    entries.remove(key, entry);
+                }
+                entry.computer = null;
+                entry.value.completeExceptionally(e);
+                throw e;
+            }
+            synchronized (entries) {
+                if (entries.get(key) == entry) {
+                    entry.weight = w;
+                    weight += w;
+                    evict();
+                }
+            }
+            entry.computer = null;
+            entry.value.complete(value);
+            return value;
+        }
+        try {
+            return entry.value.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException re) {
+                throw re;
+            } else if (e.getCause() instanceof Error err) {
+                throw err;
+            }
+            throw e;
+        }
+    }
+
+    public Statistics statistics() {
+        synchronized (entries) {
+            expunge();
+            return new Statistics(hits, misses, evictions, entries.size(), weight);
+        }
+    }
+
+    public void clear() {
+        synchronized (entries) {
+            entries.clear();
+            weight = 0;
+        }
+    }
+
+    private void evict() {
+        var it = entries.values().iterator();
+        while (weight > maxWeight && it.hasNext()) {
+            var e = it.next();
+            if (e.weight >= 0) {
+                it.remove();
+                weight -= e.weight;
+                evictions++;
+            }
+        }
+    }
+
+    private void expunge() {
+        for (var r = queue.poll(); r != null; r = queue.poll()) {
+            var e = entries.remove((Key) r);
+            if (e != null && e.weight >= 0) {
+                weight -= e.weight;
+                evictions++;
+            }
+        }
+    }
+}
@@ -0,0 +1,178 @@
+/*
+ * Copyright (c) 2024, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Oracle designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+
+package org.oracle.anf.util;
+
+import org.oracle.anf.ANF;
+
+import java.util.Arrays;
+
+/**
+ * Read-only, depth-first fold over an {@link ANF.Expression} or {@link ANF.Function}.
+ * <p>
+ * A {@link Visitor} is called before ({@code pre}) and after ({@code post}) the parts of every
+ * expression and function, with an accumulator of the caller's choosing. Parts are visited in
+ * source order: a Let's term then its body, an application's name then its arguments, a LetRec's
+ * functions then its body, an IfThen's condition then its branches. The binding occurrences of
+ * variables (Let names, function names and parameters) are not visited on their own; they are
+ * available from the node that binds them.
+ * <p>
+ * Pending nodes are kept on an explicit stack, so neither deep nesting nor long Let chains use
+ * Java stack, and no objects are allocated per node. A {@code Fold} instance reuses its stack
+ * across folds but must not be shared between threads.
+ */
+public final class Fold {
+
+    /**
+     * How a fold continues after a hook.
+     */
+    public enum Step {
+        CONTINUE,
+        /**
+         * Do not visit the parts of the current node; its {@code post} hook is still called.
+         * Same as {@link #CONTINUE} when returned by a {@code post} hook.
+         */
+        SKIP_PARTS,
+        /**
+         * End the fold; no further hooks are called.
+         */
+        STOP
+    }
+
+    public interface Visitor<A> {
+        default Step preExpression(ANF.Expression expr, A acc) {
+            return Step.CONTINUE;
+        }
+
+        default Step postExpression(ANF.Expression expr, A acc) {
+            return Step.CONTINUE;
+        }
+
+        default Step preFunction(ANF.Function f, A acc) {
+            return Step.CONTINUE;
+        }
+
+        default Step postFunction(ANF.Function f, A acc) {
+            return Step.CONTINUE;
+        }
+    }
+
+    private Object[] nodes = new Object[64];
+    private boolean[] post = new boolean[64];
+    private int top;
+
+    public static <A> A fold(ANF.Expression expr, Visitor<? super A> visitor, A acc) {
+        return new Fold().apply(expr, visitor, acc);
+    }
+
+    public static <A> A fold(ANF.Function f, Visitor<? super A> visitor, A acc) {
+        return new Fold().apply(f, visitor, acc);
+    }
+
+    public <A> A apply(ANF.Expression expr, Visitor<? super A> visitor, A acc) {
+        return run(expr, visitor, acc);
+    }
+
+    public <A> A apply(ANF.Function f, Visitor<? super A> visitor, A acc) {
+        return run(f, visitor, acc);
+    }
+
+    private <A> A run(Object root, Visitor<? super A> visitor, A acc) {
+        top = 0;
+        push(root, false);
+        try {
+            while (top > 0) {
+                top--;
+                Object node = nodes[top];
+                nodes[top] = null;
+                boolean isPost = post[top];
+                Step step;
+                if (isPost) {
+                    step = node instanceof ANF.Function f
+                            ? visitor.postFunction(f, acc)
+                            : visitor.postExpression((ANF.Expression) node, acc);
+                } else {
+                    step = node instanceof ANF.Function f
+                            ? visitor.preFunction(f, acc)
+                            : visitor.preExpression((ANF.Expression) node, acc);
+                    if (step != Step.STOP) {
+                        push(node, true);
+                        if (step == Step.CONTINUE) {
+                            pushParts(node);
+                        }
+                    }
+                }
+                if (step == Step.STOP) {
+                    break;
+                }
+            }
+        } finally {
+            Arrays.fill(nodes, 0, top, null);
+            top = 0;
+        }
+        return acc;
+    }
+
+    /**
+     * Pushes the parts of {@code node} last to first, so that they are visited first to last.
+     */
+    private void pushParts(Object node) {
+        switch (node) {
+            case ANF.Let(_, var term, var expBody) -> {
+                push(expBody, false);
+                push(term, false);
+            }
+            case ANF.FunApply(var name, var args, _) -> {
+                for (int i = args.size() - 1; i >= 0; i--) {
+                    push(args.get(i), false);
+                }
+                push(name, false);
+            }
+            case ANF.LetRec(var funs, var combinedBody) -> {
+                push(combinedBody, false);
+                for (int i = funs.size() - 1; i >= 0; i--) {
+                    push(funs.get(i), false);
+                }
+            }
+            case ANF.IfThen(var cond, var trueExp, var falseExp) -> {
+                push(falseExp, false);
+                push(trueExp, false);
+                push(cond, false);
+            }
+            case ANF.Function(_, _, var expBody) -> push(expBody, false);
+            default -> {
+            }
+        }
+    }
+
+    private void push(Object node, boolean isPost) {
+        if (top == nodes.length) {
+            nodes = Arrays.copyOf(nodes, top * 2);
+            post = Arrays.copyOf(post, top * 2);
+        }
+        nodes[top] = node;
+        post[top++] = isPost;
+    }
+}
@@ -28,7 +28,9 @@ package org.oracle.anf.util;
 import org.oracle.anf.ANF;
 import org.oracle.anf.FunKind;
 
+import java.util.ArrayDeque;
 import java.util.HashMap;
+import java.util.List;
 
 import static org.oracle.anf.ANF.*;
 
@@ -72,38 +74,68 @@ public class Labeler {
         return map.get(name.varId());
     }
 
+    // Nodes whose names are remapped and whose parts are being labeled.
+    private record LetDone(ANF.Var name, ANF.Term term) {}
+
+    private record LetRecDone(int funs) {}
+
+    private record FunctionDone(ANF.Var name, List<ANF.Var> parameters) {}
+
+    private record IfThenDone(ANF.Term cond) {}
+
+    /**
+     * Labels {@code expr}, numbering names in the order they are first met. Pending nodes are
+     * kept on an explicit stack, so deep nesting does not use Java stack.
+     */
     public ANF.Expression label(ANF.Expression expr) {
-            switch (expr) {
+        ArrayDeque<Object> pending = new ArrayDeque<>();
+        ArrayDeque<Object> done = new ArrayDeque<>();
+        pending.push(expr);
+        while (!pending.isEmpty()) {
+            switch (pending.pop()) {
                 case ANF.Let(var name, var term, var expbody) -> {
-                    return let(variable(remapVar(name)), remapTerm(term), label(expbody));
+                    var n = variable(remapVar(name));
+                    pending.push(new LetDone(n, remapTerm(term)));
+                    pending.push(expbody);
                 }
-                case ANF.Const c -> {
-                    return c;
+                case ANF.LetRec(var funs, var exprBody) -> {
+                    pending.push(new LetRecDone(funs.size()));
+                    pending.push(exprBody);
+                    for (int i = funs.size() - 1; i >= 0; i--) {
+                        pending.push(funs.get(i));
+                    }
                 }
-                case ANF.Var v -> {
-                    var rn = remapVar(v);
-                    return variable(rn);
+                case ANF.Function f -> {
+                    var n = variable(remapVar(f.name()));
+                    var ps = f.parameters().stream().map(this::remapParam).map(ANF::variable).toList();
+                    pending.push(new FunctionDone(n, ps));
+                    pending.push(f.expBody());
                 }
-                case ANF.FunApply fa -> {
-                    return (ANF.FunApply) remapTerm(fa);
+                case ANF.IfThen(var cond, var trueExp, var falseExp) -> {
+                    pending.push(new IfThenDone(remapTerm(cond)));
+                    pending.push(falseExp);
+                    pending.push(trueExp);
                 }
-                case ANF.LetRec(var funs, var exprBody) -> {
-                    var fs = funs.stream().map(this::labelFunction).toList();
-                    var exp = label(exprBody);
-                    return letRec(fs, exp);
+                case ANF.Term t -> done.push(remapTerm(t));
+                case LetDone(var name, var term) -> done.push(let(name, term, (ANF.Expression) done.pop()));
+                case LetRecDone(var count) -> {
+                    var exp = (ANF.Expression) done.pop();
+                    var fs = new ANF.Function[count];
+                    for (int i = count - 1; i >= 0; i--) {
+                        fs[i] = (ANF.Function) done.pop();
+                    }
+                    done.push(letRec(List.of(fs), exp));
                 }
-                case ANF.IfThen(var cond, var trueExp, var falseExp) -> {
-                    var new_cond = remapTerm(cond);
-                    return ifThen(new_cond, label(trueExp), label(falseExp));
+                case FunctionDone(var name, var ps) -> done.push(function(name, ps, (ANF.Expression) done.pop()));
+                case IfThenDone(var cond) -> {
+                    var falseExp = (ANF.Expression) done.pop();
+                    var trueExp = (ANF.Expression) done.pop();
+                    done.push(ifThen(cond, trueExp, falseExp));
                 }
+                default -> throw new IllegalStateException();
             }
-    }
-
-    private ANF.Function labelFunction(ANF.Function f) {
-       var n = variable(remapVar(f.name()));
-       var ps = f.parameters().stream().map(this::remapParam).map(ANF::variable).toList();
-       var exp = label(f.expBody());
-       return function(n, ps, exp);
+        }
+        return (ANF.Expression) done.pop();
     }
 
     private ANF.Term remapTerm(ANF.Term term) {
@@ -128,7 +160,7 @@ public class Labeler {
     }
 
     public String nextFunction(){
-        var res = fPrefix + pCount;
+        var res = fPrefix + fCount;
         fCount++;
         return res;
     }
@@ -0,0 +1,125 @@
+/*
+ * Copyright (c) 2024, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Oracle designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+
+package org.oracle.anf.util;
+
+import java.util.Arrays;
+import java.util.Objects;
+
+/**
+ * Open-addressing map from variable ids to dense indices {@code 0, 1, ...} in insertion order.
+ * <p>
+ * Keys, their hashes and indices are kept in parallel arrays probed linearly, so a lookup
+ * allocates nothing and touches no entry objects. Once filled, the table may be read from
+ * several threads as long as nothing is added.
+ */
+final class NameTable {
+
+    private static final int EMPTY = -1;
+
+    private Object[] keys;
+    private int[] hashes;
+    private int[] indices;
+    private int size;
+
+    NameTable(int expected) {
+        int capacity = Integer.highestOneBit(Math.max(8, expected * 2 - 1)) << 1;
+        keys = new Object[capacity];
+        hashes = new int[capacity];
+        indices = new int[capacity];
+        Arrays.fill(indices, EMPTY);
+    }
+
+    int size() {
+        return size;
+    }
+
+    /**
+     * {@return the index of {@code key}, or -1 if it was never added}
+     */
+    int find(Object key) {
+        int h = hash(key);
+        int mask = keys.length - 1;
+        for (int i = h & mask; ; i = (i + 1) & mask) {
+            int index = indices[i];
+            if (index == EMPTY) {
+                return EMPTY;
+            }
+            if (hashes[i] == h && Objects.equals(keys[i], key)) {
+                return index;
+            }
+        }
+    }
+
+    /**
+     * Adds {@code key} if absent.
+     *
+     * @return the index of {@code key}, which is {@link #size()} before the call if it was added
+     */
+    int add(Object key) {
+        int h = hash(key);
+        int mask = keys.length - 1;
+        int i = h & mask;
+        for (int index; (index = indices[i]) != EMPTY; i = (i + 1) & mask) {
+            if (hashes[i] == h && Objects.equals(keys[i], key)) {
+                return index;
+            }
+        }
+        keys[i] = key;
+        hashes[i] = h;
+        indices[i] = size;
+        if (++size * 2 > keys.length) {
+            grow();
+        }
+        return size - 1;
+    }
+
+    private void grow() {
+        var oldKeys = keys;
+        var oldHashes = hashes;
+        var oldIndices = indices;
+        keys = new Object[oldKeys.length * 2];
+        hashes = new int[keys.length];
+        indices = new int[keys.length];
+        Arrays.fill(indices, EMPTY);
+        int mask = keys.length - 1;
+        for (int j = 0; j < oldKeys.length; j++) {
+            if (oldIndices[j] != EMPTY) {
+                int i = oldHashes[j] & mask;
+                while (indices[i] != EMPTY) {
+                    i = (i + 1) & mask;
+                }
+                keys[i] = oldKeys[j];
+                hashes[i] = oldHashes[j];
+                indices[i] = oldIndices[j];
+            }
+        }
+    }
+
+    private static int hash(Object key) {
+        int h = Objects.hashCode(key);
+        return h ^ (h >>> 16);
+    }
+}
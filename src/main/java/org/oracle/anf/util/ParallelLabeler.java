@@ -0,0 +1,309 @@
+/*
+ * Copyright (c) 2024, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Oracle designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+
+package org.oracle.anf.util;
+
+import org.oracle.anf.ANF;
+import org.oracle.anf.FunKind;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+import static org.oracle.anf.ANF.*;
+
+/**
+ * Labels an expression like a fresh {@link Labeler}, rebuilding the bodies of {@link ANF.LetRec}
+ * functions as separate fork-join tasks.
+ * <p>
+ * Labels are fixed before any task runs: a sequential pre-pass visits the names in the order
+ * {@link Labeler} does and numbers each variable id on its first occurrence, so every
+ * {@code v_} and {@code p_} counter value is known up front and the result is identical to the
+ * sequential one whatever the parallelism. The pre-pass only interns ids into a {@link NameTable};
+ * the label and its {@link ANF.Var} are created once per distinct name and shared by all
+ * occurrences. Neither pass recurses on the Java stack for nested lets, conditionals or
+ * functions.
+ * <p>
+ * Numbering is not split into tasks with per-scope counter offsets: an id shared between
+ * scopes, such as a function name or a captured variable, takes the number of its first
+ * occurrence anywhere in the program, which only a sequential walk can know. Only functions
+ * whose bodies have at least {@value #FORK_THRESHOLD} nodes, nested in fewer than
+ * {@value #MAX_FORK_DEPTH} other tasks, are rebuilt in tasks of their own; the others are
+ * rebuilt by the task that reaches them.
+ */
+public final class ParallelLabeler {
+
+    /**
+     * The number of nodes a function body needs before it is rebuilt in a forked task.
+     */
+    static final int FORK_THRESHOLD = 256;
+
+    /**
+     * The most function tasks nested in one another. A join may run the joined task on the
+     * joining thread's stack, so this bounds the stack a deep chain of functions uses.
+     */
+    static final int MAX_FORK_DEPTH = 32;
+
+    private final ForkJoinPool pool;
+
+    public ParallelLabeler() {
+        this(ForkJoinPool.commonPool());
+    }
+
+    public ParallelLabeler(ForkJoinPool pool) {
+        this.pool = pool;
+    }
+
+    public ANF.Expression label(ANF.Expression expr) {
+        var labeling = new Labeling();
+        labeling.number(expr);
+        return pool.invoke(labeling.new BodyTask(expr));
+    }
+
+    private static final class Labeling {
+        final NameTable table = new NameTable(64);
+        ANF.Var[] vars = new ANF.Var[64];
+        int pCount = 0;
+        int vCount = 0;
+        // Functions whose bodies reach FORK_THRESHOLD nodes.
+        final Set<ANF.Function> large = Collections.newSetFromMap(new IdentityHashMap<>());
+
+        private void name(ANF.Var v, boolean parameter) {
+            int size = table.size();
+            int index = table.add(v.varId());
+            if (index == size) {
+                if (index == vars.length) {
+                    vars = Arrays.copyOf(vars, vars.length * 2);
+                }
+                vars[index] = variable(parameter ? Labeler.pPrefix + pCount++ : Labeler.vPrefix + vCount++);
+            }
+        }
+
+        // Marks the end of a function body in the pre-pass, with the node count at its start.
+        private record FunctionEnd(ANF.Function f, int start) {}
+
+        /**
+         * Numbers every variable id in the order {@link Labeler#label} first meets it, and finds
+         * the function bodies large enough to fork.
+         */
+        void number(ANF.Expression expr) {
+            ArrayDeque<Object> pending = new ArrayDeque<>();
+            pending.push(expr);
+            int nodes = 0;
+            while (!pending.isEmpty()) {
+                var node = pending.pop();
+                if (node instanceof FunctionEnd(var f, var start)) {
+                    if (nodes - start >= FORK_THRESHOLD) {
+                        large.add(f);
+                    }
+                    continue;
+                }
+                nodes++;
+                switch (node) {
+                    case ANF.Let(var name, var term, var expBody) -> {
+                        name(name, false);
+                        pending.push(expBody);
+                        pending.push(term);
+                    }
+                    case ANF.LetRec(var funs, var combinedBody) -> {
+                        pending.push(combinedBody);
+                        for (int i = funs.size() - 1; i >= 0; i--) {
+                            pending.push(funs.get(i));
+                        }
+                    }
+                    case ANF.Function f -> {
+                        name(f.name(), false);
+                        for (ANF.Var p : f.parameters()) {
+                            name(p, true);
+                        }
+                        pending.push(new FunctionEnd(f, nodes));
+                        pending.push(f.expBody());
+                    }
+                    case ANF.IfThen(var cond, var trueExp, var falseExp) -> {
+                        pending.push(falseExp);
+                        pending.push(trueExp);
+                        pending.push(cond);
+                    }
+                    case ANF.FunApply fa -> {
+                        var args = fa.arguments();
+                        for (int i = args.size() - 1; i >= 0; i--) {
+                            pending.push(args.get(i));
+                        }
+                        if (!fa.fc().equals(FunKind.PRIMITIVE)) {
+                            pending.push(fa.name());
+                        }
+                    }
+                    case ANF.Var v -> name(v, false);
+                    case ANF.Const _ -> {
+                    }
+                    default -> throw new IllegalStateException();
+                }
+            }
+        }
+
+        private ANF.Var var(ANF.Var v) {
+            return vars[table.find(v.varId())];
+        }
+
+        private ANF.Term term(ANF.Term term) {
+            return switch (term) {
+                case ANF.Var v -> var(v);
+                case ANF.Const c -> c;
+                case ANF.FunApply fa -> {
+                    List<ANF.Term> args = new ArrayList<>(fa.arguments().size());
+                    for (ANF.Term arg : fa.arguments()) {
+                        args.add(term(arg));
+                    }
+                    yield funApply(fa.fc().equals(FunKind.PRIMITIVE) ? fa.name() : term(fa.name()), args, fa.fc());
+                }
+            };
+        }
+
+        /**
+         * A node whose parts have been rebuilt, with the tasks rebuilding the functions of a LetRec.
+         */
+        private record Rebuild(ANF.Expression node, List<FunctionTask> tasks) {}
+
+        /**
+         * A function whose body has been rebuilt by the task that reached it.
+         */
+        private record RebuildFunction(ANF.Function f) {}
+
+        /**
+         * Rebuilds {@code expr} from the numbered names, forking a task per large LetRec function
+         * while fewer than {@value ParallelLabeler#MAX_FORK_DEPTH} tasks enclose it. Other
+         * function bodies are rebuilt on the explicit stack.
+         *
+         * @param depth the number of function tasks enclosing {@code expr}
+         */
+        ANF.Expression build(ANF.Expression expr, int depth) {
+            ArrayDeque<Object> pending = new ArrayDeque<>();
+            ArrayDeque<Object> done = new ArrayDeque<>();
+            pending.push(expr);
+            while (!pending.isEmpty()) {
+                switch (pending.pop()) {
+                    case ANF.Let l -> {
+                        pending.push(new Rebuild(l, null));
+                        pending.push(l.expBody());
+                    }
+                    case ANF.LetRec r -> {
+                        // A null task stands for a function rebuilt here, its result on the done stack.
+                        List<FunctionTask> tasks = new ArrayList<>(r.funs().size());
+                        for (ANF.Function f : r.funs()) {
+                            FunctionTask task = null;
+                            if (depth < MAX_FORK_DEPTH && large.contains(f)) {
+                                task = new FunctionTask(f, depth + 1);
+                                task.fork();
+                            }
+                            tasks.add(task);
+                        }
+                        pending.push(new Rebuild(r, tasks));
+                        pending.push(r.combinedBody());
+                        for (int i = tasks.size() - 1; i >= 0; i--) {
+                            if (tasks.get(i) == null) {
+                                var f = r.funs().get(i);
+                                pending.push(new RebuildFunction(f));
+                                pending.push(f.expBody());
+                            }
+                        }
+                    }
+                    case ANF.IfThen i -> {
+                        pending.push(new Rebuild(i, null));
+                        pending.push(i.falseExp());
+                        pending.push(i.trueExp());
+                    }
+                    case Rebuild(ANF.Let l, var _) ->
+                            done.push(let(var(l.name()), term(l.term()), (ANF.Expression) done.pop()));
+                    case Rebuild(ANF.LetRec _, var tasks) -> {
+                        var body = (ANF.Expression) done.pop();
+                        var funs = new ANF.Function[tasks.size()];
+                        for (int i = funs.length - 1; i >= 0; i--) {
+                            if (tasks.get(i) == null) {
+                                funs[i] = (ANF.Function) done.pop();
+                            }
+                        }
+                        for (int i = 0; i < funs.length; i++) {
+                            if (tasks.get(i) != null) {
+                                funs[i] = tasks.get(i).join();
+                            }
+                        }
+                        done.push(letRec(List.of(funs), body));
+                    }
+                    case Rebuild(ANF.IfThen i, var _) -> {
+                        var falseExp = (ANF.Expression) done.pop();
+                        var trueExp = (ANF.Expression) done.pop();
+                        done.push(ifThen(term(i.cond()), trueExp, falseExp));
+                    }
+                    case RebuildFunction(var f) -> done.push(rebuilt(f, (ANF.Expression) done.pop()));
+                    case ANF.Term t -> done.push(term(t));
+                    default -> throw new IllegalStateException();
+                }
+            }
+            return (ANF.Expression) done.pop();
+        }
+
+        private ANF.Function rebuilt(ANF.Function f, ANF.Expression body) {
+            List<ANF.Var> params = new ArrayList<>(f.parameters().size());
+            for (ANF.Var p : f.parameters()) {
+                params.add(var(p));
+            }
+            return function(var(f.name()), params, body);
+        }
+
+        final class BodyTask extends RecursiveTask<ANF.Expression> {
+            private final ANF.Expression expr;
+
+            BodyTask(ANF.Expression expr) {
+                this.expr = expr;
+            }
+
+            @Override
+            protected ANF.Expression compute() {
+                return build(expr, 0);
+            }
+        }
+
+        final class FunctionTask extends RecursiveTask<ANF.Function> {
+            private final ANF.Function f;
+            private final int depth;
+
+            FunctionTask(ANF.Function f, int depth) {
+                this.f = f;
+                this.depth = depth;
+            }
+
+            @Override
+            protected ANF.Function compute() {
+                return rebuilt(f, build(f.expBody(), depth));
+            }
+        }
+    }
+}
@@ -0,0 +1,190 @@
+/*
+ * Copyright (c) 2024, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Oracle designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+
+package org.oracle.anf.util;
+
+import org.oracle.anf.ANF;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Function;
+
+/**
+ * Runs a pipeline of rewrites over an {@link ANF.Expression}.
+ * <p>
+ * Local passes are rules rewriting a single expression, given with its parts already
+ * rewritten. They are fused into one bottom-up {@link Traverse#rewrite} of the program: at every
+ * node the enabled rules are applied in registration order, repeatedly, until none of them
+ * changes the node or {@link #maxIterations} rounds have run. A rule that does not apply must
+ * return its argument itself. Program passes, such as {@link Labeler#label}, need the whole
+ * program and run after the fused traversal, in registration order.
+ * <p>
+ * Every pass can be disabled by name and keeps the time spent in it and the number of times it
+ * changed a node. Instances are not thread safe.
+ */
+public final class PassManager {
+
+    private static final class Pass {
+        final String name;
+        final Function<ANF.Expression, ANF.Expression> rewrite;
+        final boolean local;
+        boolean enabled = true;
+        long nanos;
+        long rewrites;
+
+        Pass(String name, Function<ANF.Expression, ANF.Expression> rewrite, boolean local) {
+            this.name = name;
+            this.rewrite = rewrite;
+            this.local = local;
+        }
+    }
+
+    /**
+     * Time spent in a pass and the number of times it changed a node, or the program for a program pass.
+     */
+    public record Statistics(String name, boolean enabled, Duration time, long rewrites) {}
+
+    public static final int DEFAULT_MAX_ITERATIONS = 16;
+
+    private final List<Pass> passes = new ArrayList<>();
+    private final int maxIterations;
+    private Pass[] localPasses;
+
+    public PassManager() {
+        this(DEFAULT_MAX_ITERATIONS);
+    }
+
+    public PassManager(int maxIterations) {
+        if (maxIterations < 1) {
+            throw new IllegalArgumentException("maxIterations must be positive: " + maxIterations);
+        }
+        this.maxIterations = maxIterations;
+    }
+
+    /**
+     * Registers a local rule.
+     */
+    public PassManager addLocal(String name, Function<ANF.Expression, ANF.Expression> rule) {
+        return add(new Pass(name, rule, true));
+    }
+
+    /**
+     * Registers a pass over the whole program.
+     */
+    public PassManager addProgram(String name, Function<ANF.Expression, ANF.Expression> pass) {
+        return add(new Pass(name, pass, false));
+    }
+
+    private PassManager add(Pass pass) {
+        if (passes.stream().anyMatch(p -> p.name.equals(pass.name))) {
+            throw new IllegalArgumentException("Duplicate pass " + pass.name);
+        }
+        passes.add(pass);
+        localPasses = null;
+        return this;
+    }
+
+    public PassManager enable(String name) {
+        pass(name).enabled = true;
+        localPasses = null;
+        return this;
+    }
+
+    public PassManager disable(String name) {
+        pass(name).enabled = false;
+        localPasses = null;
+        return this;
+    }
+
+    public boolean isEnabled(String name) {
+        return pass(name).enabled;
+    }
+
+    public ANF.Expression run(ANF.Expression expr) {
+        if (localPasses == null) {
+            localPasses = passes.stream().filter(p -> p.local && p.enabled).toArray(Pass[]::new);
+        }
+        if (localPasses.length > 0) {
+            expr = Traverse.rewrite(this::rewriteLocally, expr);
+        }
+        for (Pass p : passes) {
+            if (!p.local && p.enabled) {
+                long start = System.nanoTime();
+                var res = p.rewrite.apply(expr);
+                p.nanos += System.nanoTime() - start;
+                if (res != expr) {
+                    p.rewrites++;
+                }
+                expr = res;
+            }
+        }
+        return expr;
+    }
+
+    private ANF.Expression rewriteLocally(ANF.Expression expr) {
+        for (int i = 0; i < maxIterations; i++) {
+            var before = expr;
+            for (Pass p : localPasses) {
+                long start = System.nanoTime();
+                var res = p.rewrite.apply(expr);
+                p.nanos += System.nanoTime() - start;
+                if (res != expr) {
+                    p.rewrites++;
+                    expr = res;
+                }
+            }
+            if (expr == before) {
+                break;
+            }
+        }
+        return expr;
+    }
+
+    /**
+     * {@return the statistics of every pass, in registration order}
+     */
+    public List<Statistics> statistics() {
+        return passes.stream()
+                .map(p -> new Statistics(p.name, p.enabled, Duration.ofNanos(p.nanos), p.rewrites))
+                .toList();
+    }
+
+    public void resetStatistics() {
+        for (Pass p : passes) {
+            p.nanos = 0;
+            p.rewrites = 0;
+        }
+    }
+
+    private Pass pass(String name) {
+        for (Pass p : passes) {
+            if (p.name.equals(name)) {
+                return p;
+            }
+        }
+        throw new IllegalArgumentException("Unknown pass " + name);
+    }
+}
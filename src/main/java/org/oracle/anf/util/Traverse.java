@@ -27,58 +27,206 @@ package org.oracle.anf.util;
 
 import org.oracle.anf.ANF;
 
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.function.Function;
 
 import static org.oracle.anf.ANF.*;
 
+/**
+ * Bottom-up rewrite of an {@link ANF.Expression}.
+ * <p>
+ * {@code f} is applied to every variable and constant in expression position, to every
+ * variable term (bound terms, conditions, arguments and the names of applications), and to
+ * every {@link ANF.Let} after its term and body were rewritten. Applications, LetRecs and
+ * IfThens are rebuilt from their rewritten parts.
+ * <p>
+ * The traversal keeps its pending work on explicit stacks instead of the Java stack, so
+ * arbitrarily long Let chains traverse in bounded stack. A node whose parts all came back
+ * unchanged is returned as is, so an identity rewrite allocates nothing per node.
+ */
 public class Traverse {
 
+    private static final byte EXPRESSION = 0;
+    private static final byte TERM = 1;
+    private static final byte ARGUMENT = 2;
+    private static final byte FUNCTION = 3;
+    private static final byte BUILD = 4;
 
     public static ANF.Expression traverse(Function<ANF.Expression, ANF.Expression> f, ANF.Expression expr) {
+        return (ANF.Expression) new Traversal(f, false).run(expr);
+    }
+
+    /**
+     * Like {@link #traverse}, but applies {@code f} to every expression and term, each after its parts.
+     * {@code f} must map terms to terms.
+     */
+    public static ANF.Expression rewrite(Function<ANF.Expression, ANF.Expression> f, ANF.Expression expr) {
+        return (ANF.Expression) new Traversal(f, true).run(expr);
+    }
+
+    private static final class Traversal {
+        private final Function<ANF.Expression, ANF.Expression> f;
+        private final boolean everyNode;
+        private Object[] work = new Object[64];
+        private byte[] modes = new byte[64];
+        private int top;
+        private Object[] results = new Object[64];
+        private int resultTop;
+
+        Traversal(Function<ANF.Expression, ANF.Expression> f, boolean everyNode) {
+            this.f = f;
+            this.everyNode = everyNode;
+        }
 
-        return switch (expr) {
-            case ANF.Let(var name, var term, var expbody) -> {
-               var res = let(name, traverseTerm(f, term), traverse(f, expbody));
-               yield f.apply(res);
+        Object run(ANF.Expression expr) {
+            push(expr, EXPRESSION);
+            while (top > 0) {
+                top--;
+                Object node = work[top];
+                byte mode = modes[top];
+                work[top] = null;
+                switch (mode) {
+                    case EXPRESSION -> visit((ANF.Expression) node);
+                    case TERM -> {
+                        switch (node) {
+                            case ANF.Var v -> result(f.apply(v));
+                            case ANF.FunApply fa -> visit(fa);
+                            default -> result(everyNode ? f.apply((ANF.Const) node) : node);
+                        }
+                    }
+                    case ARGUMENT -> result(node instanceof ANF.Var v ? f.apply(v) : node);
+                    case FUNCTION -> {
+                        push(node, BUILD);
+                        push(((ANF.Function) node).expBody(), EXPRESSION);
+                    }
+                    default -> build(node);
+                }
             }
-            case ANF.Const c -> f.apply(c);
-            case ANF.Var v -> f.apply(v);
-            case ANF.FunApply(var name, var args, var fc) -> {
-                List<ANF.Term> args_ = args.stream()
-                        .map(a -> {
-                            if (a instanceof ANF.Var v) {
-                               return f.apply(v);
-                            } else {
-                                return a;
-                            }
-                        })
-                        .map(ANF.Term.class::cast)
-                        .toList();
-                yield funApply(name, args_, fc);
+            return results[0];
+        }
+
+        private void visit(ANF.Expression expr) {
+            switch (expr) {
+                case ANF.Let(_, var term, var expBody) -> {
+                    push(expr, BUILD);
+                    push(expBody, EXPRESSION);
+                    push(term, TERM);
+                }
+                case ANF.Const c -> result(f.apply(c));
+                case ANF.Var v -> result(f.apply(v));
+                case ANF.FunApply(var name, var args, _) -> {
+                    push(expr, BUILD);
+                    byte mode = everyNode ? TERM : ARGUMENT;
+                    for (int i = args.size() - 1; i >= 0; i--) {
+                        push(args.get(i), mode);
+                    }
+                    push(name, mode);
+                }
+                case ANF.LetRec(var funs, var exprBody) -> {
+                    push(expr, BUILD);
+                    for (int i = funs.size() - 1; i >= 0; i--) {
+                        push(funs.get(i), FUNCTION);
+                    }
+                    push(exprBody, EXPRESSION);
+                }
+                case ANF.IfThen(var cond, var trueExp, var falseExp) -> {
+                    push(expr, BUILD);
+                    push(falseExp, EXPRESSION);
+                    push(trueExp, EXPRESSION);
+                    push(cond, TERM);
+                }
             }
-            case ANF.LetRec(var funs, var exprBody) -> {
-                var body_expr = traverse(f, exprBody);
-                var funs2 = funs.stream().map(anf_fun -> traverseFunction(f, anf_fun)).toList();
-                yield letRec(funs2, body_expr);
+        }
+
+        /**
+         * Replaces the results of {@code node}'s parts, in visiting order, with the rewritten node.
+         */
+        private void build(Object node) {
+            switch (node) {
+                case ANF.Let l -> {
+                    var expBody = (ANF.Expression) pop();
+                    var term = (ANF.Term) pop();
+                    result(f.apply(term == l.term() && expBody == l.expBody() ? l : let(l.name(), term, expBody)));
+                }
+                case ANF.FunApply fa -> {
+                    var args = fa.arguments();
+                    int base = resultTop - args.size();
+                    var name = (ANF.Term) results[base - 1];
+                    boolean changed = name != fa.name();
+                    for (int i = 0; i < args.size() && !changed; i++) {
+                        changed = results[base + i] != args.get(i);
+                    }
+                    ANF.FunApply res = fa;
+                    if (changed) {
+                        List<ANF.Term> args_ = new ArrayList<>(args.size());
+                        for (int i = 0; i < args.size(); i++) {
+                            args_.add((ANF.Term) results[base + i]);
+                        }
+                        res = funApply(name, args_, fa.fc());
+                    }
+                    Arrays.fill(results, base - 1, resultTop, null);
+                    resultTop = base - 1;
+                    result(everyNode ? f.apply(res) : res);
+                }
+                case ANF.LetRec lr -> {
+                    var funs = lr.funs();
+                    int base = resultTop - funs.size();
+                    var body = (ANF.Expression) results[base - 1];
+                    boolean changed = body != lr.combinedBody();
+                    for (int i = 0; i < funs.size() && !changed; i++) {
+                        changed = results[base + i] != funs.get(i);
+                    }
+                    ANF.Expression res = lr;
+                    if (changed) {
+                        List<ANF.Function> funs_ = new ArrayList<>(funs.size());
+                        for (int i = 0; i < funs.size(); i++) {
+                            funs_.add((ANF.Function) results[base + i]);
+                        }
+                        res = letRec(funs_, body);
+                    }
+                    Arrays.fill(results, base - 1, resultTop, null);
+                    resultTop = base - 1;
+                    result(everyNode ? f.apply(res) : res);
+                }
+                case ANF.IfThen it -> {
+                    var falseExp = (ANF.Expression) pop();
+                    var trueExp = (ANF.Expression) pop();
+                    var cond = (ANF.Term) pop();
+                    ANF.Expression res = cond == it.cond() && trueExp == it.trueExp() && falseExp == it.falseExp()
+                            ? it
+                            : ifThen(cond, trueExp, falseExp);
+                    result(everyNode ? f.apply(res) : res);
+                }
+                case ANF.Function fn -> {
+                    var expBody = (ANF.Expression) pop();
+                    result(expBody == fn.expBody() ? fn : function(fn.name(), fn.parameters(), expBody));
+                }
+                default -> throw new IllegalStateException("Unexpected node " + node);
             }
-            case ANF.IfThen(var cond, var trueExp, var falseExp) -> {
-                var trueExp_ = traverse(f, trueExp);
-                var falseExp_ = traverse(f, falseExp);
-                yield ifThen(cond, trueExp_, falseExp_);
+        }
+
+        private void push(Object node, byte mode) {
+            if (top == work.length) {
+                work = Arrays.copyOf(work, top * 2);
+                modes = Arrays.copyOf(modes, top * 2);
             }
-        };
-    }
+            work[top] = node;
+            modes[top++] = mode;
+        }
 
-    private static ANF.Function traverseFunction(Function<ANF.Expression, ANF.Expression> f, ANF.Function anf_f) {
-        return function(anf_f.name(), anf_f.parameters(), traverse(f, anf_f.expBody()));
-    }
+        private void result(Object value) {
+            if (resultTop == results.length) {
+                results = Arrays.copyOf(results, resultTop * 2);
+            }
+            results[resultTop++] = value;
+        }
 
-    private static ANF.Term traverseTerm(Function<ANF.Expression, ANF.Expression> f, ANF.Term anf_t) {
-        return switch (anf_t) {
-            case ANF.Var v -> (ANF.Term) f.apply(v);
-            case ANF.FunApply fa -> (ANF.Term) traverse(f, fa);
-            default -> anf_t;
-        };
+        private Object pop() {
+            var value = results[--resultTop];
+            results[resultTop] = null;
+            return value;
+        }
     }
 }
@@ -0,0 +1,386 @@
+/*
+ * Copyright (c) 2024, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Oracle designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+
+import java.lang.reflect.code.Block;
+import java.lang.reflect.code.Value;
+import java.lang.reflect.code.op.CoreOp;
+import java.lang.reflect.code.type.FunctionType;
+import java.lang.reflect.code.type.JavaType;
+import java.util.*;
+
+import org.oracle.anf.ANF;
+import org.oracle.anf.FunKind;
+
+import static org.oracle.anf.ANF.*;
+
+/**
+ * Generates random but valid control flow graphs and emits them either as a
+ * lowered, SSA {@link CoreOp.FuncOp} or as the ANF program the transform is
+ * expected to produce for it (one function per block, nested along the dominator tree).
+ * <p>
+ * Every block takes a single {@code int} parameter {@code x}, computes {@code y = x - 1}
+ * and passes {@code y} to its successors, so all values flow through block parameters.
+ */
+public final class CodeModelGenerator {
+
+    public enum Shape {
+        /** A deep dominator chain, every block branching to the next one or to a shared exit. */
+        CHAIN,
+        /** A wide dominator tree, every region dispatching to {@code fanOut} sub-regions. */
+        FAN,
+        /** A sequence of diamonds whose arms may branch into each other, forming irreducible cycles. */
+        DIAMOND
+    }
+
+    public record Config(int blocks, int fanOut, int loopDepth, Shape shape, long seed) {
+        public Config {
+            if (blocks < 3) {
+                throw new IllegalArgumentException("At least three blocks are required");
+            }
+            if (fanOut < 2) {
+                throw new IllegalArgumentException("Fan-out must be at least two");
+            }
+            if (loopDepth < 0) {
+                throw new IllegalArgumentException("Negative loop depth");
+            }
+        }
+    }
+
+    private final Config config;
+    private final Random random;
+    // Successors of each block: none for a return, one for a branch, two for a conditional branch.
+    private final List<int[]> successors = new ArrayList<>();
+    private final List<Integer> thresholds = new ArrayList<>();
+    private int[] idoms;
+
+    private CodeModelGenerator(Config config) {
+        this.config = config;
+        this.random = new Random(config.seed());
+    }
+
+    public static CodeModelGenerator generate(Config config) {
+        var g = new CodeModelGenerator(config);
+        switch (config.shape()) {
+            case CHAIN -> g.chain();
+            case FAN -> g.fan();
+            case DIAMOND -> g.diamonds();
+        }
+        g.loops();
+        g.idoms = g.dominators();
+        return g;
+    }
+
+    public int blockCount() {
+        return successors.size();
+    }
+
+    public int dominatorDepth() {
+        int max = 0;
+        for (int b = 0; b < idoms.length; b++) {
+            int d = 0;
+            for (int i = b; i != 0; i = idoms[i]) {
+                d++;
+            }
+            max = Math.max(max, d);
+        }
+        return max;
+    }
+
+    private int newBlock() {
+        successors.add(new int[0]);
+        thresholds.add(random.nextInt(16));
+        return successors.size() - 1;
+    }
+
+    private void chain() {
+        int length = config.blocks() - 1;
+        for (int i = 0; i < length; i++) {
+            newBlock();
+        }
+        int exit = newBlock();
+        for (int i = 0; i < length - 1; i++) {
+            successors.set(i, new int[]{i + 1, exit});
+        }
+        successors.set(length - 1, new int[]{exit});
+    }
+
+    private void fan() {
+        int f = config.fanOut();
+        ArrayDeque<Integer> regions = new ArrayDeque<>();
+        regions.add(newBlock());
+        while (!regions.isEmpty()) {
+            int head = regions.poll();
+            // f children reached through a cascade of f - 1 tests, the head being the first test.
+            if (blockCount() + f + f - 2 > config.blocks()) {
+                continue;
+            }
+            int[] children = new int[f];
+            for (int i = 0; i < f; i++) {
+                children[i] = newBlock();
+            }
+            int test = head;
+            for (int i = 0; i < f - 2; i++) {
+                int next = newBlock();
+                successors.set(test, new int[]{children[i], next});
+                test = next;
+            }
+            successors.set(test, new int[]{children[f - 2], children[f - 1]});
+            List<Integer> shuffled = new ArrayList<>();
+            for (int c : children) {
+                shuffled.add(c);
+            }
+            Collections.shuffle(shuffled, random);
+            regions.addAll(shuffled);
+        }
+    }
+
+    private void diamonds() {
+        int head = newBlock();
+        while (blockCount() + 3 <= config.blocks()) {
+            int left = newBlock();
+            int right = newBlock();
+            int join = newBlock();
+            successors.set(head, new int[]{left, right});
+            if (random.nextInt(3) == 0) {
+                // Both arms are entered from the head and branch to each other: an irreducible cycle.
+                successors.set(left, new int[]{right, join});
+                successors.set(right, new int[]{left, join});
+            } else {
+                successors.set(left, new int[]{join});
+                successors.set(right, new int[]{join});
+            }
+            head = join;
+        }
+    }
+
+    /**
+     * Nests {@code loopDepth} loops along an acyclic path from the entry block.
+     * Each loop gets a latch block on a forward edge of the path that branches back to the loop header.
+     * The depth is clamped to what the path can hold.
+     * <p>
+     * A branch back is only taken while {@code y} is above the block's threshold, and
+     * {@code y} decreases in every block, so every cycle terminates.
+     */
+    private void loops() {
+        List<Integer> spine = new ArrayList<>();
+        List<Integer> spineSlots = new ArrayList<>();
+        BitSet seen = new BitSet();
+        int b = 0;
+        while (true) {
+            seen.set(b);
+            spine.add(b);
+            int[] s = successors.get(b);
+            int slot = 0;
+            while (slot < s.length && seen.get(s[slot])) {
+                slot++;
+            }
+            if (slot == s.length) {
+                break;
+            }
+            spineSlots.add(slot);
+            b = s[slot];
+        }
+        int last = spine.size() - 1;
+        for (int k = 0; k < config.loopDepth(); k++) {
+            int header = k + 1;
+            int edge = last - 1 - k;
+            if (header > edge) {
+                break;
+            }
+            int src = spine.get(edge);
+            int dst = spine.get(edge + 1);
+            int latch = newBlock();
+            successors.set(latch, new int[]{spine.get(header), dst});
+            successors.get(src)[spineSlots.get(edge)] = latch;
+        }
+    }
+
+    private int[] dominators() {
+        int n = blockCount();
+        List<List<Integer>> preds = new ArrayList<>();
+        for (int i = 0; i < n; i++) {
+            preds.add(new ArrayList<>());
+        }
+        for (int i = 0; i < n; i++) {
+            for (int s : successors.get(i)) {
+                preds.get(s).add(i);
+            }
+        }
+
+        // Iterative post order from the entry block.
+        int[] postNumber = new int[n];
+        Arrays.fill(postNumber, -1);
+        List<Integer> postOrder = new ArrayList<>();
+        BitSet visited = new BitSet();
+        ArrayDeque<int[]> stack = new ArrayDeque<>();
+        stack.push(new int[]{0, 0});
+        visited.set(0);
+        while (!stack.isEmpty()) {
+            int[] top = stack.peek();
+            int[] s = successors.get(top[0]);
+            if (top[1] < s.length) {
+                int next = s[top[1]++];
+                if (!visited.get(next)) {
+                    visited.set(next);
+                    stack.push(new int[]{next, 0});
+                }
+            } else {
+                stack.pop();
+                postNumber[top[0]] = postOrder.size();
+                postOrder.add(top[0]);
+            }
+        }
+
+        // Cooper, Harvey and Kennedy's iterative algorithm.
+        int[] idom = new int[n];
+        Arrays.fill(idom, -1);
+        idom[0] = 0;
+        boolean changed = true;
+        while (changed) {
+            changed = false;
+            for (int i = postOrder.size() - 1; i >= 0; i--) {
+                int block = postOrder.get(i);
+                if (block == 0) {
+                    continue;
+                }
+                int newIdom = -1;
+                for (int p : preds.get(block)) {
+                    if (idom[p] == -1) {
+                        continue;
+                    }
+                    if (newIdom == -1) {
+                        newIdom = p;
+                    } else {
+                        int a = p;
+                        int c = newIdom;
+                        while (a != c) {
+                            while (postNumber[a] < postNumber[c]) {
+                                a = idom[a];
+                            }
+                            while (postNumber[c] < postNumber[a]) {
+                                c = idom[c];
+                            }
+                        }
+                        newIdom = a;
+                    }
+                }
+                if (idom[block] != newIdom) {
+                    idom[block] = newIdom;
+                    changed = true;
+                }
+            }
+        }
+        return idom;
+    }
+
+    /**
+     * {@return the CFG as a lowered, SSA function of type {@code (int)int}}
+     */
+    public CoreOp.FuncOp funcOp(String name) {
+        return CoreOp.func(name, FunctionType.functionType(JavaType.INT, JavaType.INT)).body(entry -> {
+            List<Block.Builder> blocks = new ArrayList<>();
+            blocks.add(entry);
+            for (int i = 1; i < blockCount(); i++) {
+                blocks.add(entry.block(JavaType.INT));
+            }
+            for (int i = 0; i < blockCount(); i++) {
+                Block.Builder bb = blocks.get(i);
+                Value x = bb.parameters().getFirst();
+                Value y = bb.op(CoreOp.sub(x, bb.op(CoreOp.constant(JavaType.INT, 1))));
+                int[] s = successors.get(i);
+                switch (s.length) {
+                    case 0 -> bb.op(CoreOp._return(y));
+                    case 1 -> bb.op(CoreOp.branch(blocks.get(s[0]).successor(y)));
+                    default -> {
+                        Value c = bb.op(CoreOp.gt(y, bb.op(CoreOp.constant(JavaType.INT, thresholds.get(i)))));
+                        bb.op(CoreOp.conditionalBranch(c, blocks.get(s[0]).successor(y), blocks.get(s[1]).successor(y)));
+                    }
+                }
+            }
+        });
+    }
+
+    /**
+     * {@return the CFG as an ANF program, calling the entry block function with {@code arg}}
+     */
+    public ANF.LetRec anf(int arg) {
+        int n = blockCount();
+        List<List<Integer>> children = new ArrayList<>();
+        for (int i = 0; i < n; i++) {
+            children.add(new ArrayList<>());
+        }
+        for (int i = 1; i < n; i++) {
+            if (idoms[i] >= 0) {
+                children.get(idoms[i]).add(i);
+            }
+        }
+
+        // Build functions bottom-up along the dominator tree without recursing.
+        ANF.Function[] functions = new ANF.Function[n];
+        ArrayDeque<int[]> stack = new ArrayDeque<>();
+        stack.push(new int[]{0, 0});
+        while (!stack.isEmpty()) {
+            int[] top = stack.peek();
+            List<Integer> cs = children.get(top[0]);
+            if (top[1] < cs.size()) {
+                stack.push(new int[]{cs.get(top[1]++), 0});
+            } else {
+                stack.pop();
+                ANF.Expression body = blockBody(top[0]);
+                if (!cs.isEmpty()) {
+                    body = letRec(cs.stream().map(c -> functions[c]).toList(), body);
+                }
+                functions[top[0]] = function(blockName(top[0]), List.of(variable("x" + top[0])), body);
+            }
+        }
+        return letRec(List.of(functions[0]), funApply(blockName(0), List.of(constant(arg)), FunKind.FC));
+    }
+
+    private ANF.Expression blockBody(int b) {
+        var x = variable("x" + b);
+        var y = variable("y" + b);
+        int[] s = successors.get(b);
+        ANF.Expression tail = switch (s.length) {
+            case 0 -> y;
+            case 1 -> funApply(blockName(s[0]), List.of(y), FunKind.FC);
+            default -> {
+                var c = variable("c" + b);
+                yield let(c, primitive("gt", y, constant(thresholds.get(b))),
+                        ifThen(c,
+                                funApply(blockName(s[0]), List.of(y), FunKind.FC),
+                                funApply(blockName(s[1]), List.of(y), FunKind.FC)));
+            }
+        };
+        return let(y, primitive("sub", x, constant(1)), tail);
+    }
+
+    private static ANF.Var blockName(int b) {
+        return variable("b" + b);
+    }
+
+    private static ANF.FunApply primitive(String name, ANF.Term a, ANF.Term b) {
+        return funApply(variable(name), List.of(a, b), FunKind.PRIMITIVE);
+    }
+}
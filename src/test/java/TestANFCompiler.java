@@ -0,0 +1,49 @@
+/*
+ * Copyright (c) 2024, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Oracle designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+
+import java.lang.invoke.MethodType;
+import java.util.List;
+
+import org.oracle.anf.FunKind;
+import org.oracle.anf.compile.ANFCompiler;
+
+import static org.oracle.anf.ANF.*;
+
+public class TestANFCompiler extends TestSupport {
+
+    public static void main(String[] args) throws Throwable {
+        var fib = ANFCompiler.compile(TestInterpreter.fibonacci(), MethodType.methodType(int.class, int.class));
+        for (int v : new int[]{0, 1, 2, 20, 10_000_000}) {
+            check((int) fib.invokeExact(v), TestTransform.fibonacci(v));
+        }
+
+        var x = variable("x");
+        var max = ANFCompiler.compile(function(variable("max"), List.of(x),
+                        funApply(variable("max"), List.of(x, constant(7L)), FunKind.java("java.lang.Math::max"))),
+                MethodType.methodType(long.class, long.class));
+        check((long) max.invokeExact(3L), 7L);
+        check((long) max.invokeExact(9L), 9L);
+    }
+}
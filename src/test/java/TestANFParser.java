@@ -0,0 +1,138 @@
+/*
+ * Copyright (c) 2024, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Oracle designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.file.Files;
+import java.util.List;
+
+import org.oracle.anf.ANF;
+import org.oracle.anf.FunKind;
+import org.oracle.anf.eval.Interpreter;
+import org.oracle.anf.flat.FlatANF;
+import org.oracle.anf.util.ANFParser;
+import org.oracle.anf.util.ANFPrinter;
+
+import static org.oracle.anf.ANF.*;
+
+public class TestANFParser extends TestSupport {
+
+    public static void main(String[] args) throws IOException {
+        var printer = new ANFPrinter();
+
+        // Kinds are written out: primitives are marked with '%', Java calls carry their target.
+        var parsed = ANFParser.parse("""
+                letrec
+                fib(n) = {
+                  let c = %lt(n, 2) in {
+                    if c then { n }
+                    else {
+                      let a = %sub(n, 1) in { let b = %sub(n, 2) in {
+                      let x = fib(a) in { let y = fib(b) in { %add(x, y) } } } }
+                    }
+                  }
+                };
+                in { let r = fib(20) in { abs[`java.lang.Math::abs`](r) } }
+                """);
+        check(new Interpreter().eval(parsed), 6765);
+        var body = (ANF.LetRec) parsed;
+        var abs = (ANF.FunApply) ((ANF.Let) body.combinedBody()).expBody();
+        check(abs.name(), variable("abs"));
+        check(abs.fc(), FunKind.java("java.lang.Math::abs"));
+        check(((ANF.FunApply) ((ANF.Let) body.combinedBody()).term()).fc(), FunKind.FC);
+
+        // The kind survives a round trip whatever the name: an FC call named like a primitive,
+        // a primitive the interpreter does not know, and a Java call whose name is not its target.
+        var kinds = let(variable("x"), funApply(variable("add"), List.of(constant(1), constant(2)), FunKind.FC),
+                let(variable("y"), funApply(variable("frob"), List.of(variable("x")), FunKind.PRIMITIVE),
+                        funApply(variable("abs"), List.of(variable("y")), FunKind.java("java.lang.Math::abs"))));
+        roundTrip(printer, kinds);
+        check(code(ANFParser.parse(printer.toText(kinds))), code(kinds));
+
+        // Typed literals and quoted names survive a round trip.
+        var literals = let(variable("a b"), constant(-1L), let(variable("let"), constant(1.5F),
+                let(variable("c"), constant('\''), let(variable("d"), constant((byte) 7),
+                        let(variable("e"), constant((short) -3), let(variable("f"), constant(Double.NEGATIVE_INFINITY),
+                                let(variable("g"), constant(Float.NaN), let(variable("h"), constant("\"x`\t\u0001"),
+                                        let(variable("i"), constant(null), let(variable("j"), constant(1e-9),
+                                                ifThen(constant(true), variable("a b"), variable("let"))))))))))));
+        roundTrip(printer, literals);
+        check(ANFParser.parse(printer.toText(literals)), literals);
+
+        roundTrip(printer, CodeModelGenerator.generate(
+                new CodeModelGenerator.Config(300, 3, 2, CodeModelGenerator.Shape.DIAMOND, 3)).anf(5));
+
+        // Deep chains parse without recursion; a file is read through a mapping. The text is
+        // written unindented, as the parser ignores whitespace.
+        int depth = 20_000;
+        ANF.Expression chain = variable("v" + depth);
+        var text = new StringBuilder();
+        for (int i = depth; i > 0; i--) {
+            chain = let(variable("v" + i), funApply(variable("abs"), List.of(variable("v" + (i - 1))),
+                    FunKind.java("java.lang.Math::abs")), chain);
+        }
+        for (int i = 1; i <= depth; i++) {
+            text.append("let v").append(i).append(" = abs[`java.lang.Math::abs`](v").append(i - 1).append(") in {\n");
+        }
+        text.append('v').append(depth).append('\n').append("}\n".repeat(depth));
+        var file = Files.createTempFile("chain", ".anf");
+        try {
+            Files.writeString(file, text);
+            check(code(ANFParser.parse(file)), code(chain));
+        } finally {
+            Files.delete(file);
+        }
+
+        // Errors carry the position of the offending token.
+        checkError("let x = 1 in {\n  x\n", 3, 1);
+        checkError("let x = 1 in {\n  let = 2 in { x }\n}", 2, 7);
+        checkError("f(1,\n  \"abc)", 2, 3);
+        checkError("let x = 1 in {\n...\n}", 2, 1);
+        checkError("if c then { 1 } { 2 }", 1, 17);
+        checkError("let x = %y in { x }", 1, 12);
+        checkError("f[`java.lang.Math::abs`] in", 1, 26);
+        check(ANFParser.parse(new StringReader("  `a\\`b`  ")), variable("a`b"));
+    }
+
+    private static void roundTrip(ANFPrinter printer, ANF.Expression expr) {
+        var text = printer.toText(expr);
+        check(printer.toText(ANFParser.parse(text)), text);
+    }
+
+    private static String code(ANF.Expression expr) {
+        return java.util.Arrays.toString(FlatANF.encode(expr).code());
+    }
+
+    private static void checkError(String text, int line, int column) {
+        try {
+            ANFParser.parse(text);
+        } catch (ANFParser.SyntaxError e) {
+            check(e.line(), line);
+            check(e.column(), column);
+            return;
+        }
+        throw new AssertionError("Expected a syntax error in " + text);
+    }
+}
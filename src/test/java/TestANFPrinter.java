@@ -0,0 +1,117 @@
+/*
+ * Copyright (c) 2024, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Oracle designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+
+import java.io.ByteArrayOutputStream;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import org.oracle.anf.ANF;
+import org.oracle.anf.FunKind;
+import org.oracle.anf.util.ANFParser;
+import org.oracle.anf.util.ANFPrinter;
+
+import static org.oracle.anf.ANF.*;
+
+public class TestANFPrinter extends TestSupport {
+
+    public static void main(String[] args) {
+        var printer = new ANFPrinter();
+        check(printer.toText(let(variable("x"), funApply(variable("add"), List.of(variable("y"), constant(1L)), FunKind.PRIMITIVE),
+                        ifThen(variable("c"), variable("x"), constant("é\n")))),
+                """
+                let x = %add(y, 1L) in\s
+                {
+                  if c then {
+                    x
+                  }
+                  else {
+                    "é\\n"
+                  }
+                }
+                """);
+
+        // A Java application prints its name term, then its target in brackets.
+        check(printer.toText(funApply(variable("abs"), List.of(constant(-1)), FunKind.java("java.lang.Math::abs"))),
+                "abs[java.lang.Math::abs](-1)\n");
+
+        // Deep chains print without recursion; the depth limit bounds the output.
+        int depth = 100_000;
+        ANF.Expression chain = variable("v" + depth);
+        for (int i = depth; i > 0; i--) {
+            chain = let(variable("v" + i), funApply(variable("java.lang.Math::abs"), List.of(variable("v" + (i - 1))),
+                    FunKind.java("java.lang.Math::abs")), chain);
+        }
+        var elided = new ANFPrinter(3).toText(chain);
+        check(elided.lines().count(), 3L * 3 + 1 + 3);
+        check(elided.lines().filter(l -> l.trim().equals("...")).count(), 1L);
+        // Indentation is clamped, so the whole chain prints in size linear in its depth: three
+        // lines of at most 128 chars for each let.
+        var size = new long[1];
+        printer.printTo(chain, new Appendable() {
+            @Override
+            public Appendable append(CharSequence csq) {
+                size[0] += csq.length();
+                return this;
+            }
+
+            @Override
+            public Appendable append(CharSequence csq, int start, int end) {
+                size[0] += end - start;
+                return this;
+            }
+
+            @Override
+            public Appendable append(char c) {
+                size[0]++;
+                return this;
+            }
+        });
+        check(size[0] < 3L * 128 * depth, true);
+
+        // Channel output is the UTF-8 encoding of the text.
+        var bytes = new ByteArrayOutputStream();
+        var program = generatedProgram();
+        printer.print(program, Channels.newChannel(bytes));
+        check(bytes.toString(StandardCharsets.UTF_8), printer.toText(program));
+        // A lone surrogate is a valid String constant; it is escaped, so the channel output is
+        // complete and reads back, even when more than a buffer of text follows it.
+        var surrogate = constant("\uD800" + "x".repeat(10_000));
+        bytes.reset();
+        printer.print(surrogate, Channels.newChannel(bytes));
+        var text = bytes.toString(StandardCharsets.UTF_8);
+        check(text.startsWith("\"\\ud800x"), true);
+        check(ANFParser.parse(text), surrogate);
+        // A let line and its block's two brace lines for the lets in the first 500 blocks, then the elision.
+        var sb = new StringBuilder();
+        new ANFPrinter(500).printTo(chain, sb);
+        check(sb.toString().lines().count(), 3L * 501 + 1);
+    }
+
+    private static ANF.Expression generatedProgram() {
+        return CodeModelGenerator.generate(
+                new CodeModelGenerator.Config(300, 3, 2, CodeModelGenerator.Shape.DIAMOND, 3)).anf(5);
+    }
+}
@@ -0,0 +1,122 @@
+/*
+ * Copyright (c) 2024, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Oracle designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.oracle.anf.util.BoundedCache;
+
+public class TestBoundedCache extends TestSupport {
+
+    public static void main(String[] args) throws Exception {
+        var cache = new BoundedCache<String>(2);
+        check(cache.get(String.class, "a", () -> "A"), "A");
+        check(cache.get(String.class, "a", () -> "other"), "A");
+        check(cache.get(Integer.class, "a", () -> "B"), "B");
+        check(cache.get(null, "c", () -> "C"), "C");
+        // String.class::a was least recently used.
+        check(cache.get(String.class, "a", () -> "A2"), "A2");
+        check(cache.statistics(), new BoundedCache.Statistics(1, 4, 2, 2, 2));
+
+        // Concurrent requests for one key share a single computation: it does not finish before all
+        // eight requests were submitted and the other seven found it in flight, counted as hits.
+        var calls = new AtomicInteger();
+        var submitted = new CountDownLatch(8);
+        var shared = new BoundedCache<Integer>(10);
+        try (var executor = Executors.newFixedThreadPool(8)) {
+            List<Future<Integer>> results = new ArrayList<>();
+            for (int i = 0; i < 8; i++) {
+                results.add(executor.submit(() -> {
+                    submitted.countDown();
+                    return shared.get(Object.class, "slow", () -> {
+                        calls.incrementAndGet();
+                        try {
+                            check(submitted.await(10, TimeUnit.SECONDS), "Requests were not submitted");
+                        } catch (InterruptedException e) {
+                            throw new RuntimeException(e);
+                        }
+                        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+                        while (shared.statistics().hits() < 7) {
+                            check(System.nanoTime() < deadline, "Requests did not wait for the computation");
+                            Thread.onSpinWait();
+                        }
+                        return 42;
+                    });
+                }));
+            }
+            for (Future<Integer> r : results) {
+                check(r.get(), 42);
+            }
+        }
+        check(shared.statistics(), new BoundedCache.Statistics(7, 1, 0, 1, 1));
+        check(calls.get(), 1);
+
+        // Failed computations are not cached, and values are weighed.
+        try {
+            shared.get(Object.class, "fail", () -> {
+                throw new IllegalStateException("boom");
+            });
+            throw new AssertionError("Expected the computation to fail");
+        } catch (IllegalStateException expected) {
+        }
+        check(shared.get(Object.class, "fail", () -> 1), 1);
+        var weighed = new BoundedCache<String>(10, String::length);
+        weighed.get(null, "x", () -> "123456");
+        weighed.get(null, "y", () -> "12345");
+        check(weighed.statistics().size(), 1);
+        check(weighed.statistics().weight(), 5L);
+
+        // A weigher that throws or returns a negative weight fails the computation, which is not
+        // cached, and a computation requesting its own key fails instead of waiting for itself.
+        var rejecting = new BoundedCache<String>(10, v -> {
+            if (v.isEmpty()) {
+                throw new IllegalArgumentException("empty");
+            }
+            return v.equals("-") ? -1 : 1;
+        });
+        expect(IllegalArgumentException.class, () -> rejecting.get(null, "e", () -> ""));
+        expect(IllegalStateException.class, () -> rejecting.get(null, "e", () -> "-"));
+        check(rejecting.get(null, "e", () -> "ok"), "ok");
+        expect(IllegalStateException.class,
+                () -> rejecting.get(null, "r", () -> rejecting.get(null, "r", () -> "inner")));
+        check(rejecting.get(null, "r", () -> "outer"), "outer");
+        check(rejecting.statistics().size(), 2);
+    }
+
+    private static void expect(Class<? extends RuntimeException> type, Runnable r) {
+        try {
+            r.run();
+        } catch (RuntimeException e) {
+            check(type.isInstance(e), "Expected " + type.getSimpleName() + " but got " + e);
+            return;
+        }
+        throw new AssertionError("Expected " + type.getSimpleName());
+    }
+}
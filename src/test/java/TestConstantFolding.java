@@ -0,0 +1,86 @@
+/*
+ * Copyright (c) 2024, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Oracle designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+
+
+import org.oracle.anf.ANF;
+import org.oracle.anf.eval.Interpreter;
+import org.oracle.anf.opt.ConstantFolding;
+
+import static org.oracle.anf.ANF.*;
+
+public class TestConstantFolding extends TestSupport {
+
+    public static void main(String[] args) {
+        // Java semantics for overflow and division.
+        checkFolds(prim("add", constant(Integer.MAX_VALUE), constant(1)), Integer.MIN_VALUE);
+        checkFolds(prim("mul", constant(Long.MAX_VALUE), constant(2L)), -2L);
+        checkFolds(prim("div", constant(-7), constant(2)), -3);
+        checkFolds(prim("mod", constant(-7L), constant(2)), -1L);
+        checkFolds(prim("div", constant(Integer.MIN_VALUE), constant(-1)), Integer.MIN_VALUE);
+        checkFolds(prim("div", constant(1.0F), constant(0.0F)), Float.POSITIVE_INFINITY);
+        checkFolds(prim("mod", constant(5.5), constant(2)), 1.5);
+        checkFolds(prim("lshl", constant(1), constant(33)), 2);
+        checkFolds(prim("lt", constant('a'), constant(98)), true);
+
+        // Integer division by zero is left to throw at run time.
+        var divZero = let(variable("z"), prim("div", constant(1), constant(0)), variable("z"));
+        check(ConstantFolding.fold(divZero), divZero);
+
+        // Copies and folded lets are substituted, constant conditions pick their branch.
+        var program = let(variable("a"), constant(20),
+                let(variable("b"), variable("a"),
+                        let(variable("c"), prim("add", variable("b"), constant(1)),
+                                let(variable("d"), prim("gt", variable("c"), constant(10)),
+                                        ifThen(variable("d"),
+                                                let(variable("e"), prim("mul", variable("x"), variable("c")), variable("e")),
+                                                variable("a"))))));
+        check(text(ConstantFolding.fold(program)), text(
+                let(variable("e"), prim("mul", variable("x"), constant(21)), variable("e"))));
+
+        // Function bodies are folded with the values of the lets above them; results are unchanged.
+        var interpreter = new Interpreter();
+        var fib = TestInterpreter.fibonacci();
+        var folded = ConstantFolding.fold(fib);
+        for (int n : new int[]{0, 1, 2, 10, 30}) {
+            check(interpreter.invoke(folded, n), interpreter.invoke(fib, n));
+        }
+        check(ConstantFolding.fold(folded), folded);
+
+        // Long chains fold in one pass without recursion.
+        int depth = 100_000;
+        ANF.Expression chain = variable("v" + depth);
+        for (int i = depth; i > 0; i--) {
+            chain = let(variable("v" + i), prim("add", variable("v" + (i - 1)), constant(1)), chain);
+        }
+        chain = let(variable("v0"), constant(0), chain);
+        check(ConstantFolding.fold(chain), constant(depth));
+    }
+
+    private static void checkFolds(ANF.FunApply fa, Object expected) {
+        var folded = ConstantFolding.fold(let(variable("r"), fa, variable("r")));
+        check(folded, constant(expected));
+        check(new Interpreter().eval(fa), expected);
+    }
+}
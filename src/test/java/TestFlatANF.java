@@ -0,0 +1,143 @@
+/*
+ * Copyright (c) 2024, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Oracle designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.Consumer;
+
+import org.oracle.anf.ANF;
+import org.oracle.anf.FunKind;
+import org.oracle.anf.flat.ANFBinary;
+import org.oracle.anf.flat.FlatANF;
+import org.oracle.anf.flat.NodeStream;
+
+import static org.oracle.anf.ANF.*;
+
+public class TestFlatANF extends TestSupport {
+
+    public static void main(String[] args) throws IOException {
+        var fib = TestInterpreter.fibonacci();
+        var program = letRec(List.of(fib), funApply(fib.name(), List.of(constant(20)), FunKind.FC));
+        var flat = FlatANF.encode(program);
+        check(flat.decode(), program);
+        // Encodings compare by content.
+        check(FlatANF.encode(program), flat);
+        check(FlatANF.encode(program).hashCode(), flat.hashCode());
+
+        var generated = CodeModelGenerator.generate(
+                new CodeModelGenerator.Config(500, 3, 2, CodeModelGenerator.Shape.FAN, 11)).anf(7);
+        check(FlatANF.encode(generated).decode(), generated);
+
+        // A chain deeper than the Java stack, and typed constants sharing the constant table.
+        int depth = 100_000;
+        ANF.Expression chain = variable("v" + depth);
+        for (int i = depth; i > 0; i--) {
+            chain = let(variable("v" + i), funApply(variable("java.lang.Math::max"),
+                    List.of(variable("v" + (i - 1)), constant(i % 2 == 0 ? (Object) 1 : (Object) 1L)),
+                    FunKind.java("java.lang.Math::max")), chain);
+        }
+        var flatChain = FlatANF.encode(chain);
+        // Record equality recurses too deep for the chain, compare the re-encoded stream instead.
+        var reencoded = FlatANF.encode(flatChain.decode());
+        check(Arrays.equals(reencoded.code(), flatChain.code()), true);
+        check(Arrays.equals(reencoded.names(), flatChain.names()), true);
+        check(flatChain.constants().length, 2);
+        check(flatChain.kinds().length, 1);
+
+        // Cursors navigate the stream in place.
+        var c = flatChain.cursor();
+        check(c.tag(), NodeStream.Tag.LET);
+        check(c.name(), "v1");
+        int body = c.body();
+        c.moveTo(c.term());
+        check(c.tag(), NodeStream.Tag.FUN_APPLY);
+        check(c.kind(), FunKind.java("java.lang.Math::max"));
+        check(c.count(), 2);
+        int arg = c.argument(1);
+        check(c.moveTo(arg).value(), 1L);
+        check(c.moveTo(body).name(), "v2");
+
+        // Binary files decode to the same program, including every constant type.
+        var file = Files.createTempFile("anf", ".bin");
+        try {
+            ANFBinary.write(program, file);
+            try (var mapped = ANFBinary.map(file)) {
+                check(mapped.decode(), program);
+            }
+
+            List<ANF.Term> values = List.of(constant(1), constant(2L), constant(3.0f), constant(4.0), constant(true),
+                    constant('c'), constant((byte) 5), constant((short) 6), constant("s\u00e9"), constant(null));
+            var typed = let(variable(7), funApply(variable("f"), values, FunKind.java("java.util.List::of")),
+                    ifThen(variable(7), constant(0), funApply(variable("g"), List.of(), FunKind.FC)));
+            ANFBinary.write(typed, file);
+            try (var mapped = ANFBinary.map(file)) {
+                check(mapped.cursor().name(), 7);
+                check(mapped.decode(), typed);
+            }
+
+            ANFBinary.write(chain, file);
+            try (var mapped = ANFBinary.map(file)) {
+                var m = mapped.cursor();
+                check(m.moveTo(m.moveTo(m.body()).term()).kind(), FunKind.java("java.lang.Math::max"));
+                check(Arrays.equals(FlatANF.encode(mapped.decode()).code(), flatChain.code()), true);
+            }
+
+            // Corrupt headers, table offsets and entry tags are rejected when mapping.
+            ANFBinary.write(program, file);
+            var bytes = Files.readAllBytes(file);
+            var header = ByteBuffer.wrap(bytes).order(ByteOrder.LITTLE_ENDIAN);
+            int constantOffsets = 4 * (6 + header.getInt(8));
+            int firstConstant = header.getInt(constantOffsets);
+            expectCorrupt(file, bytes, b -> b.putInt(12, -1));
+            expectCorrupt(file, bytes, b -> b.putInt(constantOffsets, bytes.length));
+            expectCorrupt(file, bytes, b -> b.putInt(constantOffsets, 0));
+            expectCorrupt(file, bytes, b -> b.put(firstConstant, (byte) 99));
+            expectCorrupt(file, Arrays.copyOf(bytes, bytes.length - 1), _ -> {});
+
+            Files.write(file, new byte[]{1, 2, 3, 4, 5, 6, 7, 8, 9, 10, 11, 12, 13, 14, 15, 16, 17, 18, 19, 20, 21, 22, 23, 24});
+            try (var _ = ANFBinary.map(file)) {
+                throw new AssertionError("Mapped a file without the ANF magic number");
+            } catch (IOException expected) {
+            }
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    private static void expectCorrupt(Path file, byte[] bytes, Consumer<ByteBuffer> corrupt) throws IOException {
+        var copy = bytes.clone();
+        corrupt.accept(ByteBuffer.wrap(copy).order(ByteOrder.LITTLE_ENDIAN));
+        Files.write(file, copy);
+        try (var _ = ANFBinary.map(file)) {
+            throw new AssertionError("Mapped a corrupt file");
+        } catch (IOException expected) {
+        }
+    }
+}
@@ -0,0 +1,110 @@
+/*
+ * Copyright (c) 2024, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Oracle designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+
+import java.lang.management.ManagementFactory;
+import java.util.List;
+
+import org.oracle.anf.ANF;
+import org.oracle.anf.FunKind;
+import org.oracle.anf.util.Fold;
+
+import static org.oracle.anf.ANF.*;
+
+public class TestFold extends TestSupport {
+
+    // Counts the expressions of a program.
+    static final Fold.Visitor<long[]> SIZE = new Fold.Visitor<>() {
+        @Override
+        public Fold.Step preExpression(ANF.Expression expr, long[] acc) {
+            acc[0]++;
+            return Fold.Step.CONTINUE;
+        }
+    };
+
+    public static void main(String[] args) {
+        int depth = 200_000;
+        ANF.Expression chain = variable("v" + depth);
+        for (int i = depth; i > 0; i--) {
+            var term = i == depth / 2
+                    ? funApply(variable("abs"), List.of(variable("v" + (i - 1))), FunKind.java("java.lang.Math::abs"))
+                    : funApply(variable("add"), List.of(variable("v" + (i - 1)), constant(1)), FunKind.PRIMITIVE);
+            chain = let(variable("v" + i), term, chain);
+        }
+        // Every Let, its application, the application's name and its arguments (one fewer for abs), and the final variable.
+        long expected = depth * 5L - 1 + 1;
+
+        var fold = new Fold();
+        check(fold.apply(chain, SIZE, new long[1])[0], expected);
+        var bean = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long[] size = new long[1];
+        long before = bean.getCurrentThreadAllocatedBytes();
+        fold.apply(chain, SIZE, size);
+        long allocated = bean.getCurrentThreadAllocatedBytes() - before;
+        check(size[0], expected);
+        if (allocated > 64 * 1024) {
+            throw new AssertionError("Fold over " + expected + " nodes allocated " + allocated + " bytes");
+        }
+
+        // Early termination at the first Let binding a Java call, found in pre-order.
+        var found = Fold.fold(chain, new Fold.Visitor<ANF.Let[]>() {
+            @Override
+            public Fold.Step preExpression(ANF.Expression expr, ANF.Let[] acc) {
+                if (expr instanceof ANF.Let l) {
+                    if (l.term() instanceof ANF.FunApply fa && fa.fc() instanceof FunKind.Java) {
+                        acc[0] = l;
+                        return Fold.Step.STOP;
+                    }
+                    return Fold.Step.CONTINUE;
+                }
+                // Terms of a Let are not searched.
+                return Fold.Step.SKIP_PARTS;
+            }
+        }, new ANF.Let[1]);
+        check(found[0].name(), variable("v" + depth / 2));
+
+        // Functions are visited before their bodies and after them.
+        var f = function(variable("f"), List.of(variable("x")), variable("x"));
+        var order = Fold.fold(letRec(List.of(f), constant(0)), new Fold.Visitor<StringBuilder>() {
+            @Override
+            public Fold.Step preExpression(ANF.Expression expr, StringBuilder acc) {
+                acc.append(expr.getClass().getSimpleName()).append(' ');
+                return Fold.Step.CONTINUE;
+            }
+
+            @Override
+            public Fold.Step preFunction(ANF.Function fn, StringBuilder acc) {
+                acc.append("(").append(fn.name().varId()).append(' ');
+                return Fold.Step.CONTINUE;
+            }
+
+            @Override
+            public Fold.Step postFunction(ANF.Function fn, StringBuilder acc) {
+                acc.append(") ");
+                return Fold.Step.CONTINUE;
+            }
+        }, new StringBuilder());
+        check(order.toString(), "LetRec (f Var ) Const ");
+    }
+}
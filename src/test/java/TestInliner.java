@@ -0,0 +1,135 @@
+/*
+ * Copyright (c) 2024, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Oracle designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.oracle.anf.ANF;
+import org.oracle.anf.FunKind;
+import org.oracle.anf.eval.Interpreter;
+import org.oracle.anf.opt.Inliner;
+import org.oracle.anf.opt.LetRecSplitting;
+import org.oracle.anf.util.Fold;
+
+import static org.oracle.anf.ANF.*;
+
+public class TestInliner extends TestSupport {
+
+    public static void main(String[] args) {
+        var interpreter = new Interpreter();
+        var inliner = new Inliner();
+
+        // A straight-line body called once is spliced into the Let.
+        var inc = fun("inc", let(variable("t"), prim("add", variable("inc_x"), constant(1)), variable("t")));
+        var program = letRec(List.of(inc), let(variable("x"), call("inc", constant(5)), prim("mul", variable("x"), constant(2))));
+        check(text(inliner.inline(program)), text(let(variable("t"), prim("add", constant(5), constant(1)),
+                let(variable("x"), variable("t"), prim("mul", variable("x"), constant(2))))));
+
+        // A branching body called once from a Let returns to the rest of the Let by a jump.
+        var abs = fun("abs", let(variable("c"), prim("lt", variable("abs_x"), constant(0)),
+                ifThen(variable("c"), prim("neg", variable("abs_x")), variable("abs_x"))));
+        program = letRec(List.of(abs), let(variable("y"), call("abs", variable("n")), prim("add", variable("y"), constant(1))));
+        var contified = inliner.inline(program);
+        check(fcCalls(contified), 2L);
+        check(((ANF.LetRec) contified).funs().getFirst().parameters(), List.of(variable("y")));
+        for (int n : new int[]{-3, 0, 4}) {
+            check(interpreter.eval(contified, java.util.Map.of("n", n)), interpreter.eval(program, java.util.Map.of("n", n)));
+        }
+
+        // Small functions are copied into every call site under fresh names, unless over budget.
+        var twice = letRec(List.of(inc), let(variable("c"), prim("gt", variable("n"), constant(0)),
+                ifThen(variable("c"), call("inc", variable("n")), call("inc", constant(0)))));
+        var copied = inliner.inline(twice);
+        check(fcCalls(copied), 0L);
+        check(interpreter.eval(copied, java.util.Map.of("n", 9)), 10);
+        checkUniqueNames(copied);
+        check(new Inliner(0).inline(twice), twice);
+
+        // A function called once from a body copied twice is copied twice too, the second time renamed.
+        var once = fun("f", let(variable("t"), prim("add", variable("f_x"), constant(1)), variable("t")));
+        var small = fun("g", let(variable("r"), call("f", variable("g_x")), variable("r")));
+        var nestedCopies = letRec(List.of(once), letRec(List.of(small),
+                let(variable("a"), call("g", constant(1)), call("g", constant(2)))));
+        var inlinedTwice = inliner.inline(nestedCopies);
+        check(fcCalls(inlinedTwice), 0L);
+        checkUniqueNames(inlinedTwice);
+        check(interpreter.eval(inlinedTwice), 3);
+
+        // Recursive functions stay.
+        var fib = TestInterpreter.fibonacci();
+        check(inliner.inline(fib), fib);
+
+        // Block functions of generated programs mostly disappear once split from their LetRecs.
+        for (var shape : CodeModelGenerator.Shape.values()) {
+            var anf = CodeModelGenerator.generate(new CodeModelGenerator.Config(300, 3, 2, shape, 3)).anf(1000);
+            var split = LetRecSplitting.split(anf);
+            var inlined = inliner.inline(split);
+            check(interpreter.eval(inlined), interpreter.eval(anf));
+            checkUniqueNames(inlined);
+            if (fcCalls(inlined) >= fcCalls(split)) {
+                throw new AssertionError(shape + ": " + fcCalls(inlined) + " calls left of " + fcCalls(split));
+            }
+        }
+    }
+
+    private static long fcCalls(ANF.Expression expr) {
+        return Fold.fold(expr, new Fold.Visitor<long[]>() {
+            @Override
+            public Fold.Step preExpression(ANF.Expression e, long[] count) {
+                if (e instanceof ANF.FunApply fa && fa.fc() instanceof FunKind.FC) {
+                    count[0]++;
+                }
+                return Fold.Step.CONTINUE;
+            }
+        }, new long[1])[0];
+    }
+
+    private static void checkUniqueNames(ANF.Expression expr) {
+        Set<Object> names = new HashSet<>();
+        Fold.fold(expr, new Fold.Visitor<Set<Object>>() {
+            @Override
+            public Fold.Step preExpression(ANF.Expression e, Set<Object> acc) {
+                if (e instanceof ANF.Let l && !acc.add(l.name().varId())) {
+                    throw new AssertionError("Bound twice: " + l.name());
+                }
+                return Fold.Step.CONTINUE;
+            }
+
+            @Override
+            public Fold.Step preFunction(ANF.Function f, Set<Object> acc) {
+                if (!acc.add(f.name().varId())) {
+                    throw new AssertionError("Bound twice: " + f.name());
+                }
+                for (ANF.Var p : f.parameters()) {
+                    if (!acc.add(p.varId())) {
+                        throw new AssertionError("Bound twice: " + p);
+                    }
+                }
+                return Fold.Step.CONTINUE;
+            }
+        }, names);
+    }
+}
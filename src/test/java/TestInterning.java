@@ -0,0 +1,89 @@
+/*
+ * Copyright (c) 2024, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Oracle designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.oracle.anf.ANF;
+import org.oracle.anf.FunKind;
+
+import static org.oracle.anf.ANF.*;
+
+public class TestInterning extends TestSupport {
+
+    static ANF.FunApply term(int i) {
+        var sum = funApply(variable("add"), List.of(variable("x"), constant(i)), FunKind.PRIMITIVE);
+        return funApply(variable("mul"), List.of(sum, constant(2L)), FunKind.PRIMITIVE);
+    }
+
+    public static void main(String[] args) throws Exception {
+        var plain = term(1);
+        check(plain != term(1), "Terms were interned while interning was off");
+        check(plain.equals(term(1)), "Structurally equal terms were not equal");
+
+        setInterning(true);
+        try {
+            var canonical = term(1);
+            check(canonical == term(1), "Equal terms were not interned to one instance");
+            check(canonical != term(2), "Different terms were interned to one instance");
+            check(!canonical.equals(term(2)), "Different terms were equal");
+            check(constant(2) != constant(2L), "Constants of different types were interned to one instance");
+            // Canonical and plain terms still compare structurally.
+            check(canonical.equals(plain) && plain.equals(canonical), "Canonical term was not equal to its plain form");
+            check(canonical.hashCode() == plain.hashCode(), "Canonical and plain hash codes differ");
+            // Plain parts are replaced by their canonical instances.
+            var mixed = funApply(variable("neg"), List.of(plain), FunKind.PRIMITIVE);
+            check(mixed.arguments().getFirst() == canonical, "Plain argument was not interned");
+
+            // Terms built concurrently are interned to the same instances.
+            try (var executor = Executors.newFixedThreadPool(8)) {
+                List<Callable<List<ANF.FunApply>>> tasks = new ArrayList<>();
+                for (int t = 0; t < 8; t++) {
+                    tasks.add(() -> {
+                        List<ANF.FunApply> terms = new ArrayList<>();
+                        for (int i = 0; i < 10_000; i++) {
+                            terms.add(term(i % 500));
+                        }
+                        return terms;
+                    });
+                }
+                var results = executor.invokeAll(tasks);
+                var first = results.getFirst().get();
+                for (Future<List<ANF.FunApply>> r : results) {
+                    var terms = r.get();
+                    for (int i = 0; i < terms.size(); i++) {
+                        check(terms.get(i) == first.get(i), "Concurrently built terms were not the same instance");
+                        check(terms.get(i) == first.get(i % 500), "Equal terms were not the same instance");
+                    }
+                }
+            }
+        } finally {
+            setInterning(false);
+        }
+    }
+}
@@ -0,0 +1,140 @@
+/*
+ * Copyright (c) 2024, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Oracle designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.oracle.anf.ANF;
+import org.oracle.anf.FunKind;
+import org.oracle.anf.eval.ConcurrentInterpreter;
+import org.oracle.anf.eval.Interpreter;
+import org.oracle.anf.eval.PrimitiveOp;
+import org.oracle.anf.eval.TieredInterpreter;
+
+import static org.oracle.anf.ANF.*;
+
+public class TestInterpreter extends TestSupport {
+
+    // ANF form of TestTransform.fibonacci, its while loop turned into mutually tail-recursive functions.
+    static ANF.Function fibonacci() {
+        var v = variable("v");
+        var header = function(variable("header"), List.of(variable("hv"), variable("hs1"), variable("hs2")),
+                let(variable("c"), prim("gt", variable("hv"), constant(0)),
+                        ifThen(variable("c"),
+                                call("loop", variable("hv"), variable("hs1"), variable("hs2")),
+                                prim("add", variable("hs1"), variable("hs2")))));
+        var loop = function(variable("loop"), List.of(variable("lv"), variable("ls1"), variable("ls2")),
+                let(variable("t"), prim("add", variable("ls1"), variable("ls2")),
+                        let(variable("lv2"), prim("sub", variable("lv"), constant(1)),
+                                call("header", variable("lv2"), variable("ls2"), variable("t")))));
+        var body = letRec(List.of(header, loop),
+                let(variable("c0"), prim("eq", v, constant(0)),
+                        ifThen(variable("c0"), constant(0),
+                                let(variable("c1"), prim("eq", v, constant(1)),
+                                        ifThen(variable("c1"), constant(1),
+                                                let(variable("v2"), prim("sub", v, constant(2)),
+                                                        call("header", variable("v2"), constant(0), constant(1))))))));
+        return function(variable("fibonacci"), List.of(v), body);
+    }
+
+    public static void main(String[] args) {
+        var interpreter = new Interpreter();
+        var fib = fibonacci();
+
+        // Booleans compare by value, also when they are not the canonical instances.
+        @SuppressWarnings("removal")
+        var other = new Boolean(true);
+        check(PrimitiveOp.EQ.apply(Boolean.TRUE, other), true);
+        check(PrimitiveOp.NEQ.apply(Boolean.TRUE, other), false);
+
+        check(interpreter.invoke(fib, 0), 0);
+        check(interpreter.invoke(fib, 1), 1);
+        check(interpreter.invoke(fib, 20), TestTransform.fibonacci(20));
+        // Far more iterations than the Java stack could hold as nested calls.
+        check(interpreter.invoke(fib, 10_000_000), TestTransform.fibonacci(10_000_000));
+
+        var generated = CodeModelGenerator.generate(
+                new CodeModelGenerator.Config(200, 3, 2, CodeModelGenerator.Shape.DIAMOND, 7));
+        var result = interpreter.eval(generated.anf(1000));
+        if (!(result instanceof Integer)) {
+            throw new AssertionError("Expected an int result, got " + result);
+        }
+
+        // Promoted loop functions must compute the same results as interpreted ones.
+        var tiered = new TieredInterpreter(10);
+        for (int i = 0; i < 30; i++) {
+            check(tiered.invoke(fib, i), TestTransform.fibonacci(i));
+        }
+        check(tiered.invoke(fib, 10_000_000), TestTransform.fibonacci(10_000_000));
+        var header = ((ANF.LetRec) fib.expBody()).funs().getFirst();
+        if (!tiered.isPromoted(header)) {
+            throw new AssertionError("Loop header was not promoted after " + tiered.invocations(header) + " calls");
+        }
+
+        var max = funApply(variable("max"), List.of(constant(3), constant(9)), FunKind.java("java.lang.Math::max"));
+        check(interpreter.eval(max), 9);
+
+        // Five independent lookups followed by a dependent one overlap when reorderable: each
+        // waits for all five to have started.
+        var lookup = "TestInterpreter::overlappingLookup";
+        ANF.Expression fanOut = prim("add", variable("r4"), variable("r5"));
+        fanOut = let(variable("r5"), funApply(variable("l5"), List.of(variable("r3")), FunKind.java(lookup)), fanOut);
+        for (int i = 4; i >= 0; i--) {
+            fanOut = let(variable("r" + i), funApply(variable("l" + i), List.of(constant(i)), FunKind.java(lookup)), fanOut);
+        }
+        var concurrent = new ConcurrentInterpreter(Set.of(lookup));
+        lookups = new CountDownLatch(5);
+        check(concurrent.eval(fanOut), 4 * 2 + 3 * 2 * 2);
+        lookups = new CountDownLatch(1);
+        check(new ConcurrentInterpreter(Set.of()).eval(fanOut), 4 * 2 + 3 * 2 * 2);
+
+        // A failing call whose result is never used still fails the evaluation.
+        var failing = "TestInterpreter::failingLookup";
+        var unused = let(variable("u"), funApply(variable("fail"), List.of(constant(1)), FunKind.java(failing)),
+                constant(0));
+        try {
+            new ConcurrentInterpreter(Set.of(failing)).eval(unused);
+            throw new AssertionError("Expected the failed lookup to be rethrown");
+        } catch (IllegalStateException e) {
+            check(e.getMessage(), "lookup 1 failed");
+        }
+    }
+
+    static volatile CountDownLatch lookups;
+
+    public static int overlappingLookup(int key) throws InterruptedException {
+        lookups.countDown();
+        if (!lookups.await(10, TimeUnit.SECONDS)) {
+            throw new AssertionError("Independent lookups did not overlap");
+        }
+        return key * 2;
+    }
+
+    public static int failingLookup(int key) {
+        throw new IllegalStateException("lookup " + key + " failed");
+    }
+}
@@ -0,0 +1,104 @@
+/*
+ * Copyright (c) 2024, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Oracle designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.oracle.anf.ANF;
+import org.oracle.anf.FunKind;
+import org.oracle.anf.analysis.FreeVariables;
+import org.oracle.anf.eval.Interpreter;
+import org.oracle.anf.opt.LambdaLifting;
+
+import static org.oracle.anf.ANF.*;
+
+public class TestLambdaLifting extends TestSupport {
+
+    public static void main(String[] args) {
+        var interpreter = new Interpreter();
+
+        // Free variables include the functions of enclosing LetRecs.
+        var fib = TestInterpreter.fibonacci();
+        var fv = FreeVariables.analyze(fib);
+        var funs = ((ANF.LetRec) fib.expBody()).funs();
+        check(fv.of(funs.get(0)), List.of(variable("loop")));
+        check(fv.of(funs.get(1)), List.of(variable("header")));
+        check(fv.ofRoot(), List.of());
+        check(LambdaLifting.lift(fib), fib);
+
+        // Captured variables become leading parameters, passed at every call.
+        var g = function(variable("g"), List.of(variable("b")), prim("add", variable("a"), variable("b")));
+        var f = function(variable("f"), List.of(variable("a")), letRec(List.of(g), call("g", constant(1))));
+        var program = letRec(List.of(f), call("f", constant(2)));
+        check(FreeVariables.analyze(program).of(g), List.of(variable("a")));
+        var lifted = LambdaLifting.lift(program);
+        check(text(lifted), text(letRec(List.of(
+                function(variable("f"), List.of(variable("a")), funApply(variable("g"), List.of(variable("a"), constant(1)), FunKind.FC)),
+                function(variable("g"), List.of(variable("a$1"), variable("b")), prim("add", variable("a$1"), variable("b")))),
+                call("f", constant(2)))));
+        check(interpreter.eval(lifted), 3);
+
+        // A capturing function passed as a value is reached through a stub closing over its captures.
+        var apply = function(variable("apply"), List.of(variable("k"), variable("v")),
+                funApply(variable("k"), List.of(variable("v")), FunKind.FC));
+        var f2 = function(variable("f"), List.of(variable("a")), letRec(List.of(g),
+                funApply(variable("apply"), List.of(variable("g"), constant(1)), FunKind.FC)));
+        var escaping = letRec(List.of(apply, f2), call("f", constant(40)));
+        var converted = LambdaLifting.lift(escaping);
+        check(interpreter.eval(converted), 41);
+        check(((ANF.LetRec) converted).funs().size(), 3);
+        checkClosed((ANF.LetRec) converted, 1);
+
+        // Generated programs nest block functions along the dominator tree.
+        for (var shape : CodeModelGenerator.Shape.values()) {
+            var anf = CodeModelGenerator.generate(new CodeModelGenerator.Config(300, 3, 2, shape, 9)).anf(1000);
+            var flat = (ANF.LetRec) LambdaLifting.lift(anf);
+            check(interpreter.eval(flat), interpreter.eval(anf));
+            checkClosed(flat, 0);
+        }
+    }
+
+    /**
+     * Checks that the lifted functions have no free variables but each other and {@code stubs} nested stubs.
+     */
+    private static void checkClosed(ANF.LetRec lifted, int stubs) {
+        var fv = FreeVariables.analyze(lifted);
+        Set<ANF.Var> names = new HashSet<>();
+        for (ANF.Function f : lifted.funs()) {
+            names.add(f.name());
+        }
+        int nested = 0;
+        for (ANF.Function f : lifted.funs()) {
+            if (!names.containsAll(fv.of(f))) {
+                throw new AssertionError(f.name() + " captures " + fv.of(f));
+            }
+            if (f.expBody() instanceof ANF.LetRec) {
+                nested++;
+            }
+        }
+        check(nested, stubs);
+    }
+}
@@ -0,0 +1,76 @@
+/*
+ * Copyright (c) 2024, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Oracle designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+
+import java.util.List;
+
+import org.oracle.anf.ANF;
+import org.oracle.anf.eval.Interpreter;
+import org.oracle.anf.opt.LetRecSplitting;
+
+import static org.oracle.anf.ANF.*;
+
+public class TestLetRecSplitting extends TestSupport {
+
+    public static void main(String[] args) {
+        // a and b are mutually recursive, c calls a, d and e are never called.
+        var a = fun("a", call("b", variable("a_x")));
+        var b = fun("b", call("a", variable("b_x")));
+        var c = fun("c", call("a", variable("c_x")));
+        var d = fun("d", call("c", variable("d_x")));
+        var e = fun("e", call("e", variable("e_x")));
+        var program = letRec(List.of(d, a, e, c, b), call("c", constant(1)));
+        check(text(LetRecSplitting.split(program)),
+                text(letRec(List.of(a, b), letRec(List.of(c), call("c", constant(1))))));
+
+        // Functions only used by dropped functions are dropped too.
+        var q = fun("q", variable("q_x"));
+        var r = fun("r", call("q", variable("r_x")));
+        var p = fun("p", letRec(List.of(r), variable("p_x")));
+        var nested = letRec(List.of(p, q), call("p", constant(2)));
+        check(text(LetRecSplitting.split(nested)),
+                text(letRec(List.of(fun("p", variable("p_x"))), call("p", constant(2)))));
+
+        // A single recursive group is returned as is.
+        var fib = TestInterpreter.fibonacci();
+        check(LetRecSplitting.split(fib), fib);
+
+        // Results are unchanged on a generated program whose block functions nest along a deep dominator chain.
+        var interpreter = new Interpreter();
+        var anf = CodeModelGenerator.generate(
+                new CodeModelGenerator.Config(300, 3, 2, CodeModelGenerator.Shape.CHAIN, 5)).anf(1000);
+        var split = LetRecSplitting.split(anf);
+        check(interpreter.eval(split), interpreter.eval(anf));
+        check(LetRecSplitting.split(split), split);
+
+        // Long chains are walked without recursion.
+        int depth = 100_000;
+        ANF.Expression chain = call("f", variable("v" + depth));
+        for (int i = depth; i > 0; i--) {
+            chain = let(variable("v" + i), prim("add", variable("v" + (i - 1)), constant(1)), chain);
+        }
+        var withChain = letRec(List.of(fun("f", variable("f_x")), fun("g", variable("g_x"))), chain);
+        check(((ANF.LetRec) LetRecSplitting.split(withChain)).funs().size(), 1);
+    }
+}
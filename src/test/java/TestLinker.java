@@ -0,0 +1,99 @@
+/*
+ * Copyright (c) 2024, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Oracle designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+
+import java.util.List;
+
+import org.oracle.anf.ANF;
+import org.oracle.anf.FunKind;
+import org.oracle.anf.eval.Interpreter;
+import org.oracle.anf.link.JavaCallSite;
+import org.oracle.anf.link.LinkedInterpreter;
+import org.oracle.anf.link.LinkedProgram;
+import org.oracle.anf.link.Linker;
+
+import static org.oracle.anf.ANF.*;
+
+public class TestLinker extends TestSupport {
+
+    public static void main(String[] args) {
+        var fib = new LinkedInterpreter(Linker.link(TestInterpreter.fibonacci()));
+        check(fib.invoke(0), 0);
+        check(fib.invoke(1), 1);
+        check(fib.invoke(20), TestTransform.fibonacci(20));
+        check(fib.invoke(10_000_000), TestTransform.fibonacci(10_000_000));
+
+        var generated = CodeModelGenerator.generate(
+                new CodeModelGenerator.Config(200, 3, 2, CodeModelGenerator.Shape.DIAMOND, 7));
+        var entry = function(variable("main"), List.of(), generated.anf(1000));
+        check(new LinkedInterpreter(Linker.link(entry)).invoke(), new Interpreter().eval(generated.anf(1000)));
+
+        // Functions nested along a deep dominator chain are linked without recursion.
+        var chain = CodeModelGenerator.generate(
+                new CodeModelGenerator.Config(2048, 3, 2, CodeModelGenerator.Shape.CHAIN, 7));
+        var chainEntry = function(variable("main"), List.of(), chain.anf(1000));
+        check(new LinkedInterpreter(Linker.link(chainEntry)).invoke(), new Interpreter().eval(chain.anf(1000)));
+
+        // Nested functions read variables of enclosing frames and call functions defined further out.
+        var a = variable("a");
+        var outer = function(variable("outer"), List.of(variable("x")),
+                letRec(List.of(function(variable("inner"), List.of(variable("y")),
+                                let(variable("s"), prim("add", variable("x"), variable("y")),
+                                        let(variable("t"), prim("add", variable("s"), a),
+                                                ifThen(prim("gt", variable("t"), constant(100)),
+                                                        variable("t"),
+                                                        call("outer", variable("t"))))))),
+                        call("inner", constant(1))));
+        var nested = function(variable("nested"), List.of(a), letRec(List.of(outer), call("outer", a)));
+        var max = funApply(variable("max"), List.of(constant(3), constant(9)), FunKind.java("java.lang.Math::max"));
+        var linked = new LinkedInterpreter(Linker.link(nested));
+        check(linked.invoke(5), new Interpreter().invoke(nested, 5));
+        check(new LinkedInterpreter(Linker.link(function(variable("m"), List.of(), max))).invoke(), 9);
+
+        // Java call sites cache a handle per receiver class until they turn megamorphic.
+        var site = new JavaCallSite("java.lang.Object::toString");
+        check(site.state(), JavaCallSite.State.UNINITIALIZED);
+        check(site.invoke(new Object[]{1}), "1");
+        check(site.invoke(new Object[]{2}), "2");
+        check(site.state(), JavaCallSite.State.MONOMORPHIC);
+        check(site.invoke(new Object[]{3L}), "3");
+        check(site.state(), JavaCallSite.State.POLYMORPHIC);
+        for (Object receiver : List.of("4", 5.0, 'c', (short) 7, true)) {
+            check(site.invoke(new Object[]{receiver}), receiver.toString());
+        }
+        check(site.state(), JavaCallSite.State.MEGAMORPHIC);
+        check(site.invoke(new Object[]{8}), "8");
+
+        // With the entry's parameter types known, static targets are linked up front.
+        var x = variable("x");
+        var abs = function(variable("abs"), List.of(x),
+                funApply(variable("abs"), List.of(x), FunKind.java("java.lang.Math::abs")));
+        var program = Linker.link(abs, List.of(int.class));
+        if (!(program.entry().body() instanceof LinkedProgram.JavaCall(var absSite, _))
+                || absSite.state() != JavaCallSite.State.LINKED) {
+            throw new AssertionError("Math::abs was not linked: " + program.entry().body());
+        }
+        check(new LinkedInterpreter(program).invoke(-4), 4);
+    }
+}
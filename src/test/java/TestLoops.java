@@ -0,0 +1,149 @@
+/*
+ * Copyright (c) 2024, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Oracle designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+
+import java.util.List;
+
+import org.oracle.anf.ANF;
+import org.oracle.anf.analysis.Loops;
+import org.oracle.anf.eval.Interpreter;
+import org.oracle.anf.link.LinkedInterpreter;
+import org.oracle.anf.link.LinkedProgram;
+import org.oracle.anf.link.Linker;
+import org.oracle.anf.opt.LambdaLifting;
+
+import static org.oracle.anf.ANF.*;
+
+public class TestLoops extends TestSupport {
+
+    public static void main(String[] args) {
+        // The while loop of fibonacci is the tail-call cycle between header and loop.
+        var fib = TestInterpreter.fibonacci();
+        var loops = Loops.find(fib);
+        check(loops.loops().size(), 1);
+        var loop = loops.loops().getFirst();
+        check(loop.members().stream().map(f -> f.name().varId()).toList(), List.of("header", "loop"));
+        check(loop.headers().stream().map(f -> f.name().varId()).toList(), List.of("header"));
+        check(loop.carried().size(), 6);
+        check(loops.isJump("loop", "header"), true);
+        check(loops.loopOf("fibonacci"), null);
+
+        // Linked, the back edges are jumps and the loop's functions share a frame size.
+        var program = Linker.link(fib);
+        var header = program.functions().get(1);
+        var body = program.functions().get(2);
+        check(header.frameSize(), body.frameSize());
+        check(containsJump(header.body()) && containsJump(body.body()), true);
+        check(new LinkedInterpreter(program).invoke(10_000_000), TestTransform.fibonacci(10_000_000));
+
+        // Transform nests a loop body in the function of its header, so the header enters the body
+        // by calling a nested function, which needs a frame of its own. Lifted first, the header and
+        // body are siblings, and both the entry and the back edge are jumps.
+        var k = variable("k");
+        var i = variable("i");
+        var j = variable("j");
+        var bodyFn = function(variable("body"), List.of(j, variable("t")),
+                let(variable("t2"), prim("add", variable("t"), k),
+                        let(variable("j2"), prim("sub", j, constant(1)),
+                                call("header", variable("j2"), variable("t2")))));
+        var headerFn = function(variable("header"), List.of(i, variable("s")),
+                let(variable("more"), prim("gt", i, constant(0)),
+                        ifThen(variable("more"),
+                                letRec(List.of(bodyFn), call("body", i, variable("s"))),
+                                variable("s"))));
+        var nested = function(variable("square"), List.of(k), letRec(List.of(headerFn), call("header", k, constant(0))));
+        check(edges(Linker.link(nested)), List.of("header: TailCall", "body: Jump"));
+        var lifted = Linker.link(LambdaLifting.lift(nested));
+        check(edges(lifted), List.of("header: Jump", "body: Jump"));
+        check(new LinkedInterpreter(lifted).invoke(3000), 9_000_000);
+
+        // A self-recursive function in tail position is a loop of its own; a non-tail one is not.
+        var n = variable("n");
+        var acc = variable("acc");
+        var sum = function(variable("sum"), List.of(n, acc),
+                let(variable("done"), prim("eq", n, constant(0)),
+                        ifThen(variable("done"), acc,
+                                let(variable("n1"), prim("sub", n, constant(1)),
+                                        let(variable("acc1"), prim("add", acc, n),
+                                                call("sum", variable("n1"), variable("acc1")))))));
+        var m = variable("m");
+        var fact = function(variable("fact"), List.of(m),
+                let(variable("base"), prim("le", m, constant(1)),
+                        ifThen(variable("base"), constant(1L),
+                                let(variable("m1"), prim("sub", m, constant(1)),
+                                        let(variable("r"), call("fact", variable("m1")), prim("mul", m, variable("r")))))));
+        var entry = function(variable("main"), List.of(variable("k")), letRec(List.of(sum, fact),
+                let(variable("s"), call("sum", variable("k"), constant(0L)),
+                        let(variable("f"), call("fact", constant(20)), prim("add", variable("s"), variable("f"))))));
+        loops = Loops.find(entry);
+        check(loops.loops().size(), 1);
+        check(loops.loopOf("sum").members(), List.of(sum));
+        check(loops.loopOf("fact"), null);
+        check(new LinkedInterpreter(Linker.link(entry)).invoke(5_000_000), new Interpreter().invoke(entry, 5_000_000));
+
+        // Generated loops nest their bodies in the functions of the blocks dominating them.
+        for (var shape : CodeModelGenerator.Shape.values()) {
+            var generated = CodeModelGenerator.generate(new CodeModelGenerator.Config(200, 3, 2, shape, 13));
+            var main = function(variable("main"), List.of(), generated.anf(1000));
+            if (Loops.find(main).loops().isEmpty()) {
+                throw new AssertionError(shape + ": no loops found");
+            }
+            check(new LinkedInterpreter(Linker.link(main)).invoke(), new Interpreter().eval(generated.anf(1000)));
+        }
+    }
+
+    /**
+     * {@return the kind of the tail calls of each function but the entry point}
+     */
+    private static List<String> edges(LinkedProgram program) {
+        var edges = new java.util.ArrayList<String>();
+        for (var f : program.functions().subList(1, program.functions().size())) {
+            tailCalls(f.name() + ": ", f.body(), edges);
+        }
+        return edges;
+    }
+
+    private static void tailCalls(String prefix, LinkedProgram.Node node, List<String> edges) {
+        switch (node) {
+            case LinkedProgram.Jump _ -> edges.add(prefix + "Jump");
+            case LinkedProgram.TailCall _ -> edges.add(prefix + "TailCall");
+            case LinkedProgram.Let(var _, var _, var b) -> tailCalls(prefix, b, edges);
+            case LinkedProgram.If(var _, var t, var f) -> {
+                tailCalls(prefix, t, edges);
+                tailCalls(prefix, f, edges);
+            }
+            default -> {
+            }
+        }
+    }
+
+    private static boolean containsJump(LinkedProgram.Node node) {
+        return switch (node) {
+            case LinkedProgram.Jump _ -> true;
+            case LinkedProgram.Let(var _, var _, var b) -> containsJump(b);
+            case LinkedProgram.If(var _, var t, var f) -> containsJump(t) || containsJump(f);
+            default -> false;
+        };
+    }
+}
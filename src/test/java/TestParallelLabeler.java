@@ -0,0 +1,97 @@
+/*
+ * Copyright (c) 2024, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Oracle designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+import org.oracle.anf.ANF;
+import org.oracle.anf.FunKind;
+import org.oracle.anf.util.ANFPrinter;
+import org.oracle.anf.util.Labeler;
+import org.oracle.anf.util.ParallelLabeler;
+
+import static org.oracle.anf.ANF.*;
+
+public class TestParallelLabeler extends TestSupport {
+
+    public static void main(String[] args) {
+        var printer = new ANFPrinter();
+        var pools = List.of(new ForkJoinPool(1), new ForkJoinPool(4), ForkJoinPool.commonPool());
+        try {
+            // The result is the sequential one whatever the parallelism.
+            for (var shape : CodeModelGenerator.Shape.values()) {
+                for (long seed = 1; seed <= 5; seed++) {
+                    var anf = CodeModelGenerator.generate(new CodeModelGenerator.Config(400, 3, 2, shape, seed)).anf(7);
+                    var expected = printer.toText(new Labeler().label(anf));
+                    for (var pool : pools) {
+                        check(printer.toText(new ParallelLabeler(pool).label(anf)), expected);
+                    }
+                }
+            }
+
+            // A name first used before its binding keeps the label of that first use.
+            var f = function(variable("f"), List.of(variable("x")),
+                    funApply(variable("g"), List.of(variable("x")), FunKind.FC));
+            var g = function(variable("g"), List.of(variable("y")), variable("y"));
+            var program = letRec(List.of(f, g), funApply(variable("f"), List.of(constant(1)), FunKind.FC));
+            check(printer.toText(new ParallelLabeler().label(program)), printer.toText(new Labeler().label(program)));
+
+            // Functions with large bodies are forked and small ones rebuilt in place, with the same labels.
+            ANF.Expression body = variable("b0");
+            for (int i = 1; i <= 300; i++) {
+                body = let(variable("b" + (i - 1)), prim("add", variable("b" + i), constant(1)), body);
+            }
+            var big = function(variable("big"), List.of(variable("b300")), body);
+            var mixed = letRec(List.of(f, big, g), funApply(variable("big"), List.of(constant(1)), FunKind.FC));
+            for (var pool : pools) {
+                check(printer.toText(new ParallelLabeler(pool).label(mixed)), printer.toText(new Labeler().label(mixed)));
+            }
+
+            // Deeply nested functions do not recurse, forked or not.
+            var deep = CodeModelGenerator.generate(
+                    new CodeModelGenerator.Config(4096, 3, 2, CodeModelGenerator.Shape.CHAIN, 1)).anf(7);
+            var deepExpected = printer.toText(new Labeler().label(deep));
+            for (var pool : pools) {
+                check(printer.toText(new ParallelLabeler(pool).label(deep)), deepExpected);
+            }
+
+            // Deep chains do not recurse.
+            int depth = 100_000;
+            ANF.Expression chain = variable("a" + depth);
+            for (int i = depth; i > 0; i--) {
+                chain = let(variable("a" + i), funApply(variable("add"), List.of(variable("a" + (i - 1)), constant(1)),
+                        FunKind.PRIMITIVE), chain);
+            }
+            var labeled = new ParallelLabeler(pools.get(1)).label(chain);
+            for (int i = 0; i < 3; i++) {
+                labeled = ((ANF.Let) labeled).expBody();
+            }
+            check(((ANF.Let) labeled).name(), variable("v_4"));
+        } finally {
+            pools.get(0).shutdown();
+            pools.get(1).shutdown();
+        }
+    }
+}
@@ -0,0 +1,91 @@
+/*
+ * Copyright (c) 2024, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Oracle designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+
+import java.util.List;
+
+import org.oracle.anf.ANF;
+import org.oracle.anf.FunKind;
+import org.oracle.anf.util.Labeler;
+import org.oracle.anf.util.PassManager;
+
+import static org.oracle.anf.ANF.*;
+
+public class TestPassManager extends TestSupport {
+
+    public static void main(String[] args) {
+        var pipeline = new PassManager()
+                .addLocal("fold-add", TestPassManager::foldAdd)
+                .addLocal("add-zero", TestPassManager::addZero)
+                .addLocal("fold-if", e -> e instanceof ANF.IfThen(ANF.Const(Boolean b), var t, var f) ? (b ? t : f) : e)
+                .addProgram("label", e -> new Labeler().label(e));
+
+        var v = variable("v");
+        var expr = let(v, add(add(constant(1), constant(2)), constant(0)),
+                ifThen(constant(true), v, constant(0)));
+
+        check(pipeline.run(expr), let(variable("v_0"), constant(3), variable("v_0")));
+        var stats = pipeline.statistics();
+        check(stats.get(0).rewrites(), 2L);
+        check(stats.get(1).rewrites(), 0L);
+        check(stats.get(2).rewrites(), 1L);
+        check(stats.get(3).rewrites(), 1L);
+
+        pipeline.disable("fold-add").disable("label").resetStatistics();
+        check(pipeline.run(expr), let(v, add(constant(1), constant(2)), v));
+        check(pipeline.statistics().get(0).rewrites(), 0L);
+
+        // Rules run to a fixpoint at each node: the folded sum exposes a zero to add-zero.
+        pipeline.enable("fold-add");
+        check(pipeline.run(add(add(constant(0), constant(0)), constant(5))), constant(5));
+    }
+
+    private static ANF.FunApply add(ANF.Term a, ANF.Term b) {
+        return funApply(variable("add"), List.of(a, b), FunKind.PRIMITIVE);
+    }
+
+    private static boolean isAdd(ANF.Expression e) {
+        return e instanceof ANF.FunApply(ANF.Var(var id), var args, FunKind.Primitive _)
+                && id.equals("add") && args.size() == 2;
+    }
+
+    private static ANF.Expression foldAdd(ANF.Expression e) {
+        if (isAdd(e) && e instanceof ANF.FunApply(_, var args, _)
+                && args.get(0) instanceof ANF.Const(Integer a) && args.get(1) instanceof ANF.Const(Integer b)) {
+            return constant(a + b);
+        }
+        return e;
+    }
+
+    private static ANF.Expression addZero(ANF.Expression e) {
+        if (isAdd(e) && e instanceof ANF.FunApply(_, var args, _)) {
+            if (args.get(1) instanceof ANF.Const(Integer z) && z == 0) {
+                return (ANF.Expression) args.get(0);
+            } else if (args.get(0) instanceof ANF.Const(Integer z) && z == 0) {
+                return (ANF.Expression) args.get(1);
+            }
+        }
+        return e;
+    }
+}
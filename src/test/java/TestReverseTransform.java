@@ -0,0 +1,106 @@
+/*
+ * Copyright (c) 2024, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Oracle designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+
+import java.lang.invoke.MethodHandles;
+import java.lang.reflect.code.op.CoreOp;
+import java.util.List;
+
+import org.oracle.anf.ANF;
+import org.oracle.anf.FunKind;
+import org.oracle.anf.ReverseTransform;
+import org.oracle.anf.eval.Interpreter;
+
+import static org.oracle.anf.ANF.*;
+
+public class TestReverseTransform extends TestSupport {
+
+    // ANF form of TestTransform.test2.
+    static ANF.Function test2() {
+        var a1 = variable("arg1");
+        var a2 = variable("arg2");
+        return function(variable("test2"), List.of(a1, a2),
+                let(variable("c"), prim("gt", a1, a2),
+                        ifThen(variable("c"), prim("add", a1, constant(21)), prim("add", a2, constant(42)))));
+    }
+
+    public static void main(String[] args) {
+        var reverse = new ReverseTransform();
+        var interpreter = new Interpreter();
+
+        // The loop functions of fibonacci become blocks branching to each other.
+        var fib = TestInterpreter.fibonacci();
+        var fibOp = reverse.reverse("fibonacci", fib, List.of(int.class));
+        for (int v : new int[]{0, 1, 2, 20, 1000}) {
+            check(run(fibOp, v), interpreter.invoke(fib, v));
+        }
+
+        var test2 = test2();
+        var test2Op = reverse.reverse("test2", test2, List.of(int.class, int.class));
+        for (int[] a : new int[][]{{20, 1}, {1, 20}, {5, 5}}) {
+            check(run(test2Op, a[0], a[1]), interpreter.invoke(test2, a[0], a[1]));
+            check(run(test2Op, a[0], a[1]), TestTransform.test2(a[0], a[1]));
+        }
+
+        // An int passed to an Object parameter is boxed.
+        var v = variable("v");
+        var hash = function(variable("hash"), List.of(v),
+                funApply(variable("hashCode"), List.of(v), FunKind.java("java.util.Objects::hashCode")));
+        var hashOp = reverse.reverse("hash", hash, List.of(int.class));
+        check(hashOp.toText().contains("java.lang.Integer::valueOf"), true);
+        check(run(hashOp, 17), interpreter.invoke(hash, 17));
+
+        // An entry function that calls itself branches to a header block, not to the entry block.
+        var n = variable("n");
+        var acc = variable("acc");
+        var loop = function(variable("loop"), List.of(n, acc),
+                let(variable("done"), prim("le", n, constant(0)),
+                        ifThen(variable("done"), acc,
+                                let(variable("n1"), prim("sub", n, constant(1)),
+                                        let(variable("acc1"), prim("add", acc, n),
+                                                call("loop", variable("n1"), variable("acc1")))))));
+        var loopOp = reverse.reverse("loop", loop, List.of(int.class, int.class));
+        check(loopOp.body().blocks().getFirst().ops().getLast() instanceof CoreOp.BranchOp, true);
+        for (int i : new int[]{0, 1, 10}) {
+            check(run(loopOp, i, 0), interpreter.invoke(loop, i, 0));
+        }
+
+        // A call in non-tail position has no block equivalent.
+        var x = variable("x");
+        var y = variable("y");
+        var g = function(variable("g"), List.of(y), prim("add", y, constant(1)));
+        var nonTail = function(variable("f"), List.of(x),
+                letRec(List.of(g), let(variable("r"), call("g", x), prim("mul", variable("r"), constant(2)))));
+        try {
+            reverse.reverse("f", nonTail, List.of(int.class));
+            throw new AssertionError("Expected the non-tail call to be rejected");
+        } catch (UnsupportedOperationException e) {
+            check(e.getMessage(), "Call to " + variable("g") + " in non-tail position cannot be lowered to a branch");
+        }
+    }
+
+    private static Object run(CoreOp.FuncOp f, Object... args) {
+        return java.lang.reflect.code.interpreter.Interpreter.invoke(MethodHandles.lookup(), f, args);
+    }
+}
@@ -0,0 +1,127 @@
+/*
+ * Copyright (c) 2024, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Oracle designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+import org.oracle.anf.Transform;
+import org.oracle.anf.util.ANFPrinter;
+import org.oracle.anf.util.Labeler;
+
+/**
+ * Runs {@link Transform}, {@link Labeler} and {@link ANFPrinter} on generated
+ * programs of growing size and fails when time or allocation grows faster than
+ * the stated bounds.
+ * <p>
+ * Growth is measured as the exponent {@code k} in {@code cost ~ size^k} between the
+ * smallest and the largest size, so a linear pass has {@code k = 1}.
+ */
+public class TestScaling {
+
+    // Bounds on the growth exponent, leaving headroom for timer noise.
+    static final double MAX_TIME_EXPONENT = 1.5;
+    static final double MAX_ALLOCATION_EXPONENT = 1.25;
+
+    static final int[] SIZES = {256, 512, 1024, 2048, 4096};
+    static final int RUNS = 5;
+
+    public static void main(String[] args) {
+        List<String> failures = new ArrayList<>();
+        for (var shape : CodeModelGenerator.Shape.values()) {
+            List<CodeModelGenerator> programs = new ArrayList<>();
+            for (int size : SIZES) {
+                programs.add(CodeModelGenerator.generate(new CodeModelGenerator.Config(size, 3, 2, shape, 42)));
+            }
+            check("Transform/" + shape, programs, g -> {
+                var f = g.funcOp("generated");
+                return () -> new Transform().transform(f);
+            }, failures);
+            check("Labeler/" + shape, programs, g -> {
+                var anf = g.anf(100);
+                return () -> new Labeler().label(anf);
+            }, failures);
+            check("ANFPrinter/" + shape, programs, g -> {
+                var anf = g.anf(100);
+                return () -> {
+                    new ANFPrinter().print(anf, OutputStream.nullOutputStream());
+                    return null;
+                };
+            }, failures);
+        }
+
+        if (!failures.isEmpty()) {
+            throw new AssertionError(String.join("\n", failures));
+        }
+    }
+
+    private static void check(String name, List<CodeModelGenerator> programs,
+                              Function<CodeModelGenerator, Supplier<?>> task,
+                              List<String> failures) {
+        double[] times = new double[programs.size()];
+        double[] allocations = new double[programs.size()];
+        for (int i = 0; i < programs.size(); i++) {
+            var run = task.apply(programs.get(i));
+            try {
+                // Warm up, then keep the best run to filter out noise.
+                run.get();
+                long bestTime = Long.MAX_VALUE;
+                long bestAllocation = Long.MAX_VALUE;
+                for (int r = 0; r < RUNS; r++) {
+                    long a = allocatedBytes();
+                    long t = System.nanoTime();
+                    run.get();
+                    bestTime = Math.min(bestTime, System.nanoTime() - t);
+                    bestAllocation = Math.min(bestAllocation, allocatedBytes() - a);
+                }
+                times[i] = Math.max(bestTime, 1);
+                allocations[i] = Math.max(bestAllocation, 1);
+            } catch (StackOverflowError e) {
+                failures.add(name + ": stack overflow at " + programs.get(i).blockCount() + " blocks");
+                return;
+            }
+            System.out.printf("%-22s blocks=%6d domDepth=%6d time=%10.1fus alloc=%12.0fB%n", name,
+                    programs.get(i).blockCount(), programs.get(i).dominatorDepth(), times[i] / 1000, allocations[i]);
+        }
+
+        double sizeRatio = Math.log((double) programs.getLast().blockCount() / programs.getFirst().blockCount());
+        double timeExponent = Math.log(times[times.length - 1] / times[0]) / sizeRatio;
+        double allocationExponent = Math.log(allocations[allocations.length - 1] / allocations[0]) / sizeRatio;
+        if (timeExponent > MAX_TIME_EXPONENT) {
+            failures.add(String.format("%s: time grows as size^%.2f, bound is %.2f", name, timeExponent, MAX_TIME_EXPONENT));
+        }
+        if (allocationExponent > MAX_ALLOCATION_EXPONENT) {
+            failures.add(String.format("%s: allocation grows as size^%.2f, bound is %.2f", name, allocationExponent, MAX_ALLOCATION_EXPONENT));
+        }
+    }
+
+    private static long allocatedBytes() {
+        var bean = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        return bean.getCurrentThreadAllocatedBytes();
+    }
+}
@@ -0,0 +1,70 @@
+/*
+ * Copyright (c) 2024, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Oracle designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+
+import java.util.List;
+import java.util.Objects;
+
+import org.oracle.anf.ANF;
+import org.oracle.anf.FunKind;
+import org.oracle.anf.util.ANFPrinter;
+
+import static org.oracle.anf.ANF.*;
+
+/**
+ * Assertions and ANF builders shared by the tests, which extend this class to call them unqualified.
+ */
+abstract class TestSupport {
+
+    static void check(Object actual, Object expected) {
+        if (!Objects.equals(expected, actual)) {
+            throw new AssertionError("Expected " + expected + ", got " + actual);
+        }
+    }
+
+    static void check(boolean condition, String message) {
+        if (!condition) {
+            throw new AssertionError(message);
+        }
+    }
+
+    static ANF.FunApply prim(String op, ANF.Term... args) {
+        return funApply(variable(op), List.of(args), FunKind.PRIMITIVE);
+    }
+
+    static ANF.FunApply call(String name, ANF.Term... args) {
+        return funApply(variable(name), List.of(args), FunKind.FC);
+    }
+
+    /**
+     * {@return a function of one parameter, named {@code name_x}}
+     */
+    static ANF.Function fun(String name, ANF.Expression body) {
+        return function(variable(name), List.of(variable(name + "_x")), body);
+    }
+
+    static String text(ANF.Expression expr) {
+        return new ANFPrinter().toText(expr);
+    }
+}
@@ -0,0 +1,100 @@
+/*
+ * Copyright (c) 2024, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Oracle designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+
+import java.io.File;
+import java.lang.reflect.Method;
+import java.lang.reflect.code.OpTransformer;
+import java.lang.reflect.code.analysis.SSA;
+import java.lang.reflect.code.op.AnfDialect;
+import java.lang.reflect.code.op.CoreOp;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.oracle.anf.TransformCache;
+import org.oracle.anf.util.BoundedCache;
+
+public class TestTransformCache extends TestSupport {
+
+    public static void main(String[] args) throws Exception {
+        var cache = new TransformCache(16);
+        Method test2 = TestTransform.class.getDeclaredMethod("test2", int.class, int.class);
+
+        // Concurrent requests for one method share a single transform; the ones not computing it are hits.
+        var go = new CountDownLatch(1);
+        List<Future<AnfDialect.AnfLetRecOp>> results = new ArrayList<>();
+        try (var executor = Executors.newFixedThreadPool(8)) {
+            for (int i = 0; i < 8; i++) {
+                results.add(executor.submit(() -> {
+                    go.await();
+                    return cache.transform(test2);
+                }));
+            }
+            go.countDown();
+        }
+        var first = results.getFirst().get();
+        for (var r : results) {
+            check(r.get() == first, true);
+        }
+        check(cache.statistics(), new BoundedCache.Statistics(7, 1, 0, 1, 1));
+
+        // Looking the class and method up again finds the same entry.
+        var again = Class.forName("TestTransform").getDeclaredMethod("test2", int.class, int.class);
+        check(cache.transform(again) == first, true);
+
+        // A copy of the class from another loader is another owner, but its code model has the
+        // same text, so the transform of the model is shared.
+        Method copy;
+        try (var loader = new URLClassLoader(classPath(), ClassLoader.getPlatformClassLoader())) {
+            var copyClass = loader.loadClass("TestTransform");
+            check(copyClass == TestTransform.class, false);
+            copy = copyClass.getDeclaredMethod("test2", int.class, int.class);
+            check(cache.transform(copy) == first, false);
+        }
+        var lowered = lowered(test2);
+        var model = cache.transform(lowered);
+        check(cache.transform(lowered(copy)) == model, true);
+        // Looking the same model up again reuses its hash and finds the same entry.
+        check(cache.transform(lowered) == model, true);
+        check(cache.statistics(), new BoundedCache.Statistics(10, 3, 0, 3, 3));
+    }
+
+    private static CoreOp.FuncOp lowered(Method m) {
+        return SSA.transform(m.getCodeModel().orElseThrow().transform(OpTransformer.LOWERING_TRANSFORMER));
+    }
+
+    private static URL[] classPath() throws Exception {
+        var entries = System.getProperty("java.class.path").split(File.pathSeparator);
+        var urls = new URL[entries.length];
+        for (int i = 0; i < entries.length; i++) {
+            urls[i] = new File(entries[i]).toURI().toURL();
+        }
+        return urls;
+    }
+}
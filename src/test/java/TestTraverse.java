@@ -0,0 +1,67 @@
+/*
+ * Copyright (c) 2024, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Oracle designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+
+import java.util.List;
+
+import org.oracle.anf.ANF;
+import org.oracle.anf.FunKind;
+import org.oracle.anf.util.Traverse;
+
+import static org.oracle.anf.ANF.*;
+
+public class TestTraverse extends TestSupport {
+
+    public static void main(String[] args) {
+        // A straight-line chain far deeper than the Java stack could recurse.
+        int depth = 200_000;
+        ANF.Expression chain = variable("v" + depth);
+        for (int i = depth; i > 0; i--) {
+            chain = let(variable("v" + i),
+                    funApply(variable("add"), List.of(variable("v" + (i - 1)), constant(1)), FunKind.PRIMITIVE),
+                    chain);
+        }
+        if (Traverse.traverse(e -> e, chain) != chain) {
+            throw new AssertionError("Identity rewrite did not return the original expression");
+        }
+
+        var renamed = Traverse.traverse(e -> e instanceof ANF.Var(var id) ? variable("r_" + id) : e, chain);
+        var let = (ANF.Let) renamed;
+        for (int i = 0; i < 3; i++) {
+            check(let.name(), variable("v" + (i + 1)));
+            check(let.term(), funApply(variable("r_add"), List.of(variable("r_v" + i), constant(1)), FunKind.PRIMITIVE));
+            let = (ANF.Let) let.expBody();
+        }
+
+        // Conditions and application names are visited, untouched branches are shared.
+        var untouched = let(variable("x"), constant(1), constant(2));
+        var ite = ifThen(variable("c"), untouched, funApply(variable("f"), List.of(constant(3)), FunKind.FC));
+        var rewritten = (ANF.IfThen) Traverse.traverse(e -> e instanceof ANF.Var(var id) ? variable(id + "'") : e, ite);
+        check(rewritten.cond(), variable("c'"));
+        check(((ANF.FunApply) rewritten.falseExp()).name(), variable("f'"));
+        if (rewritten.trueExp() != untouched) {
+            throw new AssertionError("Unchanged branch was rebuilt");
+        }
+    }
+}